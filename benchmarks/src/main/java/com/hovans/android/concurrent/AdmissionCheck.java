@@ -0,0 +1,138 @@
+package com.hovans.android.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 입장 정책(admission)이 포화되었을 때 {@link FutureCaller#execute()}가 멈추지 않고 돌아옴을 확인한다.<br/>
+ * <br/>
+ * 두 경우를 본다.
+ * <ul>
+ * <li>rate limited: {@link AdmissionPolicy#tokenBucket(int, double, int)}의 토큰을 다 쓴 뒤에 호출한다. 게스트는 거절된다.</li>
+ * <li>dropped: 작업 스레드를 모두 붙잡고 {@link AdmissionPolicy#dropOldestLowestPriority(int)}의 대기열을 채운 뒤,
+ * 대기 중인 호출자의 게스트를 더 우선적인 게스트로 밀어낸다.</li>
+ * </ul>
+ * 어느 경우든 execute() 는 {@link ExecutionException}으로 돌아와야 한다. 제한 시간 안에 돌아오지 않으면 0 이 아닌 값으로 종료한다.<br/>
+ * <br/>
+ * 실행: ./gradlew :benchmarks:admissionCheck
+ *
+ * @author Arngard
+ */
+public final class AdmissionCheck {
+
+    private static final long RETURN_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_BLOCKERS = 256;
+
+    private AdmissionCheck() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean passed = checkRateLimited();
+        passed &= checkDropped();
+        ThreadHost.setAdmissionPolicy(AdmissionPolicy.unbounded());
+        System.out.println(passed ? "PASSED" : "FAILED: FutureCaller.execute() did not return after admission refused its guest");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean checkRateLimited() throws InterruptedException {
+        ThreadHost.setAdmissionPolicy(AdmissionPolicy.tokenBucket(Integer.MAX_VALUE, 0.001, 1));
+        new NoopGuest(ThreadGuest.PRIORITY_NORMAL).execute();    // 하나뿐인 토큰을 쓴다.
+        final Caller caller = new Caller(ThreadGuest.PRIORITY_NORMAL);
+        caller.start();
+        return report("rate limited", caller);
+    }
+
+    private static boolean checkDropped() throws InterruptedException {
+        ThreadHost.setAdmissionPolicy(AdmissionPolicy.dropOldestLowestPriority(2));
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger started = new AtomicInteger();
+        int offered = 0;
+        while (offered < MAX_BLOCKERS) {    // 작업 스레드를 모두 붙잡고, 하나가 대기열에 남을 때까지 넣는다.
+            new Blocker(gate, started).execute();
+            offered++;
+            Thread.sleep(20);
+            if (started.get() < offered) {
+                break;
+            }
+        }
+        final Caller caller = new Caller(ThreadGuest.PRIORITY_IDLE);
+        caller.start();
+        final long deadline = System.currentTimeMillis() + RETURN_TIMEOUT_MILLIS;
+        while (ThreadHost.queueSize() < 2 && caller.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        new NoopGuest(ThreadGuest.PRIORITY_NORMAL).execute();    // 대기열이 가득 찼으니 가장 덜 우선적인 호출자의 게스트가 밀려난다.
+        try {
+            return report("dropped", caller);
+        } finally {
+            gate.countDown();
+        }
+    }
+
+    private static boolean report(String name, Caller caller) throws InterruptedException {
+        caller.join(RETURN_TIMEOUT_MILLIS);
+        final boolean returned = !caller.isAlive();
+        System.out.println(String.format("%-13s returned=%b, outcome=%s", name, returned, returned ? caller.outcome : "still blocked"));
+        return returned && caller.outcome instanceof ExecutionException;
+    }
+
+    /**
+     * 별도의 스레드에서 {@link FutureCaller#execute()}를 부르고 결과나 예외를 남긴다.
+     */
+    private static final class Caller extends Thread {
+
+        private final int priority;
+        volatile Object outcome;
+
+        Caller(int priority) {
+            super("AdmissionCheck-caller");
+            this.priority = priority;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                outcome = new FutureCaller<Object>(priority) {
+                    @Override
+                    public Object call() {
+                        return "ran";
+                    }
+                }.execute();
+            } catch (Exception e) {
+                outcome = e;
+            }
+        }
+
+    }
+
+    /**
+     * 문이 열릴 때까지 작업 스레드를 붙잡는 게스트.
+     */
+    private static final class Blocker extends ThreadGuest {
+
+        private final CountDownLatch gate;
+        private final AtomicInteger started;
+
+        Blocker(CountDownLatch gate, AtomicInteger started) {
+            super(PRIORITY_GREEDY);
+            this.gate = gate;
+            this.started = started;
+        }
+
+        @Override
+        public Object run(long waitTimeMillis) {
+            started.incrementAndGet();
+            try {
+                gate.await(RETURN_TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.hovans.android.concurrent;
+
+/**
+ * 우선순위 노화(aging)가 낮은 우선순위 게스트의 대기 시간을 제한함을 결정적으로 확인한다.<br/>
+ * <br/>
+ * {@link HostClock}을 직접 움직이는 시계로 바꿔 끼우고, {@link ThreadGuest#PRIORITY_IDLE} 게스트 하나 뒤로
+ * {@link ThreadGuest#PRIORITY_HIGH} 게스트를 한 단위 시간마다 하나씩 넣고 꺼낸다. 실제 시간을 기다리지 않으므로 결과가 매번 같다.
+ * <ul>
+ * <li>노화가 꺼져 있으면 IDLE 게스트는 끝까지 꺼내지지 않아야 한다.</li>
+ * <li>노화가 켜져 있으면 두 구간의 차이만큼의 단계를 기다린 시각에 정확히 꺼내져야 한다.</li>
+ * </ul>
+ * 기대와 다르면 0 이 아닌 값으로 종료한다.<br/>
+ * <br/>
+ * 실행: ./gradlew :benchmarks:agingCheck
+ *
+ * @author Arngard
+ */
+public final class AgingCheck {
+
+    private static final long STEP_MILLIS = 100;
+    private static final long TICK_MILLIS = 10;
+    private static final int ROUNDS = 1000;
+
+    private AgingCheck() {
+    }
+
+    public static void main(String[] args) {
+        final ManualClock clock = new ManualClock();
+        HostClock.set(clock);
+        final long previousStep = PriorityBucketQueue.agingStepMillis;
+        boolean passed;
+        try {
+            PriorityBucketQueue.agingStepMillis = 0;
+            final long starved = idleWait(clock);
+            System.out.println("aging off: " + (starved < 0 ? "IDLE starved for " + ROUNDS + " rounds" : "IDLE served after " + starved + " ms"));
+            passed = starved < 0;
+
+            PriorityBucketQueue.agingStepMillis = STEP_MILLIS;
+            final long expected = (PriorityBucketQueue.bucketOf(ThreadGuest.PRIORITY_IDLE)
+                    - PriorityBucketQueue.bucketOf(ThreadGuest.PRIORITY_HIGH)) * STEP_MILLIS;
+            final long served = idleWait(clock);
+            System.out.println("aging on:  IDLE served after " + served + " ms, expected " + expected + " ms");
+            passed &= served == expected;
+        } finally {
+            PriorityBucketQueue.agingStepMillis = previousStep;
+            HostClock.set(null);
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * IDLE 게스트 하나를 넣고, HIGH 게스트를 계속 넣으며 하나씩 꺼낸다.
+     *
+     * @return IDLE 게스트가 꺼내질 때까지 기다린 시간(ms). {@link #ROUNDS} 동안 꺼내지지 않으면 -1.
+     */
+    private static long idleWait(ManualClock clock) {
+        final PriorityBucketQueue queue = new PriorityBucketQueue(Integer.MAX_VALUE);
+        final RunnableGuest idle = runnable(ThreadGuest.PRIORITY_IDLE, clock.time);
+        queue.offer(idle);
+        for (int round = 0; round < ROUNDS; round++) {
+            queue.offer(runnable(ThreadGuest.PRIORITY_HIGH, clock.time));
+            if (queue.poll() == idle) {
+                return clock.time - idle.mOfferTime;
+            }
+            clock.time += TICK_MILLIS;
+        }
+        return -1;
+    }
+
+    private static RunnableGuest runnable(int priority, long offerTime) {
+        return new RunnableGuest(new NoopGuest(priority), offerTime) {
+            @Override
+            public void run() {
+            }
+        };
+    }
+
+    /**
+     * 직접 움직이는 시계. 한 스레드에서만 쓴다.
+     */
+    private static final class ManualClock extends HostClock {
+
+        long time = 1000;
+
+        @Override
+        long elapsedRealtime() {
+            return time;
+        }
+
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.hovans.android.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PooledGuest}의 제출, 수행, 완료 경로가 메모리를 할당하지 않음을 확인한다.<br/>
+ * <br/>
+ * 모든 스레드가 할당한 바이트를 {@link com.sun.management.ThreadMXBean}으로 재서, 게스트 하나당 할당량을 구한다.
+ * null 이 아닌 결과를 돌려주는 게스트도 잰다. 이 결과는 {@link ResultDispatcher}를 거쳐 대역 핸들러의 메인스레드에서
+ * {@link ThreadGuest#after(Object)}로 넘어오며, 완료는 거기서 센다. 메시지는 게스트가 아니라 묶음마다 하나이므로 허용치 아래로 남는다.
+ * 비교를 위해 매번 새로 만드는 게스트도 같은 방법으로 잰다.
+ * 작업 스레드가 잠들고 깰 때 JDK 의 락이 만드는 노드는 게스트가 아니라 잠드는 횟수에 비례하므로, 허용치 아래로 남는다.
+ * 허용치를 넘으면 0 이 아닌 값으로 종료한다.<br/>
+ * <br/>
+ * 실행: ./gradlew :benchmarks:allocationCheck
+ *
+ * @author Arngard
+ */
+public final class AllocationCheck {
+
+    /**
+     * 게스트 하나당 허용하는 할당량(바이트).
+     */
+    private static final double MAX_BYTES_PER_GUEST = 8;
+    private static final int WARM_UP_GUESTS = 200000;
+    private static final int MEASURED_GUESTS = 1000000;
+
+    /**
+     * 메인스레드로 넘어가기를 기다리는 결과의 상한. 결과는 묶음 구간마다 한 번 배출되므로, 제출을 이만큼에서 멈추지 않으면
+     * 게스트 풀과 캐리어 풀보다 많은 게스트가 결과를 든 채 기다리게 된다.
+     */
+    private static final int MAX_PENDING_RESULTS = 1024;
+
+    private static final int KIND_POOLED = 0;
+    private static final int KIND_RESULT = 1;
+    private static final int KIND_CREATED = 2;
+
+    /**
+     * {@link ResultGuest}가 돌려주는 결과. 결과 자체는 할당하지 않는다.
+     */
+    private static final Object RESULT = new Object();
+
+    private static final AtomicLong completed = new AtomicLong();
+
+    private AllocationCheck() {
+    }
+
+    public static void main(String[] args) {
+        ThreadHost.setAdmissionPolicy(AdmissionPolicy.callerRuns(1024));    // 대기열이 끝없이 자라지 않게 한다.
+        final GuestPool<CountingGuest> pool = new GuestPool<CountingGuest>(2048, new GuestPool.Factory<CountingGuest>() {
+            @Override
+            public CountingGuest create() {
+                return new CountingGuest();
+            }
+        });
+        final GuestPool<ResultGuest> resultPool = new GuestPool<ResultGuest>(2048, new GuestPool.Factory<ResultGuest>() {
+            @Override
+            public ResultGuest create() {
+                return new ResultGuest();
+            }
+        });
+
+        boolean passed = true;
+        for (int mode : new int[]{ThreadHost.MODE_SINGLE, ThreadHost.MODE_WORK_STEALING}) {
+            ThreadHost.setMode(mode);
+            for (int i = 0; i < 3; i++) {    // JIT 과 풀을 데운다.
+                measure(pool, resultPool, KIND_POOLED, WARM_UP_GUESTS);
+                measure(pool, resultPool, KIND_RESULT, WARM_UP_GUESTS);
+                measure(pool, resultPool, KIND_CREATED, WARM_UP_GUESTS);
+            }
+            final double pooled = measure(pool, resultPool, KIND_POOLED, MEASURED_GUESTS);
+            final double result = measure(pool, resultPool, KIND_RESULT, MEASURED_GUESTS);
+            final double created = measure(pool, resultPool, KIND_CREATED, MEASURED_GUESTS);
+            final String name = mode == ThreadHost.MODE_SINGLE ? "single" : "stealing";
+            System.out.println(String.format(Locale.US, "%-9s pooled %8.2f B/guest, pooled with result %8.2f B/guest, created %8.2f B/guest",
+                    name, pooled, result, created));
+            passed &= pooled <= MAX_BYTES_PER_GUEST;
+            passed &= result <= MAX_BYTES_PER_GUEST;
+        }
+        System.out.println(passed ? "PASSED" : "FAILED: pooled guests allocate over " + MAX_BYTES_PER_GUEST + " B/guest");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * @return 게스트 하나를 제출하고 끝날 때까지 모든 스레드가 할당한 평균 바이트.
+     */
+    private static double measure(GuestPool<CountingGuest> pool, GuestPool<ResultGuest> resultPool, int kind, int count) {
+        final long start = completed.get();
+        final long before = allocatedBytes();
+        for (int i = 0; i < count; i++) {
+            switch (kind) {
+                case KIND_POOLED:
+                    pool.obtain().execute();
+                    break;
+                case KIND_RESULT:
+                    while (i - (completed.get() - start) >= MAX_PENDING_RESULTS) {
+                        Thread.yield();
+                    }
+                    resultPool.obtain().execute();
+                    break;
+                default:
+                    new PlainGuest().execute();
+                    break;
+            }
+        }
+        while (completed.get() - start < count) {    // 기다리는 쪽도 할당하지 않도록 래치 대신 양보하며 확인한다.
+            Thread.yield();
+        }
+        return (double) (allocatedBytes() - before) / count;
+    }
+
+    private static long allocatedBytes() {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sum = 0;
+        for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (bytes > 0) {    // 그 사이에 끝난 스레드는 -1 이다.
+                sum += bytes;
+            }
+        }
+        return sum;
+    }
+
+    private static final class CountingGuest extends PooledGuest {
+
+        @Override
+        public Object run(long waitTimeMillis) {
+            completed.incrementAndGet();
+            return null;
+        }
+
+    }
+
+    /**
+     * 결과를 돌려주므로 {@link ResultDispatcher#deliver(ThreadGuest, Object)}와 메인스레드의 배출을 거친다.
+     */
+    private static final class ResultGuest extends PooledGuest {
+
+        @Override
+        public Object run(long waitTimeMillis) {
+            return RESULT;
+        }
+
+        @Override
+        public void after(Object result) {
+            completed.incrementAndGet();
+        }
+
+    }
+
+    private static final class PlainGuest extends ThreadGuest {
+
+        @Override
+        public Object run(long waitTimeMillis) {
+            completed.incrementAndGet();
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.hovans.android.concurrent;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 벤치마크를 스레드 수별로 돌리고, 처리량과 p99 지연을 요약한다.<br/>
+ * <br/>
+ * 인자: 결과 디렉토리, 벤치마크 이름 정규식, 쉼표로 구분한 스레드 수 목록.
+ * 스레드 수마다 JSON 결과 파일 하나를 남긴다. p99 는 SampleTime 모드의 분포에서 읽는다.
+ *
+ * @author Arngard
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final File reportsDir = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        final String include = args.length > 1 ? args[1] : ".*";
+        final String threads = args.length > 2 ? args[2] : "1,4,16";
+        if (!reportsDir.isDirectory() && !reportsDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + reportsDir);
+        }
+
+        for (String token : threads.split(",")) {
+            final int threadCount = Integer.parseInt(token.trim());
+            final Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threadCount)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .warmupTime(TimeValue.seconds(1))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(1))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(reportsDir, "threads-" + threadCount + ".json").getPath())
+                    .build();
+            summarize(threadCount, new Runner(options).run());
+        }
+    }
+
+    private static void summarize(int threadCount, Collection<RunResult> results) {
+        System.out.println();
+        System.out.println("# " + threadCount + " thread(s)");
+        for (RunResult result : results) {
+            final String name = result.getParams().getBenchmark();
+            final String params = result.getParams().getParamsKeys().isEmpty() ? "" : paramsOf(result);
+            final double score = result.getPrimaryResult().getScore();
+            final String unit = result.getPrimaryResult().getScoreUnit();
+            if (result.getParams().getMode() == Mode.SampleTime) {
+                final double p99 = result.getPrimaryResult().getStatistics().getPercentile(99.0);
+                System.out.println(String.format(Locale.US, "%-70s mean %12.3f  p99 %12.3f %s", name + params, score, p99, unit));
+            } else {
+                System.out.println(String.format(Locale.US, "%-70s thrpt %11.3f %s", name + params, score, unit));
+            }
+        }
+    }
+
+    private static String paramsOf(RunResult result) {
+        final StringBuilder builder = new StringBuilder("(");
+        for (String key : result.getParams().getParamsKeys()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(key).append('=').append(result.getParams().getParam(key));
+        }
+        return builder.append(')').toString();
+    }
+
+}
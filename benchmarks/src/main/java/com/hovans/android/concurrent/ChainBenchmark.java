@@ -0,0 +1,33 @@
+package com.hovans.android.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 지연 없는 체인이 끝까지 전파되는 시간. 게스트마다 {@link NextCarrier}를 거쳐 다시 offer 된다.
+ *
+ * @author Arngard
+ */
+@State(Scope.Thread)
+public class ChainBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int length;
+
+    @Benchmark
+    public void propagate() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ThreadGuest head = new NoopGuest(ThreadGuest.PRIORITY_NORMAL);
+        for (int i = 1; i < length; i++) {
+            head.addChain(0, new NoopGuest(ThreadGuest.PRIORITY_NORMAL));
+        }
+        head.addChain(0, new NoopGuest(ThreadGuest.PRIORITY_NORMAL, latch));
+        head.execute();
+        latch.await();
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.hovans.android.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link ThreadGuest.ChainBlocker}의 대기와 해제.<br/>
+ * <br/>
+ * unblockAll 은 한 스레드가 waiters 개의 체인을 막아두었다가 한꺼번에 풀고, 이어지는 게스트가 모두 끝날 때까지 기다린다.
+ * waitAndUnblock 은 모든 벤치마크 스레드가 블로커 하나를 두고 각자의 게스트를 대기시키고 풀어준다.
+ *
+ * @author Arngard
+ */
+public class ChainBlockerBenchmark {
+
+    @State(Scope.Thread)
+    public static class Batch {
+
+        @Param({"1", "16", "256"})
+        public int waiters;
+
+        final ThreadGuest.ChainBlocker blocker = new ThreadGuest.ChainBlocker();
+        ThreadGuest[] guests;
+        CountDownLatch latch;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            latch = new CountDownLatch(waiters);
+            final ThreadGuest next = new NoopGuest(ThreadGuest.PRIORITY_NORMAL, latch);
+            guests = new ThreadGuest[waiters];
+            for (int i = 0; i < waiters; i++) {
+                guests[i] = new NoopGuest(ThreadGuest.PRIORITY_NORMAL).addChain(blocker, next);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        final ThreadGuest.ChainBlocker blocker = new ThreadGuest.ChainBlocker();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ThreadHost.setAdmissionPolicy(AdmissionPolicy.callerRuns(4096));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            ThreadHost.setAdmissionPolicy(AdmissionPolicy.unbounded());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Own {
+
+        ThreadGuest guest;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared) {
+            guest = new NoopGuest(ThreadGuest.PRIORITY_NORMAL).addChain(shared.blocker, new NoopGuest(ThreadGuest.PRIORITY_NORMAL));
+        }
+    }
+
+    @Benchmark
+    public int unblockAll(Batch batch) throws InterruptedException {
+        batch.blocker.block();
+        for (ThreadGuest guest : batch.guests) {
+            batch.blocker.tryWait(guest);
+        }
+        final int released = batch.blocker.unblock();
+        batch.latch.await();
+        return released;
+    }
+
+    @Benchmark
+    public boolean waitAndUnblock(Shared shared, Own own) {
+        shared.blocker.block();
+        if (!shared.blocker.tryWait(own.guest)) {    // 다른 스레드가 그 사이에 풀었다.
+            return false;
+        }
+        return shared.blocker.unblock(own.guest);
+    }
+
+}
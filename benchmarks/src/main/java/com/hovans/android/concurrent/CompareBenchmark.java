@@ -0,0 +1,49 @@
+package com.hovans.android.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 큐가 순서를 정할 때 쓰는 비교 연산의 비용.
+ * {@link ThreadGuest#compareTo(ThreadGuest)}와, 노화를 고려하는 {@link PriorityBucketQueue#precedes(Runnable, Runnable, long)}.
+ *
+ * @author Arngard
+ */
+@State(Scope.Thread)
+public class CompareBenchmark {
+
+    private static final int COUNT = 64;
+
+    private final ThreadGuest[] guests = new ThreadGuest[COUNT];
+    private final RunnableGuest[] runnables = new RunnableGuest[COUNT];
+    private int index;
+
+    @Setup
+    public void setUp() {
+        final int[] priorities = {ThreadGuest.PRIORITY_IDLE, ThreadGuest.PRIORITY_NORMAL,
+                ThreadGuest.PRIORITY_HIGH, ThreadGuest.PRIORITY_GREEDY};
+        for (int i = 0; i < COUNT; i++) {
+            guests[i] = new NoopGuest(priorities[i % priorities.length]);
+            runnables[i] = new RunnableGuest(guests[i], i) {
+                @Override
+                public void run() {
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public int compareTo() {
+        final int i = index++ & (COUNT - 1);
+        return guests[i].compareTo(guests[(i + 1) & (COUNT - 1)]);
+    }
+
+    @Benchmark
+    public boolean precedes() {
+        final int i = index++ & (COUNT - 1);
+        return PriorityBucketQueue.precedes(runnables[i], runnables[(i + 1) & (COUNT - 1)], COUNT);
+    }
+
+}
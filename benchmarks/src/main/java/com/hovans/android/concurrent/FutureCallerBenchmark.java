@@ -0,0 +1,32 @@
+package com.hovans.android.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link FutureCaller}로 결과를 동기적으로 받는 비용. 작업 스레드를 다녀오는 왕복이 대부분이다.
+ *
+ * @author Arngard
+ */
+public class FutureCallerBenchmark {
+
+    private static final class Answer extends FutureCaller<Integer> {
+
+        @Override
+        public Integer call() {
+            return 42;
+        }
+    }
+
+    @Benchmark
+    public Integer execute() throws InterruptedException, ExecutionException {
+        return new Answer().execute();
+    }
+
+    @Benchmark
+    public Integer executeAsync() throws InterruptedException, ExecutionException {
+        return new Answer().executeAsync().get();
+    }
+
+}
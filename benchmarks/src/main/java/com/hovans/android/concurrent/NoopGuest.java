@@ -0,0 +1,31 @@
+package com.hovans.android.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 아무 일도 하지 않는 게스트. 래치가 있으면 수행을 마치고 내린다.
+ *
+ * @author Arngard
+ */
+final class NoopGuest extends ThreadGuest {
+
+    private final CountDownLatch latch;
+
+    NoopGuest(int priority) {
+        this(priority, null);
+    }
+
+    NoopGuest(int priority, CountDownLatch latch) {
+        super(priority);
+        this.latch = latch;
+    }
+
+    @Override
+    public Object run(long waitTimeMillis) {
+        if (latch != null) {
+            latch.countDown();
+        }
+        return null;    // after() 를 부르지 않으므로 메인 스레드를 거치지 않는다.
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.hovans.android.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link ThreadHost}에 게스트를 넣는 비용.<br/>
+ * <br/>
+ * offer 는 넣기만 하고 돌아온다. 큐가 끝없이 쌓이지 않도록 {@link AdmissionPolicy#callerRuns(int)}로 역압을 건다.
+ * roundTrip 은 넣은 게스트가 작업 스레드에서 끝날 때까지 기다린다.
+ *
+ * @author Arngard
+ */
+@State(Scope.Benchmark)
+public class OfferBenchmark {
+
+    @Param({"single", "stealing"})
+    public String engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ThreadHost.setMode("stealing".equals(engine) ? ThreadHost.MODE_WORK_STEALING : ThreadHost.MODE_SINGLE);
+        ThreadHost.setAdmissionPolicy(AdmissionPolicy.callerRuns(4096));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ThreadHost.setAdmissionPolicy(AdmissionPolicy.unbounded());
+    }
+
+    @Benchmark
+    public GuestHandle offer() {
+        return new NoopGuest(ThreadGuest.PRIORITY_NORMAL).execute();
+    }
+
+    @Benchmark
+    public void roundTrip() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        new NoopGuest(ThreadGuest.PRIORITY_NORMAL, latch).execute();
+        latch.await();
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.hovans.android.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * 작업 큐를 여러 스레드가 동시에 쓸 때의 비용. 각 스레드가 넣고 바로 꺼낸다.<br/>
+ * <br/>
+ * bucket 은 지금의 {@link PriorityBucketQueue}, heap 은 이전에 쓰던 {@link PriorityBlockingQueue}이다.
+ * 큐에는 미리 {@link #BACKLOG}개를 넣어 두어 힙이 얕지 않게 한다.
+ *
+ * @author Arngard
+ */
+public class QueueBenchmark {
+
+    static final int BACKLOG = 256;
+    private static final int COUNT = 64;
+
+    @State(Scope.Benchmark)
+    public static class Queue {
+
+        @Param({"bucket", "heap"})
+        public String kind;
+
+        BlockingQueue<Runnable> queue;
+
+        @Setup
+        public void setUp() {
+            queue = "bucket".equals(kind)
+                    ? new PriorityBucketQueue(Integer.MAX_VALUE)
+                    : new PriorityBlockingQueue<Runnable>(BACKLOG);
+            final RunnableGuest[] backlog = guests();
+            for (int i = 0; i < BACKLOG; i++) {
+                queue.offer(backlog[i % COUNT]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Items {
+
+        final RunnableGuest[] items = guests();
+        int index;
+    }
+
+    static RunnableGuest[] guests() {
+        final int[] priorities = {ThreadGuest.PRIORITY_IDLE, ThreadGuest.PRIORITY_BELOW_NORMAL, ThreadGuest.PRIORITY_NORMAL,
+                ThreadGuest.PRIORITY_ABOVE_NORMAL, ThreadGuest.PRIORITY_HIGH, ThreadGuest.PRIORITY_GREEDY};
+        final RunnableGuest[] guests = new RunnableGuest[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            guests[i] = new RunnableGuest(new NoopGuest(priorities[i % priorities.length]), 0) {
+                @Override
+                public void run() {
+                }
+            };
+        }
+        return guests;
+    }
+
+    @Benchmark
+    public Runnable offerPoll(Queue queue, Items items) {
+        queue.queue.offer(items.items[items.index++ & (COUNT - 1)]);
+        return queue.queue.poll();
+    }
+
+}
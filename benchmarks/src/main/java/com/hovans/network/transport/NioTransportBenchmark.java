@@ -0,0 +1,105 @@
+package com.hovans.network.transport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NioTransportBenchmark.java
+ * <p>
+ * {@link NioTransport} against a {@link StubHttpServer} on the loopback.
+ * roundTrip waits for each call before the next one, on a kept-alive connection.
+ * burst sends {@link #BURST} calls at once from one thread, and waits for all of them, so the selector thread serves them together
+ * on as many connections as the pool lets the route have.
+ *
+ * @author Ben Yoo
+ */
+@State(Scope.Benchmark)
+public class NioTransportBenchmark {
+
+	static final int BURST = 1000;
+
+	@Param({"64", "16384"})
+	public int bodySize;
+
+	@Param({"5", "64"})
+	public int maxConnectionsPerRoute;
+
+	StubHttpServer server;
+	NioTransport transport;
+	String url;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = new StubHttpServer(bodySize);
+		transport = new NioTransport(null, new ConnectionPool(maxConnectionsPerRoute, ConnectionPool.DEFAULT_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS));
+		url = server.getUrl("/stub");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		transport.close();
+		System.out.println("\n" + transport.getConnectionPool() + ", accepted by the server: " + server.getAcceptedCount());
+		server.close();
+	}
+
+	@Benchmark
+	public int roundTrip() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		CountingCall call = new CountingCall(url, latch);
+		transport.enqueue(call);
+		await(latch);
+		return call.size;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public void burst() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(BURST);
+		for (int i = 0; i < BURST; i++) {
+			transport.enqueue(new CountingCall(url, latch));
+		}
+		await(latch);
+	}
+
+	static void await(CountDownLatch latch) throws InterruptedException {
+		if (latch.await(30, TimeUnit.SECONDS) == false) {
+			throw new IllegalStateException("Calls did not complete");
+		}
+	}
+
+	static final class CountingCall extends HttpCall<Integer> {
+		final CountDownLatch latch;
+		int size;
+
+		CountingCall(String url, CountDownLatch latch) {
+			super(GET, url);
+			this.latch = latch;
+		}
+
+		@Override
+		public Integer parseResponse(HttpResponse response) {
+			return response.getBody().length;
+		}
+
+		@Override
+		public void deliverResponse(Integer result) {
+			size = result;
+			latch.countDown();
+		}
+
+		@Override
+		public void deliverFailure(int statusCode, Throwable cause) {
+			throw new IllegalStateException("Call failed: " + statusCode, cause);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package com.hovans.network.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * StubHttpServer.java
+ * <p>
+ * HTTP/1.1 server on the loopback, which answers every request with the same body and keeps the connection alive.
+ * It runs on one selector thread too, so it can take as many connections as the transport opens.
+ * Requests must not have a body.
+ *
+ * @author Ben Yoo
+ */
+public final class StubHttpServer implements Closeable {
+
+	static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final ServerSocketChannel serverChannel;
+	private final Selector selector;
+	private final Thread thread;
+	private final byte[] response;
+	private final AtomicInteger acceptedCount = new AtomicInteger();
+	private volatile boolean closed;
+
+	public StubHttpServer(int bodySize) throws IOException {
+		StringBuilder body = new StringBuilder(bodySize);
+		for (int i = 0; i < bodySize; i++) {
+			body.append((char) ('a' + i % 26));
+		}
+		response = ("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + bodySize + "\r\n\r\n" + body).getBytes(ISO_8859_1);
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "StubHttpServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public String getUrl(String path) {
+		return "http://127.0.0.1:" + serverChannel.socket().getLocalPort() + path;
+	}
+
+	/**
+	 * @return Number of connections accepted so far. Shows how many are reused.
+	 */
+	public int getAcceptedCount() {
+		return acceptedCount.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void loop() {
+		ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+		try {
+			while (closed == false) {
+				selector.select();
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					try {
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							Client client = (Client) key.attachment();
+							if (key.isReadable()) client.read(readBuffer);
+							if (key.isValid() && key.isWritable()) client.write();
+						}
+					} catch (IOException e) {
+						key.cancel();
+						key.channel().close();
+					}
+				}
+			}
+		} catch (IOException ignored) {
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				try {
+					key.channel().close();
+				} catch (IOException ignored) {
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = serverChannel.accept()) != null) {
+			acceptedCount.incrementAndGet();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			Client client = new Client(channel);
+			client.key = channel.register(selector, SelectionKey.OP_READ, client);
+		}
+	}
+
+	private final class Client {
+		final SocketChannel channel;
+		SelectionKey key;
+		/**
+		 * How much of "\r\n\r\n" the last bytes have matched.
+		 */
+		int matched;
+		final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read(ByteBuffer buffer) throws IOException {
+			buffer.clear();
+			int count = channel.read(buffer);
+			if (count == -1) {
+				key.cancel();
+				channel.close();
+				return;
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b == (matched % 2 == 0 ? '\r' : '\n')) {
+					if (++matched == 4) {
+						matched = 0;
+						pending.add(ByteBuffer.wrap(response));
+					}
+				} else {
+					matched = b == '\r' ? 1 : 0;
+				}
+			}
+			write();
+		}
+
+		void write() throws IOException {
+			ByteBuffer head;
+			while ((head = pending.peek()) != null) {
+				channel.write(head);
+				if (head.hasRemaining()) break;
+				pending.poll();
+			}
+			key.interestOps(pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+}
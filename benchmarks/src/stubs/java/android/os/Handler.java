@@ -0,0 +1,93 @@
+package android.os;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 벤치마크용 대역. 모든 핸들러는 "main" 이라는 데몬 스레드 하나에서 메시지를 처리한다.
+ */
+public class Handler {
+
+    static volatile Thread MAIN_THREAD;
+
+    private static final ScheduledThreadPoolExecutor MAIN = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "main");
+            thread.setDaemon(true);
+            MAIN_THREAD = thread;
+            return thread;
+        }
+    });
+
+    static {
+        MAIN.prestartCoreThread();
+    }
+
+    public interface Callback {
+        boolean handleMessage(Message msg);
+    }
+
+    private final Callback callback;
+
+    public Handler() {
+        this(Looper.getMainLooper(), null);
+    }
+
+    public Handler(Looper looper) {
+        this(looper, null);
+    }
+
+    public Handler(Looper looper, Callback callback) {
+        this.callback = callback;
+    }
+
+    public void handleMessage(Message msg) {
+    }
+
+    public void dispatchMessage(Message msg) {
+        if (callback != null && callback.handleMessage(msg)) {
+            return;
+        }
+        handleMessage(msg);
+    }
+
+    public final Message obtainMessage() {
+        final Message message = Message.obtain();
+        message.target = this;
+        return message;
+    }
+
+    public final boolean sendMessage(Message msg) {
+        return sendMessageDelayed(msg, 0);
+    }
+
+    public final boolean sendMessageDelayed(final Message msg, long delayMillis) {
+        MAIN.schedule(new Runnable() {
+            @Override
+            public void run() {
+                dispatchMessage(msg);
+            }
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        return sendMessageDelayed(msg, uptimeMillis - SystemClock.uptimeMillis());
+    }
+
+    public final boolean post(Runnable runnable) {
+        return postDelayed(runnable, 0);
+    }
+
+    public final boolean postDelayed(Runnable runnable, long delayMillis) {
+        MAIN.schedule(runnable, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    public final Looper getLooper() {
+        return Looper.getMainLooper();
+    }
+
+}
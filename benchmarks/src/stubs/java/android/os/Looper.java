@@ -0,0 +1,25 @@
+package android.os;
+
+/**
+ * 벤치마크용 대역. 메인 루퍼는 {@link Handler}의 단일 스레드이다.
+ */
+public final class Looper {
+
+    private static final Looper MAIN = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+
+    public static Looper myLooper() {
+        return Thread.currentThread() == Handler.MAIN_THREAD ? MAIN : null;
+    }
+
+    public Thread getThread() {
+        return Handler.MAIN_THREAD;
+    }
+
+}
@@ -0,0 +1,20 @@
+package android.os;
+
+/**
+ * 벤치마크용 대역. 재사용 풀은 없다.
+ */
+public final class Message {
+
+    public int what;
+    public Object obj;
+    Handler target;
+
+    public static Message obtain() {
+        return new Message();
+    }
+
+    public void sendToTarget() {
+        target.sendMessage(this);
+    }
+
+}
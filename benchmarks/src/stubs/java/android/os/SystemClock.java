@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * 벤치마크용 대역. 두 시계 모두 {@link System#nanoTime()}을 쓴다.
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000L;
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.hovans.android.constant;
+
+/**
+ * 벤치마크용 대역. 앱 컨텍스트 없이 쓸 수 있도록 고정된 값을 가진다.
+ */
+public class DebugConfig {
+
+    public static final String LOG_TAG = "benchmark";
+
+    public static boolean isShowLogCat() {
+        return false;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.hovans.android.log;
+
+import android.util.Log;
+import com.hovans.android.constant.DebugConfig;
+
+/**
+ * 벤치마크용 대역. 측정을 방해하지 않도록 에러만 출력한다.
+ */
+public class LogByCodeLab {
+
+    public static boolean d() {
+        return DebugConfig.isShowLogCat();
+    }
+
+    public static void v(String message) {
+    }
+
+    public static void d(String message) {
+    }
+
+    public static void i(String message) {
+    }
+
+    public static void w(String message) {
+    }
+
+    public static void e(String message) {
+        Log.e(DebugConfig.LOG_TAG, message);
+    }
+
+    public static void e(Throwable e) {
+        Log.e(DebugConfig.LOG_TAG, String.valueOf(e.getMessage()), e);
+    }
+
+}
@@ -0,0 +1,516 @@
+package com.hovans.android.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides what {@link ThreadHost} does with a guest offered by {@link ThreadGuest#execute()} under load.<br/>
+ * <br/>
+ * Every policy except {@link #unbounded()} has a capacity, the count of guests allowed to wait in queue.
+ * When the queue is at capacity, the policy blocks, sheds, runs on the caller, or rejects.
+ * Capacity is checked without a lock, so it can be exceeded by the count of threads offering at the same moment.
+ * Guests waiting behind others in a {@link ThreadGuest#setLane(Object) lane} take room too. They are admitted when they enter the lane.<br/>
+ * <br/>
+ * A rejected guest, and a queued guest dropped to make room, get {@link ThreadGuest#offerFail()}.
+ * To watch the decisions, set a {@link Listener}.<br/>
+ * ex)<pre>
+ * ThreadHost.setAdmissionPolicy(AdmissionPolicy.dropOldestLowestPriority(1024).setListener(new AdmissionPolicy.Listener() {
+ *     public void onDropped(ThreadGuest dropped, ThreadGuest admitted) {
+ *         LogByCodeLab.w("Dropped " + dropped.getId());
+ *     }
+ * }));</pre>
+ *
+ * @author Arngard
+ * @see ThreadHost#setAdmissionPolicy(AdmissionPolicy)
+ */
+public abstract class AdmissionPolicy {
+
+    /**
+     * Reason of rejection. Queue is at capacity, or host is shut down.
+     */
+    public static final int REJECTED_FULL = 1;
+    /**
+     * Reason of rejection. Queue stayed at capacity until timeout of {@link #blockWithTimeout(int, long)}.
+     */
+    public static final int REJECTED_TIMEOUT = 2;
+    /**
+     * Reason of rejection. Rate limit of {@link #tokenBucket(int, double, int)} exceeded.
+     */
+    public static final int REJECTED_RATE_LIMITED = 3;
+    /**
+     * Reason of rejection. The offering thread was interrupted while blocked.
+     */
+    public static final int REJECTED_INTERRUPTED = 4;
+
+    /**
+     * Callbacks of admission decisions. Override what you need.
+     * Called on the thread offering the guest, so keep them short.
+     */
+    public static class Listener {
+
+        /**
+         * The guest is not queued. {@link ThreadGuest#offerFail()} follows.
+         *
+         * @param reason {@link #REJECTED_FULL}, {@link #REJECTED_TIMEOUT}, {@link #REJECTED_RATE_LIMITED} or {@link #REJECTED_INTERRUPTED}.
+         */
+        public void onRejected(ThreadGuest guest, int reason) {
+        }
+
+        /**
+         * A queued guest is removed to make room. {@link ThreadGuest#offerFail()} of dropped guest follows.
+         *
+         * @param dropped  Removed guest.
+         * @param admitted Guest queued instead.
+         */
+        public void onDropped(ThreadGuest dropped, ThreadGuest admitted) {
+        }
+
+        /**
+         * The guest will be run on the offering thread, right after this callback.
+         */
+        public void onCallerRuns(ThreadGuest guest) {
+        }
+
+        /**
+         * The offering thread waited for room, whether the guest was queued in the end or not.
+         *
+         * @param waitedMillis Time blocked.
+         */
+        public void onBlocked(ThreadGuest guest, long waitedMillis) {
+        }
+
+    }
+
+    private static final Listener EMPTY_LISTENER = new Listener();
+
+    final int capacity;
+    private volatile Listener listener = EMPTY_LISTENER;
+
+    AdmissionPolicy(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param listener Callbacks. null to remove.
+     * @return This instance.
+     */
+    public AdmissionPolicy setListener(Listener listener) {
+        this.listener = listener == null ? EMPTY_LISTENER : listener;
+        return this;
+    }
+
+    /**
+     * @return Count of guests allowed to wait in queue.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    Listener listener() {
+        return listener;
+    }
+
+	/*	정책별 동작	*/
+
+    /**
+     * 엔진에 작업을 넣거나, 넣지 않기로 결정한다. 거절할 때는 {@link Listener#onRejected(ThreadGuest, int)}까지 이 메소드가 부른다.
+     *
+     * @return 대기열에 넣었거나 호출한 스레드에서 수행했으면 true. false 이면 ThreadHost 가 offerFail 을 부른다.
+     */
+    abstract boolean admit(HostEngine engine, RunnableGuest runnable);
+
+    /**
+     * 여러 작업을 한 번의 판단으로 받아들인다. 모두 넣어도 자리가 남으면 엔진에 한 번에 넘긴다.
+     * 그렇지 않으면 아무것도 넣지 않으므로, 호출한 쪽이 {@link #admit(HostEngine, RunnableGuest)}로 하나씩 넣는다.
+     *
+     * @return 앞에서부터 받아들인 수. 나머지는 아직 넣지 않았다.
+     */
+    int admitAll(HostEngine engine, RunnableGuest[] runnables, int count) {
+        if (occupied(engine) > capacity - count) {
+            return 0;
+        }
+        return engine.offerAll(runnables, count);
+    }
+
+    /**
+     * 레인에서 앞선 게스트를 기다릴 수 있는 작업을 받아들일지 정한다. 대기열에는 넣지 않는다.
+     * 받아들인 작업은 레인의 차례가 되면 정책을 다시 거치지 않고 대기열에 들어간다. 레인에서 기다리는 동안에도 자리를 차지한다.<br/>
+     * 기본 동작은 자리가 없으면 거절하는 것이다.
+     *
+     * @return 받아들였으면 true. false 이면 거절을 알린 뒤이고, ThreadHost 가 offerFail 을 부른다.
+     */
+    boolean admitToLane(HostEngine engine, RunnableGuest runnable) {
+        if (occupied(engine) >= capacity) {
+            listener.onRejected(runnable.mGuest, REJECTED_FULL);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 자리를 차지하고 있는 작업의 수. 엔진의 대기열에 있거나, 레인에서 앞선 게스트를 기다리는 작업이다.
+     */
+    static int occupied(HostEngine engine) {
+        return engine.guestCount() + ThreadHost.laneWaitingCount();
+    }
+
+    /**
+     * 작업 스레드가 대기열에서 게스트를 하나 꺼냈을 때 호출된다. 자리가 나기를 기다리는 정책에서 사용한다.
+     */
+    void onDequeued() {
+    }
+
+    /**
+     * 정책이 교체될 때 호출된다. 기다리고 있는 스레드가 있다면 풀어준다.
+     */
+    void release() {
+    }
+
+    /**
+     * 엔진에 넣어 보고, 넣지 못하면 거절을 알린다.
+     */
+    final boolean offerOrReject(HostEngine engine, RunnableGuest runnable) {
+        if (engine.offer(runnable)) {
+            return true;
+        }
+        listener.onRejected(runnable.mGuest, REJECTED_FULL);
+        return false;
+    }
+
+	/*	생성	*/
+
+    /**
+     * Policy that only keeps the hard limit, {@link com.hovans.android.constant.ThreadConfig#THREAD_BUCKET_MAX_SIZE}. Default.
+     */
+    public static AdmissionPolicy unbounded() {
+        return new Unbounded();
+    }
+
+    /**
+     * Policy that makes the offering thread wait for room, up to the timeout. Rejects if it times out.<br/>
+     * <br/>
+     * Threads of ThreadHost itself(workers, timer) never wait, because the room is made by them.
+     * They queue the guest regardless of capacity. Be careful to offer from the main thread with this policy.
+     *
+     * @param capacity      Count of guests allowed to wait in queue.
+     * @param timeoutMillis Maximum time to wait for room.
+     */
+    public static AdmissionPolicy blockWithTimeout(int capacity, long timeoutMillis) {
+        return new BlockWithTimeout(capacity, timeoutMillis);
+    }
+
+    /**
+     * Policy that drops the oldest guest of the lowest priority level in queue, to make room for new one.
+     * Rejects if all the queued guests are in higher priority level than new one.
+     *
+     * @param capacity Count of guests allowed to wait in queue.
+     * @see HostMetrics#levelOf(int)
+     */
+    public static AdmissionPolicy dropOldestLowestPriority(int capacity) {
+        return new DropOldestLowestPriority(capacity);
+    }
+
+    /**
+     * Policy that runs the guest on the offering thread, when the queue is at capacity.
+     * This slows down the producer naturally. Be careful to offer from the main thread with this policy.
+     * A guest of a {@link ThreadGuest#setLane(Object) lane} is rejected instead, because it must not run before the guests ahead of it.
+     *
+     * @param capacity Count of guests allowed to wait in queue.
+     */
+    public static AdmissionPolicy callerRuns(int capacity) {
+        return new CallerRuns(capacity);
+    }
+
+    /**
+     * Policy that limits the rate of offer per priority level, and rejects over the capacity.
+     * Rate of every level starts with given values. Change them with {@link TokenBucket#setRate(int, double, int)}.
+     *
+     * @param capacity         Count of guests allowed to wait in queue.
+     * @param permitsPerSecond Long-term rate of each level.
+     * @param burst            Count of guests allowed at once after idle, of each level.
+     */
+    public static TokenBucket tokenBucket(int capacity, double permitsPerSecond, int burst) {
+        return new TokenBucket(capacity, permitsPerSecond, burst);
+    }
+
+    private static final class Unbounded extends AdmissionPolicy {
+
+        Unbounded() {
+            super(Integer.MAX_VALUE);
+        }
+
+        @Override
+        boolean admit(HostEngine engine, RunnableGuest runnable) {
+            return offerOrReject(engine, runnable);
+        }
+
+        @Override
+        boolean admitToLane(HostEngine engine, RunnableGuest runnable) {
+            return true;
+        }
+
+    }
+
+    private static final class BlockWithTimeout extends AdmissionPolicy {
+
+        private final long timeoutNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition roomMade = lock.newCondition();
+        private volatile int waiters = 0;
+        private volatile boolean isReleased = false;
+
+        BlockWithTimeout(int capacity, long timeoutMillis) {
+            super(capacity);
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+        }
+
+        @Override
+        boolean admit(HostEngine engine, RunnableGuest runnable) {
+            return awaitRoom(engine, runnable) && offerOrReject(engine, runnable);
+        }
+
+        @Override
+        boolean admitToLane(HostEngine engine, RunnableGuest runnable) {
+            return awaitRoom(engine, runnable);
+        }
+
+        /**
+         * @return 자리가 났거나 기다리지 않는 스레드이면 true. false 이면 거절을 알린 뒤이다.
+         */
+        private boolean awaitRoom(HostEngine engine, RunnableGuest runnable) {
+            if (occupied(engine) < capacity || ThreadHost.isInternalThread()) {
+                return true;
+            }
+            final long start = System.nanoTime();
+            int reason = 0;
+            lock.lock();
+            try {
+                waiters++;    // 먼저 기다릴 것임을 알리고 다시 확인해야 신호를 놓치지 않는다.
+                try {
+                    long nanos = timeoutNanos;
+                    while (occupied(engine) >= capacity && !isReleased) {
+                        if (nanos <= 0) {
+                            reason = REJECTED_TIMEOUT;
+                            break;
+                        }
+                        nanos = roomMade.awaitNanos(nanos);
+                    }
+                } finally {
+                    waiters--;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();    // 인터럽트 상태를 호출한 쪽에 돌려준다.
+                reason = REJECTED_INTERRUPTED;
+            } finally {
+                lock.unlock();
+            }
+            listener().onBlocked(runnable.mGuest, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (reason != 0) {
+                listener().onRejected(runnable.mGuest, reason);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        void onDequeued() {
+            if (waiters > 0) {    // 기다리는 스레드가 있을 때만 락을 잡는다.
+                lock.lock();
+                try {
+                    roomMade.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        @Override
+        void release() {
+            isReleased = true;
+            lock.lock();
+            try {
+                roomMade.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+    }
+
+    private static final class DropOldestLowestPriority extends AdmissionPolicy {
+
+        DropOldestLowestPriority(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        boolean admit(HostEngine engine, RunnableGuest runnable) {
+            return makeRoom(engine, runnable) && offerOrReject(engine, runnable);
+        }
+
+        @Override
+        boolean admitToLane(HostEngine engine, RunnableGuest runnable) {
+            return makeRoom(engine, runnable);
+        }
+
+        /**
+         * 자리가 없으면 새 게스트보다 덜 우선적인 게스트를 하나 버린다. 레인에서 기다리는 작업은 버리지 않는다.
+         *
+         * @return 자리가 있었거나 만들었으면 true. false 이면 거절을 알린 뒤이다.
+         */
+        private boolean makeRoom(HostEngine engine, RunnableGuest runnable) {
+            if (occupied(engine) >= capacity) {
+                final RunnableGuest victim = engine.pollLowest(PriorityBucketQueue.bucketOf(runnable.mGuest.getEffectivePriority()));
+                if (victim == null) {    // 모두 더 우선적이다. 새 게스트를 버린다.
+                    listener().onRejected(runnable.mGuest, REJECTED_FULL);
+                    return false;
+                }
+                if (!victim.isStale()) {    // 승격되어 이미 수행된 게스트가 남긴 항목이면, 알릴 것 없이 자리만 낸다.
+                    listener().onDropped(victim.mGuest, runnable.mGuest);
+                }
+                ThreadHost.dropped(victim);
+            }
+            return true;
+        }
+
+    }
+
+    private static final class CallerRuns extends AdmissionPolicy {
+
+        CallerRuns(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        boolean admit(HostEngine engine, RunnableGuest runnable) {
+            if (occupied(engine) < capacity && engine.offer(runnable)) {
+                return true;
+            }
+            listener().onCallerRuns(runnable.mGuest);
+            runnable.run();
+            return true;
+        }
+
+    }
+
+    /**
+     * Policy of {@link #tokenBucket(int, double, int)}.
+     */
+    public static final class TokenBucket extends AdmissionPolicy {
+
+        private final AtomicReferenceArray<Limiter> limiters = new AtomicReferenceArray<Limiter>(HostMetrics.LEVEL_COUNT);
+
+        TokenBucket(int capacity, double permitsPerSecond, int burst) {
+            super(capacity);
+            for (int level = 0; level < HostMetrics.LEVEL_COUNT; level++) {
+                setRate(level, permitsPerSecond, burst);
+            }
+        }
+
+        /**
+         * Change the rate of a priority level. Can be called while in use.
+         *
+         * @param level            {@link HostMetrics#levelOf(int)}
+         * @param permitsPerSecond Long-term rate. 0 or less means no limit.
+         * @param burst            Count of guests allowed at once after idle. At least 1.
+         * @return This instance.
+         */
+        public TokenBucket setRate(int level, double permitsPerSecond, int burst) {
+            limiters.set(level, permitsPerSecond <= 0 ? null : new Limiter(permitsPerSecond, Math.max(1, burst)));
+            return this;
+        }
+
+        @Override
+        boolean admit(HostEngine engine, RunnableGuest runnable) {
+            final Limiter limiter = limiters.get(PriorityBucketQueue.bucketOf(runnable.mGuest.getPriority()));
+            if (!acquire(engine, runnable, limiter)) {
+                return false;
+            }
+            if (offerOrReject(engine, runnable)) {
+                return true;
+            }
+            if (limiter != null) {    // 그 사이에 가득 차서 넣지 못했다. 쓴 토큰을 돌려준다.
+                limiter.refund();
+            }
+            return false;
+        }
+
+        @Override
+        boolean admitToLane(HostEngine engine, RunnableGuest runnable) {
+            return acquire(engine, runnable, limiters.get(PriorityBucketQueue.bucketOf(runnable.mGuest.getPriority())));
+        }
+
+        /**
+         * 자리와 속도를 확인하고 토큰을 쓴다.
+         *
+         * @return 받아들일 수 있으면 true. false 이면 거절을 알린 뒤이다.
+         */
+        private boolean acquire(HostEngine engine, RunnableGuest runnable, Limiter limiter) {
+            if (occupied(engine) >= capacity) {    // 자리가 없어 거절될 게스트가 속도 예산을 쓰지 않도록 먼저 본다.
+                listener().onRejected(runnable.mGuest, REJECTED_FULL);
+                return false;
+            }
+            if (limiter != null && !limiter.tryAcquire()) {
+                listener().onRejected(runnable.mGuest, REJECTED_RATE_LIMITED);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 속도는 게스트마다 재므로 한 번에 받아들이지 않는다.
+         */
+        @Override
+        int admitAll(HostEngine engine, RunnableGuest[] runnables, int count) {
+            return 0;
+        }
+
+    }
+
+    /**
+     * 토큰 버킷과 같은 결과를 내는 GCRA(generic cell rate algorithm). 이론상 다음 도착 시각 하나만 CAS 로 갱신하므로 락이 없다.
+     */
+    private static final class Limiter {
+
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        /**
+         * 이론상 다음 도착 시각. 이 시각보다 {@link #toleranceNanos} 이상 앞서 도착하면 거절한다.
+         */
+        private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+        Limiter(double permitsPerSecond, int burst) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+        }
+
+        boolean tryAcquire() {
+            final long now = System.nanoTime();
+            while (true) {
+                final long arrival = theoreticalArrival.get();
+                final long base = arrival - now > 0 ? arrival : now;    // nanoTime 은 차이로만 비교한다.
+                if (base - now > toleranceNanos) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(arrival, base + intervalNanos)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * {@link #tryAcquire()}로 얻은 허가를 쓰지 않고 돌려준다.
+         */
+        void refund() {
+            theoreticalArrival.addAndGet(-intervalNanos);
+        }
+
+    }
+
+}
@@ -10,8 +10,13 @@ import java.util.concurrent.TimeoutException;
 /**
  * Simple guide to get {@link ThreadGuest}'s result, synchronously.<br/>
  * <br/>
- * Be aware of potential deadlock.
- * Don't execute in another {@link FutureCaller} or {@link ThreadGuest}<br/>
+ * If {@link #execute()} is called on a thread of {@link ThreadHost}, for example in another {@link FutureCaller} or {@link ThreadGuest},
+ * {@link #call()} runs right there instead of waiting for another guest. So it does not deadlock the host.<br/>
+ * To get the result without blocking any thread, use {@link #executeAsync()}.<br/>
+ * <br/>
+ * A thread blocked in {@link #execute()} waits as long as the guest waits in queue.
+ * So give the priority of the caller to {@link #FutureCaller(int)}, then the guest is queued with it.
+ * Called from another guest, it is queued at least with the priority of that guest.<br/>
  * <br/>
  * ex)<pre>
  * Integer val = new FutureCaller&lt;Integer&gt;() {
@@ -29,17 +34,57 @@ import java.util.concurrent.TimeoutException;
 @SuppressWarnings("unused")
 public abstract class FutureCaller<T> implements Callable<T> {
 
-    private FutureTask<T> mFuture;
+    private CallerTask<T> mFuture;
+    /**
+     * 호출한 쪽의 우선순위. 게스트가 이 우선순위로 대기열에 들어간다.
+     */
+    private final int mPriority;
 
     /**
-     * initialize new FutureCaller to run {@link #call()} on ThreadHost.
+     * initialize new FutureCaller to run {@link #call()} on ThreadHost, with {@link ThreadGuest#PRIORITY_NORMAL}.
      */
     public FutureCaller() {
-        mFuture = new FutureTask<T>(this);
+        this(ThreadGuest.PRIORITY_NORMAL);
+    }
+
+    /**
+     * initialize new FutureCaller to run {@link #call()} on ThreadHost.
+     *
+     * @param priority Priority of the caller. The guest running {@link #call()} is queued with it,
+     *                 so the caller does not wait behind less prior guests. Also used by {@link #executeAsync()}.
+     *                 A calling guest of higher priority raises it.
+     */
+    public FutureCaller(int priority) {
+        mPriority = priority;
+        mFuture = new CallerTask<T>(this);
+    }
+
+    /**
+     * @return Priority given on construction.
+     */
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return 게스트가 대기열에 들어갈 우선순위. 다른 게스트 안에서 호출되었으면 그 게스트보다 뒤서지 않는다.
+     */
+    private int queuedPriority() {
+        final ThreadGuest caller = ThreadHost.currentGuest();
+        return caller == null ? mPriority : Math.max(mPriority, caller.getEffectivePriority());
     }
 
     private void executeImpl() {
-        new ThreadGuest() {
+        if (ThreadHost.isInternalThread()) {    // 호스트의 스레드를 기다리게 하면 그 자리를 비워줄 스레드가 없을 수 있다. 바로 수행한다.
+            mFuture.run();
+            return;
+        }
+        new ThreadGuest(queuedPriority()) {
+
+            @Override
+            public void offerFail() {    // 거절되거나 대기열에서 밀려났다. 기다리는 쪽이 영원히 멈추지 않도록 실패로 끝낸다.
+                mFuture.fail(new IllegalStateException("Failed to enter ThreadHost."));
+            }
 
             @Override
             public Object run(long waitTimeMillis) {
@@ -51,12 +96,13 @@ public abstract class FutureCaller<T> implements Callable<T> {
 
     /**
      * Run {@link #call()}, and return the result.
-     * It will block current thread.
+     * It will block current thread. On a thread of {@link ThreadHost}, call() runs on current thread.
      *
      * @return result of {@link ThreadGuest#run(long)}.
      * @throws CancellationException if the computation was cancelled
      * @throws InterruptedException  if the current thread was interrupted while waiting
-     * @throws ExecutionException    if the computation threw an exception
+     * @throws ExecutionException    if the computation threw an exception,
+     *                               or the guest was rejected or dropped by {@link AdmissionPolicy}
      * @see #execute(long, TimeUnit)
      */
     public T execute() throws CancellationException, InterruptedException, ExecutionException {
@@ -66,14 +112,15 @@ public abstract class FutureCaller<T> implements Callable<T> {
 
     /**
      * Run {@link #call()}, and return the result.
-     * It will block current thread, until time-out.
+     * It will block current thread, until time-out. On a thread of {@link ThreadHost}, call() runs on current thread, without time-out.
      *
      * @param timeout argument of {@link FutureTask#get(long, java.util.concurrent.TimeUnit)}
      * @param unit    argument of {@link FutureTask#get(long, java.util.concurrent.TimeUnit)}
      * @return result of {@link ThreadGuest#run(long)}.
      * @throws CancellationException if the computation was cancelled
      * @throws InterruptedException  if the current thread was interrupted while waiting
-     * @throws ExecutionException    if the computation threw an exception
+     * @throws ExecutionException    if the computation threw an exception,
+     *                               or the guest was rejected or dropped by {@link AdmissionPolicy}
      * @throws TimeoutException      if the wait timed out
      * @see #execute()
      */
@@ -82,6 +129,27 @@ public abstract class FutureCaller<T> implements Callable<T> {
         return mFuture.get(timeout, unit);
     }
 
+    /**
+     * Run {@link #call()} on ThreadHost, without blocking any thread.
+     * Use this instead of {@link #execute()} from the main thread or from another guest.
+     *
+     * @return future of the result. Doesn't share state with {@link #execute()}.
+     */
+    public GuestFuture<T> executeAsync() {
+        return GuestFuture.supply(queuedPriority(), this);
+    }
+
+    /**
+     * Run {@link #call()} on ThreadHost, and pass the result to the callback, without blocking any thread.
+     *
+     * @param callback invoked on the thread completing the call. Use {@link GuestFuture#whenCompleteOnMain(GuestFuture.Callback)} of
+     *                 {@link #executeAsync()} to get it on the main thread.
+     * @return future of the result.
+     */
+    public GuestFuture<T> executeAsync(GuestFuture.Callback<? super T> callback) {
+        return executeAsync().whenComplete(callback);
+    }
+
     /**
      * Definition of code to run on ThreadGuest, when execute().
      * Don't use this method directly. use {@link #execute()}.
@@ -91,4 +159,19 @@ public abstract class FutureCaller<T> implements Callable<T> {
     @Override
     public abstract T call() throws Exception;
 
+    /**
+     * 게스트가 호스트에 들어가지 못했을 때 밖에서 실패로 끝낼 수 있는 {@link FutureTask}.
+     */
+    private static final class CallerTask<T> extends FutureTask<T> {
+
+        CallerTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        void fail(Throwable cause) {
+            setException(cause);
+        }
+
+    }
+
 }
@@ -0,0 +1,745 @@
+package com.hovans.android.concurrent;
+
+import android.util.Log;
+import com.hovans.android.constant.DebugConfig;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Typed result of work running on {@link ThreadHost}, which can be composed like a chain of {@link ThreadGuest}.<br/>
+ * <br/>
+ * Continuations run on the worker thread that completes the future, without passing through the main thread.
+ * If the future is completed on another thread, the continuation is offered to ThreadHost as a guest.
+ * Only the {@code ...OnMain} variants hop to the main thread.<br/>
+ * <br/>
+ * ex)<pre>
+ * GuestFuture.supply(new Callable&lt;Bitmap&gt;() {
+ *     public Bitmap call() throws Exception {
+ *         return decode(path);            // on ThreadHost.
+ *     }
+ * })
+ * .thenApply(new GuestFuture.Function&lt;Bitmap, Bitmap&gt;() {
+ *     public Bitmap apply(Bitmap bitmap) {
+ *         return blur(bitmap);            // on ThreadHost, right after decode().
+ *     }
+ * })
+ * .orTimeout(3, TimeUnit.SECONDS)
+ * .whenCompleteOnMain(new GuestFuture.Callback&lt;Bitmap&gt;() {
+ *     public void onComplete(Bitmap bitmap, Throwable error) {
+ *         show(bitmap);                   // on main thread.
+ *     }
+ * });</pre>
+ *
+ * @param <T> type of result.
+ * @author Arngard
+ */
+public class GuestFuture<T> implements Future<T> {
+
+    /**
+     * Transformation of a result.
+     *
+     * @param <A> type of input.
+     * @param <B> type of output.
+     */
+    public interface Function<A, B> {
+        /**
+         * @param value result of previous step.
+         * @return result of this step.
+         * @throws Exception will complete the next future exceptionally.
+         */
+        B apply(A value) throws Exception;
+    }
+
+    /**
+     * Receives the outcome of a future.
+     *
+     * @param <T> type of result.
+     */
+    public interface Callback<T> {
+        /**
+         * @param value result. null if failed.
+         * @param error cause of failure. null if succeeded.
+         */
+        void onComplete(T value, Throwable error);
+    }
+
+    /**
+     * {@link #result}에 null 결과를 담을 때 사용.
+     */
+    private static final Object NULL_RESULT = new Object();
+    /**
+     * 완료되어 더 이상 후속 작업을 쌓지 않는 상태의 {@link #completions} 머리.
+     */
+    private static final Completion CLOSED = new Completion(false) {
+        @Override
+        void fire() {
+        }
+    };
+    /**
+     * 완료된 future 의 {@link #timers}.
+     */
+    private static final TimerLink TIMERS_CLOSED = new TimerLink(null, null);
+
+    /**
+     * null 이면 진행중. {@link Failure}이면 실패. 그 밖에는 결과.
+     */
+    private final AtomicReference<Object> result = new AtomicReference<Object>(null);
+    /**
+     * 완료되면 수행할 후속 작업의 스택.
+     */
+    private final AtomicReference<Completion> completions = new AtomicReference<Completion>(null);
+    /**
+     * 후속 작업을 게스트로 보낼 때 사용할 우선순위.
+     */
+    private final int priority;
+    /**
+     * 본문을 수행하고 있는 스레드. {@link #cancel(boolean)}에서 인터럽트할 때 사용.
+     */
+    private volatile Thread runner;
+    /**
+     * {@link #orTimeout(long, TimeUnit)}로 등록된 타이머의 스택. 완료되면 모두 취소하고 {@link #TIMERS_CLOSED}로 닫는다.
+     */
+    private final AtomicReference<TimerLink> timers = new AtomicReference<TimerLink>(null);
+    /**
+     * {@link #supply(int, Callable)}로 보낸 게스트의 핸들. 취소되면 대기열에서도 취소한다.
+     */
+    private volatile GuestHandle handle;
+    /**
+     * 이 future 의 완료를 결정하는 앞선 future. 후속 작업으로 만들어졌을 때만 있다. 우선순위를 물려줄 때 거슬러 올라간다.
+     */
+    private volatile GuestFuture<?> upstream;
+
+    /**
+     * Create incomplete future. Complete it with {@link #complete(Object)} or {@link #completeExceptionally(Throwable)}.
+     *
+     * @param priority priority of guests, used when continuations must be offered to ThreadHost.
+     */
+    public GuestFuture(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Create incomplete future with {@link ThreadGuest#PRIORITY_NORMAL}.
+     */
+    public GuestFuture() {
+        this(ThreadGuest.PRIORITY_NORMAL);
+    }
+
+    /**
+     * Run the task on ThreadHost with {@link ThreadGuest#PRIORITY_NORMAL}.
+     *
+     * @param task will be called on ThreadHost.
+     * @return future of task's result.
+     */
+    public static <T> GuestFuture<T> supply(Callable<T> task) {
+        return supply(ThreadGuest.PRIORITY_NORMAL, task);
+    }
+
+    /**
+     * Run the task on ThreadHost.
+     * If the future is cancelled before the guest runs, the task will not be called.
+     *
+     * @param priority priority of guest.
+     * @param task     will be called on ThreadHost.
+     * @return future of task's result.
+     */
+    public static <T> GuestFuture<T> supply(int priority, final Callable<T> task) {
+        if (task == null) {
+            throw new NullPointerException("task is null.");
+        }
+        final GuestFuture<T> future = new GuestFuture<T>(priority);
+        future.handle = new ThreadGuest(priority) {
+            @Override
+            public void offerFail() {
+                future.completeExceptionally(new IllegalStateException("Failed to enter ThreadHost."));
+            }
+
+            @Override
+            public Object run(long waitTimeMillis) {
+                future.runTask(task);
+                return null;
+            }
+        }.execute();
+        return future;
+    }
+
+    /**
+     * @return future already completed with the value.
+     */
+    public static <T> GuestFuture<T> completed(T value) {
+        final GuestFuture<T> future = new GuestFuture<T>();
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * @return future already completed exceptionally with the error.
+     */
+    public static <T> GuestFuture<T> failed(Throwable error) {
+        final GuestFuture<T> future = new GuestFuture<T>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * @param futures targets.
+     * @return future completed with null when all targets succeed,
+     * or completed exceptionally as soon as one of them fails.
+     */
+    public static GuestFuture<Void> allOf(GuestFuture<?>... futures) {
+        final GuestFuture<Void> all = new GuestFuture<Void>(maxPriority(futures));
+        if (futures.length == 0) {
+            all.complete(null);
+            return all;
+        }
+        final AtomicInteger remaining = new AtomicInteger(futures.length);
+        for (final GuestFuture<?> future : futures) {
+            future.addCompletion(new Completion(false) {
+                @Override
+                void fire() {
+                    final Throwable error = future.getFailure();
+                    if (error != null) {
+                        all.completeExceptionally(error);
+                    } else if (remaining.decrementAndGet() == 0) {
+                        all.complete(null);
+                    }
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * @param futures targets.
+     * @return future completed in the same way as the first target to complete.
+     */
+    @SafeVarargs
+    public static <T> GuestFuture<T> anyOf(GuestFuture<? extends T>... futures) {
+        int priority = futures.length == 0 ? ThreadGuest.PRIORITY_NORMAL : ThreadGuest.PRIORITY_IDLE;
+        for (GuestFuture<? extends T> future : futures) {    // 배열을 다른 메소드에 넘기지 않아야 @SafeVarargs 가 성립한다.
+            priority = Math.max(priority, future.priority);
+        }
+        final GuestFuture<T> any = new GuestFuture<T>(priority);
+        for (final GuestFuture<? extends T> future : futures) {
+            future.addCompletion(new Completion(false) {
+                @Override
+                void fire() {
+                    any.relayFrom(future);
+                }
+            });
+        }
+        return any;
+    }
+
+    private static int maxPriority(GuestFuture<?>[] futures) {
+        int max = ThreadGuest.PRIORITY_IDLE;
+        for (GuestFuture<?> future : futures) {
+            max = Math.max(max, future.priority);
+        }
+        return futures.length == 0 ? ThreadGuest.PRIORITY_NORMAL : max;
+    }
+
+	/*	완료	*/
+
+    /**
+     * Complete with the value, if not completed yet.
+     *
+     * @return true if this invocation completed the future.
+     */
+    public boolean complete(T value) {
+        return completeWith(value == null ? NULL_RESULT : value);
+    }
+
+    /**
+     * Complete with the error, if not completed yet.
+     *
+     * @return true if this invocation completed the future.
+     */
+    public boolean completeExceptionally(Throwable error) {
+        if (error == null) {
+            throw new NullPointerException("error is null.");
+        }
+        return completeWith(new Failure(error));
+    }
+
+    /**
+     * Complete with {@link CancellationException}, if not completed yet.
+     *
+     * @param mayInterruptIfRunning If true, interrupt the thread running {@link #supply(int, Callable) supplied} task.
+     * @return true if this invocation cancelled the future.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        final boolean cancelled = completeWith(new Failure(new CancellationException()));
+        final GuestHandle pending = handle;
+        if (cancelled && pending != null) {
+            pending.cancel();    // 아직 대기 중이라면 수행되지 않는다.
+        }
+        if (cancelled && mayInterruptIfRunning) {
+            synchronized (this) {    // 수행을 마친 스레드는 인터럽트하지 않는다. exitRunner() 참고.
+                final Thread thread = runner;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Complete exceptionally with {@link TimeoutException}, if not completed in the given time.
+     *
+     * @return this instance.
+     */
+    public GuestFuture<T> orTimeout(long timeout, TimeUnit unit) {
+        if (!isDone()) {
+            final TimingWheel.Timeout scheduled = ThreadHost.runDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    completeExceptionally(new TimeoutException());
+                }
+            }, unit.toMillis(timeout));
+            while (true) {
+                final TimerLink head = timers.get();
+                if (head == TIMERS_CLOSED) {    // 등록하는 사이에 완료되었다.
+                    scheduled.cancel();
+                    break;
+                }
+                if (timers.compareAndSet(head, new TimerLink(scheduled, head))) {
+                    break;
+                }
+            }
+        }
+        return this;
+    }
+
+    private boolean completeWith(Object outcome) {
+        if (!result.compareAndSet(null, outcome)) {
+            return false;
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        upstream = null;    // 완료되었으니 앞선 future 들을 붙잡고 있지 않는다.
+        TimerLink link = timers.getAndSet(TIMERS_CLOSED);
+        while (link != null) {    // 더 이상 필요 없는 타이머는 바퀴에서 뺀다.
+            link.timeout.cancel();
+            link = link.next;
+        }
+        Completion head = completions.getAndSet(CLOSED);
+        Completion ordered = null;
+        while (head != null) {    // 등록된 순서로 수행하기 위해 뒤집는다.
+            final Completion next = head.next;
+            head.next = ordered;
+            ordered = head;
+            head = next;
+        }
+        while (ordered != null) {
+            final Completion next = ordered.next;
+            dispatch(ordered);
+            ordered = next;
+        }
+        return true;
+    }
+
+    /**
+     * {@link #supply(int, Callable)}로 보낸 게스트가 아직 대기 중이면, 대기열에서는 취소하고 호출한 스레드에서 수행한다.
+     * 작업 스레드가 다른 게스트의 결과를 기다려야 할 때, 그 게스트를 기다리는 대신 직접 수행하기 위해 사용.
+     *
+     * @param task supply 에 넘겼던 작업
+     * @return 이 호출에서 수행했으면 true.
+     */
+    boolean runHereIfPending(Callable<T> task) {
+        final GuestHandle pending = handle;
+        if (pending == null || !pending.cancel()) {    // 이미 수행을 시작했거나 대기열을 거치지 않았다.
+            return false;
+        }
+        runTask(task);
+        return true;
+    }
+
+    private void runTask(Callable<T> task) {
+        if (isDone()) {    // 이미 취소되었다.
+            return;
+        }
+        final boolean wasInterrupted = enterRunner();
+        try {
+            complete(task.call());
+        } catch (Throwable e) {
+            completeExceptionally(e);
+        } finally {
+            exitRunner(wasInterrupted);
+        }
+    }
+
+    /**
+     * 현재 스레드가 본문을 수행한다. {@link #cancel(boolean)}이 인터럽트할 수 있게 된다.
+     *
+     * @return 현재 스레드가 이미 인터럽트되어 있었으면 true.
+     */
+    private boolean enterRunner() {
+        final Thread current = Thread.currentThread();
+        runner = current;
+        return current.isInterrupted();
+    }
+
+    /**
+     * 본문을 마쳤다. 작업 스레드는 다음 게스트와 공유되므로, 취소로 인한 인터럽트가 남지 않도록 지운다.
+     * 들어올 때부터 인터럽트되어 있었다면 그 상태는 호출한 쪽의 것이므로 남겨 둔다.
+     *
+     * @param wasInterrupted {@link #enterRunner()}의 리턴값
+     */
+    private void exitRunner(boolean wasInterrupted) {
+        synchronized (this) {    // 이 뒤로는 cancel() 이 이 스레드를 인터럽트하지 않는다.
+            runner = null;
+        }
+        if (!wasInterrupted) {
+            Thread.interrupted();
+        }
+    }
+
+    private void relayFrom(GuestFuture<? extends T> source) {
+        final Throwable error = source.getFailure();
+        if (error != null) {
+            completeExceptionally(error);
+        } else {
+            complete(source.getNow());
+        }
+    }
+
+	/*	후속 작업	*/
+
+    /**
+     * @param fn applied to the result on ThreadHost.
+     * @return future of fn's result. Fails if this future fails.
+     */
+    public <R> GuestFuture<R> thenApply(Function<? super T, ? extends R> fn) {
+        return applyImpl(fn, false);
+    }
+
+    /**
+     * Same as {@link #thenApply(Function)}, but fn runs on the main thread.
+     */
+    public <R> GuestFuture<R> thenApplyOnMain(Function<? super T, ? extends R> fn) {
+        return applyImpl(fn, true);
+    }
+
+    private <R> GuestFuture<R> applyImpl(final Function<? super T, ? extends R> fn, boolean onMain) {
+        if (fn == null) {
+            throw new NullPointerException("fn is null.");
+        }
+        final GuestFuture<R> dependent = new GuestFuture<R>(priority);
+        dependent.upstream = this;
+        addCompletion(new Completion(onMain) {
+            @Override
+            void fire() {
+                if (dependent.isDone()) {    // 후속 future 가 이미 취소되었다.
+                    return;
+                }
+                final Throwable error = getFailure();
+                if (error != null) {
+                    dependent.completeExceptionally(error);
+                    return;
+                }
+                final boolean wasInterrupted = dependent.enterRunner();
+                try {
+                    dependent.complete(fn.apply(getNow()));
+                } catch (Throwable e) {
+                    dependent.completeExceptionally(e);
+                } finally {
+                    dependent.exitRunner(wasInterrupted);
+                }
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * @param fn applied to the result on ThreadHost, and returns another future.
+     * @return future completed in the same way as the future returned by fn.
+     */
+    public <R> GuestFuture<R> thenCompose(final Function<? super T, ? extends GuestFuture<R>> fn) {
+        if (fn == null) {
+            throw new NullPointerException("fn is null.");
+        }
+        final GuestFuture<R> dependent = new GuestFuture<R>(priority);
+        dependent.upstream = this;
+        addCompletion(new Completion(false) {
+            @Override
+            void fire() {
+                if (dependent.isDone()) {
+                    return;
+                }
+                final Throwable error = getFailure();
+                if (error != null) {
+                    dependent.completeExceptionally(error);
+                    return;
+                }
+                final GuestFuture<R> inner;
+                try {
+                    inner = fn.apply(getNow());
+                } catch (Throwable e) {
+                    dependent.completeExceptionally(e);
+                    return;
+                }
+                if (inner == null) {
+                    dependent.completeExceptionally(new NullPointerException("fn returned null."));
+                    return;
+                }
+                dependent.upstream = inner;    // 이제 안쪽 future 가 완료를 결정한다.
+                inner.addCompletion(new Completion(false) {
+                    @Override
+                    void fire() {
+                        dependent.relayFrom(inner);
+                    }
+                });
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * @param callback invoked on ThreadHost when this future completes.
+     * @return this instance.
+     */
+    public GuestFuture<T> whenComplete(Callback<? super T> callback) {
+        return whenCompleteImpl(callback, false);
+    }
+
+    /**
+     * @param callback invoked on the main thread when this future completes.
+     * @return this instance.
+     */
+    public GuestFuture<T> whenCompleteOnMain(Callback<? super T> callback) {
+        return whenCompleteImpl(callback, true);
+    }
+
+    private GuestFuture<T> whenCompleteImpl(final Callback<? super T> callback, boolean onMain) {
+        if (callback == null) {
+            throw new NullPointerException("callback is null.");
+        }
+        addCompletion(new Completion(onMain) {
+            @Override
+            void fire() {
+                final Throwable error = getFailure();
+                callback.onComplete(error == null ? getNow() : null, error);
+            }
+        });
+        return this;
+    }
+
+    private void addCompletion(Completion completion) {
+        while (true) {
+            final Completion head = completions.get();
+            if (head == CLOSED) {    // 이미 완료되었다. 바로 수행한다.
+                dispatch(completion);
+                return;
+            }
+            completion.next = head;
+            if (completions.compareAndSet(head, completion)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 후속 작업을 수행한다.
+     * 메인스레드를 요구하면 메인스레드로, 지금 호스트의 작업 스레드라면 그 자리에서, 아니면 게스트로 만들어 호스트로 보낸다.
+     */
+    private void dispatch(final Completion completion) {
+        if (completion.onMain) {
+            ThreadHost.runOnMain(completion);
+        } else if (ThreadHost.isHostThread()) {
+            completion.runSafely();
+        } else {
+            new ThreadGuest(priority) {
+                @Override
+                public void offerFail() {
+                    completion.runSafely();    // 후속 future 가 영원히 끝나지 않는 것보다는 호출자 스레드에서 수행하는 것이 낫다.
+                }
+
+                @Override
+                public Object run(long waitTimeMillis) {
+                    completion.runSafely();
+                    return null;
+                }
+            }.execute();
+        }
+    }
+
+	/*	조회	*/
+
+    @Override
+    public boolean isDone() {
+        return result.get() != null;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        final Object outcome = result.get();
+        return outcome instanceof Failure && ((Failure) outcome).cause instanceof CancellationException;
+    }
+
+    /**
+     * @return true if completed exceptionally, including cancellation and timeout.
+     */
+    public boolean isCompletedExceptionally() {
+        return result.get() instanceof Failure;
+    }
+
+    /**
+     * Blocks until completion. Don't call this on the main thread, nor on ThreadHost while the result depends on another guest.<br/>
+     * If a guest calls this, a {@link #supply(int, Callable) supplied} guest still waiting in queue,
+     * for this future or for the futures this one depends on, gets the {@link ThreadGuest#getEffectivePriority() effective priority}
+     * of the calling guest.
+     */
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        if (!isDone()) {
+            lendPriority();
+            synchronized (this) {
+                while (!isDone()) {
+                    wait();
+                }
+            }
+        }
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!isDone()) {
+            lendPriority();
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (!isDone()) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        }
+        return report();
+    }
+
+    /**
+     * 호스트의 게스트가 기다리려고 한다. 이 future 와 앞선 future 들의 게스트 중 아직 대기 중인 것에 그 우선순위를 물려준다.
+     */
+    private void lendPriority() {
+        final ThreadGuest waiter = ThreadHost.currentGuest();
+        if (waiter == null) {
+            return;
+        }
+        final int waiterPriority = waiter.getEffectivePriority();
+        for (GuestFuture<?> future = this; future != null; future = future.upstream) {
+            final GuestHandle pending = future.handle;
+            if (pending != null) {
+                pending.raisePriority(waiterPriority);
+            }
+        }
+    }
+
+    private T report() throws ExecutionException {
+        final Throwable error = getFailure();
+        if (error instanceof CancellationException) {
+            throw (CancellationException) error;
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return getNow();
+    }
+
+    /**
+     * @return result if completed successfully. Otherwise null.
+     */
+    @SuppressWarnings("unchecked")
+    public T getNow() {
+        final Object outcome = result.get();
+        if (outcome == null || outcome == NULL_RESULT || outcome instanceof Failure) {
+            return null;
+        }
+        return (T) outcome;
+    }
+
+    /**
+     * @return cause of failure if completed exceptionally. Otherwise null.
+     */
+    public Throwable getFailure() {
+        final Object outcome = result.get();
+        return outcome instanceof Failure ? ((Failure) outcome).cause : null;
+    }
+
+    /**
+     * 실패한 결과를 감싼다.
+     */
+    private static final class Failure {
+
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+
+    }
+
+    /**
+     * {@link #timers} 스택의 노드.
+     */
+    private static final class TimerLink {
+
+        final TimingWheel.Timeout timeout;
+        final TimerLink next;
+
+        TimerLink(TimingWheel.Timeout timeout, TimerLink next) {
+            this.timeout = timeout;
+            this.next = next;
+        }
+
+    }
+
+    /**
+     * 완료 후에 수행할 작업. 등록 전에는 스택의 노드로 쓰인다.
+     */
+    abstract static class Completion implements Runnable {
+
+        final boolean onMain;
+        Completion next;
+
+        Completion(boolean onMain) {
+            this.onMain = onMain;
+        }
+
+        /**
+         * 후속 작업의 본문.
+         */
+        abstract void fire();
+
+        /**
+         * 후속 작업에서 새어나온 예외가 완료를 수행한 스레드로 퍼지지 않도록 막는다.
+         */
+        final void runSafely() {
+            try {
+                fire();
+            } catch (RuntimeException e) {
+                Log.e(DebugConfig.LOG_TAG, "Exception occurred in GuestFuture continuation", e);    // 공공연히 알려야 하므로 로그 래핑을 쓰지 않음.
+            }
+        }
+
+        @Override
+        public final void run() {
+            runSafely();
+        }
+
+    }
+
+}
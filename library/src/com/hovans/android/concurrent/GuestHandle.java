@@ -0,0 +1,111 @@
+package com.hovans.android.concurrent;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * One submission of a {@link ThreadGuest}, returned by {@link ThreadGuest#execute()}.
+ * Use it to cancel the guest while it is waiting in queue.<br/>
+ * <br/>
+ * A cancelled guest stays in queue until its turn comes, but its {@link ThreadGuest#run(long)} is not called,
+ * and its chain does not continue. Once run() starts, it cannot be cancelled.<br/>
+ * ex)<pre>
+ * GuestHandle handle = guest.execute();
+ * ...
+ * if (handle.cancel()) {
+ *     // run() will not be called.
+ * }</pre>
+ *
+ * @author Arngard
+ * @see ThreadGuest#setCoalescingKey(Object, int)
+ */
+public abstract class GuestHandle {
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_CANCELLED = 2;
+
+    private static final AtomicIntegerFieldUpdater<GuestHandle> STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(GuestHandle.class, "state");
+
+    private volatile int state = STATE_PENDING;
+
+    GuestHandle() {
+    }
+
+    /**
+     * @return The guest of this submission.
+     */
+    public abstract ThreadGuest getGuest();
+
+    /**
+     * Cancel the guest if it has not started yet.
+     *
+     * @return true if this invocation cancelled it.
+     */
+    public boolean cancel() {
+        if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_CANCELLED)) {
+            return false;
+        }
+        onSettled();
+        return true;
+    }
+
+    /**
+     * Lend a priority to the guest while it is waiting, when something more prior is waiting for it.
+     * If it is already in queue, it moves ahead to the guests of the priority.
+     * The guest gets back to its own priority when done.
+     *
+     * @param priority Priority to lend. Nothing changes if the guest is already as prior as this.
+     * @return true if the guest is still waiting to run.
+     * @see ThreadGuest#getEffectivePriority()
+     */
+    public abstract boolean raisePriority(int priority);
+
+    /**
+     * @return true if cancelled, rejected by {@link ThreadHost}, or replaced by another guest with the same coalescing key.
+     */
+    public boolean isCancelled() {
+        return state == STATE_CANCELLED;
+    }
+
+    /**
+     * @return true if {@link ThreadGuest#run(long)} has started.
+     */
+    public boolean isStarted() {
+        return state == STATE_STARTED;
+    }
+
+    /**
+     * @return true if still waiting to run.
+     */
+    public boolean isPending() {
+        return state == STATE_PENDING;
+    }
+
+    /**
+     * 작업 스레드가 수행을 시작하기 직전에 호출한다.
+     *
+     * @return 취소되지 않았으면 true. 이후로는 취소할 수 없다.
+     */
+    final boolean tryStart() {
+        if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_STARTED)) {
+            return false;
+        }
+        onSettled();
+        return true;
+    }
+
+    /**
+     * 재사용하는 핸들을 다시 대기 상태로 만든다. 이전 offer 가 완전히 끝난 뒤에만 호출할 것.
+     */
+    final void reset() {
+        state = STATE_PENDING;
+    }
+
+    /**
+     * 대기 상태를 벗어났을 때 한 번 호출된다. 수행이 시작되었거나 취소되었다.
+     */
+    void onSettled() {
+    }
+
+}
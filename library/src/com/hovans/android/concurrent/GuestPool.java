@@ -0,0 +1,106 @@
+package com.hovans.android.concurrent;
+
+import com.hovans.android.log.LogByCodeLab;
+
+/**
+ * Reuses {@link PooledGuest}s of one kind, like {@link android.os.Message#obtain()}.<br/>
+ * <br/>
+ * {@link #obtain()} takes a guest from the pool, or creates one by the factory if the pool is empty.
+ * Guests come back by themselves when done. The pool keeps at most its max size, and the rest are left to GC.<br/>
+ * ex)<pre>
+ * GuestPool&lt;DecodeGuest&gt; pool = new GuestPool&lt;DecodeGuest&gt;(64, new GuestPool.Factory&lt;DecodeGuest&gt;() {
+ *     public DecodeGuest create() {
+ *         return new DecodeGuest();
+ *     }
+ * });</pre>
+ *
+ * @param <T> type of guest.
+ * @author Arngard
+ * @see PooledGuest
+ */
+public final class GuestPool<T extends PooledGuest> {
+
+    /**
+     * Creates a guest when the pool is empty.
+     */
+    public interface Factory<T extends PooledGuest> {
+
+        /**
+         * @return New guest. Must not be null, nor a guest of another pool.
+         */
+        T create();
+
+    }
+
+    private final Factory<T> factory;
+    private final int maxSize;
+    private final Object poolSync = new Object();
+    private PooledGuest pool;
+    private int poolSize = 0;
+
+    /**
+     * @param maxSize Count of guests kept for reuse. Positive.
+     * @param factory Creates a guest when the pool is empty.
+     */
+    public GuestPool(int maxSize, Factory<T> factory) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+        if (factory == null) {
+            throw new NullPointerException("factory is null.");
+        }
+        this.maxSize = maxSize;
+        this.factory = factory;
+    }
+
+    /**
+     * @return Guest ready to execute. It comes back to this pool when done.
+     */
+    @SuppressWarnings("unchecked")
+    public T obtain() {
+        PooledGuest guest = null;
+        synchronized (poolSync) {
+            if (pool != null) {
+                guest = pool;
+                pool = guest.mNextPooled;
+                poolSize--;
+            }
+        }
+        if (guest == null) {
+            guest = factory.create();
+        }
+        guest.mNextPooled = null;
+        guest.mPool = this;
+        return (T) guest;    // 이 풀에는 factory 가 만든 것만 들어온다.
+    }
+
+    /**
+     * @return Count of guests waiting for reuse now.
+     */
+    public int size() {
+        synchronized (poolSync) {
+            return poolSize;
+        }
+    }
+
+    /**
+     * 게스트를 비우고 풀에 돌려준다. 이후에는 호출한 쪽이 이 게스트를 사용하면 안 된다.
+     */
+    void recycle(PooledGuest guest) {
+        try {
+            guest.onRecycle();
+        } catch (RuntimeException e) {
+            LogByCodeLab.e(e);    // 비우지 못한 게스트는 재사용하지 않는다.
+            return;
+        }
+        guest.clearForReuse();
+        synchronized (poolSync) {
+            if (poolSize < maxSize) {
+                guest.mNextPooled = pool;
+                pool = guest;
+                poolSize++;
+            }
+        }
+    }
+
+}
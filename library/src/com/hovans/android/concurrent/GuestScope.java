@@ -0,0 +1,328 @@
+package com.hovans.android.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fork many tasks on {@link ThreadHost} and join them as one.<br/>
+ * <br/>
+ * Each {@link #fork(Callable) forked} task runs as a guest, in parallel with the others.
+ * When one of them fails, the scope fails with its error and the other tasks are cancelled:
+ * waiting ones never run, and running ones are interrupted.
+ * {@link #join(long, TimeUnit) Join} gives the results in the order of fork, or the first error.
+ * If the deadline passes first, the remaining tasks are cancelled in the same way.<br/>
+ * <br/>
+ * Results are gathered on the thread that completes the last task, not on the main thread.
+ * Use {@link #joinAsync(long, TimeUnit)} to get them without blocking.
+ * When joined on a thread of ThreadHost, tasks still waiting in queue run on the joining thread, so it does not deadlock the host.<br/>
+ * ex)<pre>
+ * GuestScope&lt;Bitmap&gt; scope = new GuestScope&lt;Bitmap&gt;();
+ * for (final String path : paths) {
+ *     scope.fork(new Callable&lt;Bitmap&gt;() {
+ *         public Bitmap call() throws Exception {
+ *             return decodeThumbnail(path);    // on ThreadHost, in parallel.
+ *         }
+ *     });
+ * }
+ * scope.joinAsync(3, TimeUnit.SECONDS)
+ *         .whenCompleteOnMain(new GuestFuture.Callback&lt;List&lt;Bitmap&gt;&gt;() {
+ *             public void onComplete(List&lt;Bitmap&gt; thumbnails, Throwable error) {
+ *                 show(thumbnails);                // on main thread.
+ *             }
+ *         });</pre>
+ *
+ * @param <T> type of result of each task.
+ * @author Arngard
+ * @see GuestFuture
+ */
+public class GuestScope<T> {
+
+    /**
+     * 작업마다 우선순위를 주지 않았을 때 사용할 우선순위.
+     */
+    private final int priority;
+    /**
+     * 모든 작업의 결과를 모은 future. 스코프의 상태이기도 하다.
+     */
+    private final GuestFuture<List<T>> joined;
+    /**
+     * fork 한 순서대로의 작업. 자신을 락으로 사용한다.
+     */
+    private final ArrayList<Fork<T>> forks = new ArrayList<Fork<T>>();
+    /**
+     * 끝나지 않은 작업의 수. 아직 닫히지 않았다면 1 을 더한다. 0 이 되면 결과를 모은다.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger(1);
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+    /**
+     * {@link #joinAsync(long, TimeUnit)}의 마감 타이머.
+     */
+    private volatile TimingWheel.Timeout deadline;
+
+    /**
+     * Create scope whose tasks run with {@link ThreadGuest#PRIORITY_NORMAL}.
+     */
+    public GuestScope() {
+        this(ThreadGuest.PRIORITY_NORMAL);
+    }
+
+    /**
+     * @param priority priority of guests running the tasks.
+     */
+    public GuestScope(int priority) {
+        this.priority = priority;
+        this.joined = new GuestFuture<List<T>>(priority);
+    }
+
+	/*	fork	*/
+
+    /**
+     * Run the task on ThreadHost, as a part of this scope.
+     *
+     * @param task will be called on ThreadHost.
+     * @return future of the task. If the scope is already complete, a cancelled future and the task is not called.
+     */
+    public GuestFuture<T> fork(Callable<? extends T> task) {
+        return fork(priority, task);
+    }
+
+    /**
+     * Same as {@link #fork(Callable)}, with the priority of this task.
+     * Tasks may fork more tasks into the scope, even after join started.
+     */
+    @SuppressWarnings("unchecked")
+    public GuestFuture<T> fork(int priority, Callable<? extends T> task) {
+        if (task == null) {
+            throw new NullPointerException("task is null.");
+        }
+        if (!enter()) {    // 이미 끝난 스코프이다.
+            final GuestFuture<T> cancelled = new GuestFuture<T>(priority);
+            cancelled.cancel(false);
+            return cancelled;
+        }
+        final Callable<T> typed = (Callable<T>) task;    // 결과를 꺼내기만 하므로 안전하다.
+        final GuestFuture<T> future = GuestFuture.supply(priority, typed);
+        synchronized (forks) {
+            forks.add(new Fork<T>(future, typed));
+        }
+        if (joined.isDone()) {    // 추가하는 사이에 실패했다. 취소 목록에서 빠졌을 수 있다.
+            future.cancel(true);
+        }
+        future.whenComplete(new GuestFuture.Callback<T>() {
+            @Override
+            public void onComplete(T value, Throwable error) {
+                if (error != null) {
+                    fail(error);    // 스코프가 실패하면서 취소한 것이라면 아무 일도 없다.
+                }
+                leave();
+            }
+        });
+        return future;
+    }
+
+    private boolean enter() {
+        while (true) {
+            final int current = outstanding.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (outstanding.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void leave() {
+        if (outstanding.decrementAndGet() == 0) {
+            gather();
+        }
+    }
+
+	/*	join	*/
+
+    /**
+     * Stop waiting for new tasks from outside, and wait for all tasks.
+     * Don't call this on the main thread.
+     *
+     * @return results in the order of fork.
+     * @throws CancellationException if the scope was cancelled.
+     * @throws ExecutionException    with the first error, if a task failed.
+     * @throws InterruptedException  if the current thread was interrupted while waiting. The scope is not cancelled.
+     */
+    public List<T> join() throws InterruptedException, ExecutionException {
+        close();
+        helpPending(Long.MAX_VALUE);
+        return joined.get();
+    }
+
+    /**
+     * Same as {@link #join()}, but gives up after the timeout, and cancels the tasks not finished.
+     *
+     * @throws TimeoutException if the tasks didn't finish in time.
+     */
+    public List<T> join(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        close();
+        helpPending(deadlineNanos);
+        try {
+            return joined.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (fail(e)) {
+                throw e;
+            }
+            return joined.get();    // 마감과 동시에 끝났다.
+        }
+    }
+
+    /**
+     * Stop waiting for new tasks from outside, and get the results without blocking.
+     *
+     * @return future of results in the order of fork. Fails with the first error of tasks.
+     */
+    public GuestFuture<List<T>> joinAsync() {
+        close();
+        return joined;
+    }
+
+    /**
+     * Same as {@link #joinAsync()}, but the future fails with {@link TimeoutException} after the timeout,
+     * and the tasks not finished are cancelled.
+     */
+    public GuestFuture<List<T>> joinAsync(long timeout, TimeUnit unit) {
+        close();
+        if (!joined.isDone()) {
+            final TimingWheel.Timeout scheduled = ThreadHost.runDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    fail(new TimeoutException());
+                }
+            }, unit.toMillis(timeout));
+            deadline = scheduled;
+            if (joined.isDone()) {    // 등록하는 사이에 끝났을 수 있다.
+                scheduled.cancel();
+            }
+        }
+        return joined;
+    }
+
+    private void close() {
+        if (isClosed.compareAndSet(false, true)) {
+            leave();
+        }
+    }
+
+    /**
+     * 호스트의 작업 스레드에서 기다리려고 한다. 다른 작업 스레드가 없으면 아무도 대기 중인 작업을 수행해주지 않으므로, 직접 수행한다.
+     *
+     * @param deadlineNanos 이 {@link System#nanoTime()} 시각이 지나면 더 수행하지 않는다. 제한이 없으면 {@link Long#MAX_VALUE}.
+     */
+    private void helpPending(long deadlineNanos) {
+        if (!ThreadHost.isInternalThread()) {
+            return;
+        }
+        for (int i = 0; !joined.isDone(); i++) {    // 수행 중에 fork 된 작업도 돕는다.
+            if (deadlineNanos != Long.MAX_VALUE && deadlineNanos - System.nanoTime() <= 0) {
+                return;    // 마감이 지났다. 남은 작업은 시간 초과로 취소된다.
+            }
+            final Fork<T> fork;
+            synchronized (forks) {
+                if (i >= forks.size()) {
+                    return;
+                }
+                fork = forks.get(i);
+            }
+            fork.future.runHereIfPending(fork.task);
+        }
+    }
+
+	/*	완료	*/
+
+    /**
+     * Cancel all tasks not finished. join fails with {@link CancellationException}.
+     *
+     * @return true if this invocation cancelled the scope.
+     */
+    public boolean cancel() {
+        return fail(new CancellationException());
+    }
+
+    /**
+     * @return true if the scope is complete, successfully or not.
+     */
+    public boolean isDone() {
+        return joined.isDone();
+    }
+
+    /**
+     * @return true if the scope failed, was cancelled or timed out. Long tasks may check this to stop early.
+     */
+    public boolean isFailed() {
+        return joined.isCompletedExceptionally();
+    }
+
+    /**
+     * 스코프를 실패시키고 남은 작업을 취소한다.
+     *
+     * @return 이 호출로 실패했으면 true. 이미 끝난 스코프이면 false.
+     */
+    private boolean fail(Throwable error) {
+        if (!joined.completeExceptionally(error)) {
+            return false;
+        }
+        cancelDeadline();
+        final ArrayList<Fork<T>> snapshot;
+        synchronized (forks) {
+            snapshot = new ArrayList<Fork<T>>(forks);
+        }
+        for (Fork<T> fork : snapshot) {    // 락 밖에서 취소한다. 취소의 후속 작업이 이 스레드에서 돌 수 있다.
+            fork.future.cancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * 모든 작업이 성공했다. 결과를 fork 한 순서대로 모은다.
+     */
+    private void gather() {
+        final ArrayList<T> results;
+        synchronized (forks) {
+            results = new ArrayList<T>(forks.size());
+            for (Fork<T> fork : forks) {
+                results.add(fork.future.getNow());
+            }
+        }
+        if (joined.complete(results)) {
+            cancelDeadline();
+        }
+    }
+
+    private void cancelDeadline() {
+        final TimingWheel.Timeout scheduled = deadline;
+        if (scheduled != null) {
+            scheduled.cancel();
+        }
+    }
+
+    /**
+     * fork 된 작업과 그 future.
+     */
+    private static final class Fork<T> {
+
+        final GuestFuture<T> future;
+        final Callable<T> task;
+
+        Fork(GuestFuture<T> future, Callable<T> task) {
+            this.future = future;
+            this.task = task;
+        }
+
+    }
+
+}
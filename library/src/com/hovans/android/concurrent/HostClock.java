@@ -0,0 +1,48 @@
+package com.hovans.android.concurrent;
+
+import android.os.SystemClock;
+
+/**
+ * 호스트가 게스트의 대기 시간과 우선순위 노화(aging)를 잴 때 쓰는 시계.<br/>
+ * <br/>
+ * 기본은 {@link SystemClock#elapsedRealtime()}이다. 시험에서는 직접 움직이는 시계로 바꿔 끼워서,
+ * 노화의 동작을 실제 시간을 기다리지 않고 결정적으로 확인할 수 있다.
+ *
+ * @author Arngard
+ */
+abstract class HostClock {
+
+    /**
+     * {@link SystemClock#elapsedRealtime()}을 그대로 돌려주는 시계.
+     */
+    static final HostClock SYSTEM = new HostClock() {
+        @Override
+        long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private static volatile HostClock current = SYSTEM;
+
+    /**
+     * @return 현재 시계의 시각(ms).
+     */
+    static long now() {
+        return current.elapsedRealtime();
+    }
+
+    /**
+     * 호스트가 쓸 시계를 바꾼다. 이미 대기 중인 게스트의 offer 시각은 바뀌지 않으므로, 게스트가 없을 때 바꿔야 한다.
+     *
+     * @param clock 새 시계. null 이면 {@link #SYSTEM}.
+     */
+    static void set(HostClock clock) {
+        current = clock == null ? SYSTEM : clock;
+    }
+
+    /**
+     * @return 단조 증가하는 시각(ms).
+     */
+    abstract long elapsedRealtime();
+
+}
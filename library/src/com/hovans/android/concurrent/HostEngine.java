@@ -0,0 +1,106 @@
+package com.hovans.android.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ThreadHost}가 대기열과 작업 스레드를 다루는 방식을 추상화한다.<br/>
+ * <br/>
+ * ThreadHost 는 어떤 엔진을 쓰든 {@link RunnableGuest}를 넘겨주기만 하고,
+ * 대기열의 구조와 스레드 운용은 엔진이 책임진다.
+ *
+ * @author Arngard
+ * @see ThreadHost#setMode(int)
+ */
+abstract class HostEngine {
+
+    /**
+     * 같은 offer 를 위해 하나 더 들어 있어서 {@link #size()}에 더 세어진 항목의 수. {@link ThreadHost.Promotion} 참고.
+     */
+    private final AtomicInteger extraEntries = new AtomicInteger(0);
+
+    /**
+     * 인자의 작업을 대기열에 넣는다.
+     *
+     * @param runnable 대기시킬 작업
+     * @return 대기열에 들어갔으면 true. 종료된 엔진이거나 넣을 수 없으면 false.
+     */
+    abstract boolean offer(RunnableGuest runnable);
+
+    /**
+     * 여러 작업을 한꺼번에 대기열에 넣는다. 작업 스레드를 깨우는 일은 한 번에 한다.
+     * 엔진이 따로 구현하지 않으면 {@link #offer(RunnableGuest)}를 차례로 부른다.
+     *
+     * @param runnables 대기시킬 작업들. 이 순서로 넣는다.
+     * @param count     runnables 에서 사용할 수
+     * @return 앞에서부터 대기열에 들어간 수. 나머지는 넣지 않았다.
+     */
+    int offerAll(RunnableGuest[] runnables, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!offer(runnables[i])) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 대기열에서 가장 뒤 구간부터 살펴서, 비어 있지 않은 가장 뒤 구간의 가장 오래된 작업을 꺼낸다.
+     *
+     * @param minBucket 이 구간보다 앞선 구간에서는 꺼내지 않는다. {@link PriorityBucketQueue#bucketOf(int)}
+     * @return 꺼낸 작업. 해당하는 작업이 없으면 null.
+     */
+    abstract RunnableGuest pollLowest(int minBucket);
+
+    /**
+     * @return 대기열에 들어 있는 항목의 수. 정확하지 않을 수 있다.
+     */
+    abstract int size();
+
+    /**
+     * @return 대기열에서 수행을 기다리는 게스트의 수. 승격 항목으로 여러 번 들어 있는 게스트도 한 번 센다. 정확하지 않을 수 있다.
+     */
+    final int guestCount() {
+        return Math.max(0, size() - extraEntries.get());
+    }
+
+    /**
+     * 이미 들어 있는 offer 의 항목을 하나 더 넣으려고 한다. 넣지 못했거나, 넣은 항목 중 하나가 할 일 없이 꺼내지면
+     * {@link #removeExtraEntry()}를 부른다.
+     */
+    final void addExtraEntry() {
+        extraEntries.incrementAndGet();
+    }
+
+    final void removeExtraEntry() {
+        extraEntries.decrementAndGet();
+    }
+
+    /**
+     * 작업 스레드의 수를 정하는 방식을 바꾼다. 스레드 수가 고정된 엔진은 무시한다.
+     */
+    void applySizing(PoolSizing sizing) {
+    }
+
+    /**
+     * @return true 이면 {@link #recordRun(long, long, long)}으로 수행 기록을 받는다.
+     */
+    boolean isSampling() {
+        return false;
+    }
+
+    /**
+     * 게스트 하나의 수행 기록. {@link #isSampling()}이 true 일 때만 작업 스레드에서 호출된다.
+     *
+     * @param waitMillis 대기열에서 기다린 시간
+     * @param runNanos   {@link ThreadGuest#run(long)}이 걸린 시간
+     * @param cpuNanos   그동안 작업 스레드가 CPU 를 사용한 시간. 측정할 수 없으면 음수.
+     */
+    void recordRun(long waitMillis, long runNanos, long cpuNanos) {
+    }
+
+    /**
+     * 더 이상 새 작업을 받지 않는다. 이미 대기열에 있는 작업은 모두 수행한 뒤에 스레드가 종료된다.
+     */
+    abstract void shutdown();
+
+}
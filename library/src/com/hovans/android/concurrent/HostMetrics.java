@@ -0,0 +1,409 @@
+package com.hovans.android.concurrent;
+
+import com.hovans.android.constant.ThreadConfig;
+import com.hovans.android.log.LogByCodeLab;
+
+import java.util.Locale;
+
+/**
+ * Instrumentation of {@link ThreadHost}.<br/>
+ * <br/>
+ * Records, per priority level, how many guests were offered, rejected ({@link ThreadGuest#offerFail()}),
+ * dropped by {@link AdmissionPolicy}, completed and failed, how long they waited in queue and how long their {@link ThreadGuest#run(long)} took.
+ * Levels are the priority presets of {@link ThreadGuest}; a priority belongs to the level of the highest preset not above it.<br/>
+ * <br/>
+ * Recording is off by default ({@link ThreadConfig#THREAD_METRICS_ENABLED}). When on, it costs a few atomic increments per guest.
+ * Use {@link #snapshot()} to read, or {@link #startPeriodicDump(long)} to log it with {@link LogByCodeLab}.
+ *
+ * @author Arngard
+ */
+public final class HostMetrics {
+
+    /**
+     * Count of priority levels. Level 0 is {@link ThreadGuest#PRIORITY_GREEDY}, the last is {@link ThreadGuest#PRIORITY_IDLE}.
+     */
+    public static final int LEVEL_COUNT = PriorityBucketQueue.BUCKET_COUNT;
+    private static final String[] LEVEL_NAMES = {"GREEDY", "HIGH", "ABOVE_NORMAL", "NORMAL", "BELOW_NORMAL", "IDLE"};
+
+    private static volatile boolean isEnabled = ThreadConfig.THREAD_METRICS_ENABLED;
+
+    private static final Level[] levels = new Level[LEVEL_COUNT];
+
+    static {
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            levels[i] = new Level();
+        }
+    }
+
+    /* 주기적인 출력 */
+    private static final Object dumpLock = new Object();
+    private static TimingWheel.Timeout dumpTimeout = null;
+    /**
+     * 출력을 멈추거나 다시 시작할 때마다 증가한다. 이미 만료되어 수행 중인 이전 출력이 다시 등록되지 않게 한다.
+     */
+    private static int dumpGeneration = 0;
+    private static Snapshot lastDumped = null;
+
+    private HostMetrics() {
+    }
+
+    /**
+     * @param priority {@link ThreadGuest#getPriority()}
+     * @return Level of the priority. 0 ~ {@link #LEVEL_COUNT} - 1, 0 is the most prior.
+     */
+    public static int levelOf(int priority) {
+        return PriorityBucketQueue.bucketOf(priority);
+    }
+
+    /**
+     * @param level 0 ~ {@link #LEVEL_COUNT} - 1
+     * @return Name of the priority preset of the level.
+     */
+    public static String levelName(int level) {
+        return LEVEL_NAMES[level];
+    }
+
+    /**
+     * Turn recording on or off. Recorded values are kept.
+     */
+    public static void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public static void reset() {
+        for (Level level : levels) {
+            level.reset();
+        }
+        synchronized (dumpLock) {
+            lastDumped = null;
+        }
+    }
+
+    /**
+     * @return Copy of current values. Values being recorded at the moment may or may not be included.
+     */
+    public static Snapshot snapshot() {
+        final Snapshot snapshot = new Snapshot(System.currentTimeMillis(), ThreadHost.queueSize());
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            final Level level = levels[i];
+            snapshot.offered[i] = level.offered.sum();
+            snapshot.rejected[i] = level.rejected.sum();
+            snapshot.dropped[i] = level.dropped.sum();
+            snapshot.completed[i] = level.completed.sum();
+            snapshot.failed[i] = level.failed.sum();
+            snapshot.waitTime[i] = level.waitMicros.snapshot();
+            snapshot.runTime[i] = level.runMicros.snapshot();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Log a {@link #snapshot()} with {@link LogByCodeLab#i(String)} periodically,
+     * together with the throughput of each level since the previous log.
+     * The log is written on the timer thread of ThreadHost, so it is not delayed even if all host threads are busy.<br/>
+     * <br/>
+     * It replaces the previous periodic dump if exists.
+     *
+     * @param periodMillis Period of logging.
+     */
+    public static void startPeriodicDump(final long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be positive.");
+        }
+        synchronized (dumpLock) {
+            stopPeriodicDump();
+            scheduleDump(periodMillis, dumpGeneration);
+        }
+    }
+
+    /**
+     * Stop the logging started by {@link #startPeriodicDump(long)}.
+     */
+    public static void stopPeriodicDump() {
+        synchronized (dumpLock) {
+            dumpGeneration++;
+            if (dumpTimeout != null) {
+                dumpTimeout.cancel();
+                dumpTimeout = null;
+            }
+        }
+    }
+
+    private static void scheduleDump(final long periodMillis, final int generation) {
+        dumpTimeout = ThreadHost.runDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (dumpLock) {
+                    if (generation != dumpGeneration) {    // 그 사이에 멈췄다.
+                        return;
+                    }
+                    final Snapshot current = snapshot();
+                    LogByCodeLab.i(current.toString(lastDumped));
+                    lastDumped = current;
+                    scheduleDump(periodMillis, generation);
+                }
+            }
+        }, periodMillis);
+    }
+
+	/*	기록. ThreadHost 에서 호출한다.	*/
+
+    /**
+     * @param priority  offer 시점의 우선순위
+     * @param succeeded 대기열에 들어갔으면 true, offerFail 이면 false.
+     */
+    static void recordOffer(int priority, boolean succeeded) {
+        final Level level = levels[levelOf(priority)];
+        if (succeeded) {
+            level.offered.increment();
+        } else {
+            level.rejected.increment();
+        }
+    }
+
+    /**
+     * @param priority 버려진 게스트의 우선순위
+     */
+    static void recordDrop(int priority) {
+        levels[levelOf(priority)].dropped.increment();
+    }
+
+    /**
+     * @param priority  수행 시점의 우선순위
+     * @param waitNanos 대기열에서 기다린 시간
+     * @param runNanos  {@link ThreadGuest#run(long)}이 걸린 시간
+     * @param failed    run()이 예외를 던졌으면 true.
+     */
+    static void recordRun(int priority, long waitNanos, long runNanos, boolean failed) {
+        final Level level = levels[levelOf(priority)];
+        level.waitMicros.record(waitNanos / 1000);
+        level.runMicros.record(runNanos / 1000);
+        if (failed) {
+            level.failed.increment();
+        } else {
+            level.completed.increment();
+        }
+    }
+
+    /**
+     * 우선순위 구간 하나의 기록.
+     */
+    private static final class Level {
+
+        final StripedCounter offered = new StripedCounter();
+        final StripedCounter rejected = new StripedCounter();
+        final StripedCounter dropped = new StripedCounter();
+        final StripedCounter completed = new StripedCounter();
+        final StripedCounter failed = new StripedCounter();
+        final LatencyHistogram waitMicros = new LatencyHistogram();
+        final LatencyHistogram runMicros = new LatencyHistogram();
+
+        void reset() {
+            offered.reset();
+            rejected.reset();
+            dropped.reset();
+            completed.reset();
+            failed.reset();
+            waitMicros.reset();
+            runMicros.reset();
+        }
+
+    }
+
+    /**
+     * Values of {@link HostMetrics} at a moment. Arrays are indexed by level.
+     *
+     * @see HostMetrics#levelOf(int)
+     */
+    public static final class Snapshot {
+
+        private final long timeMillis;
+        private final int queueDepth;
+        private final long[] offered = new long[LEVEL_COUNT];
+        private final long[] rejected = new long[LEVEL_COUNT];
+        private final long[] dropped = new long[LEVEL_COUNT];
+        private final long[] completed = new long[LEVEL_COUNT];
+        private final long[] failed = new long[LEVEL_COUNT];
+        private final Histogram[] waitTime = new Histogram[LEVEL_COUNT];
+        private final Histogram[] runTime = new Histogram[LEVEL_COUNT];
+
+        private Snapshot(long timeMillis, int queueDepth) {
+            this.timeMillis = timeMillis;
+            this.queueDepth = queueDepth;
+        }
+
+        /**
+         * @return {@link System#currentTimeMillis()} when this snapshot was taken.
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * @return Count of guests waiting in queue when this snapshot was taken. Approximate.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return Count of guests entered the queue.
+         */
+        public long getOffered(int level) {
+            return offered[level];
+        }
+
+        /**
+         * @return Count of guests rejected by queue. {@link ThreadGuest#offerFail()} was called for them.
+         */
+        public long getRejected(int level) {
+            return rejected[level];
+        }
+
+        /**
+         * @return Count of queued guests dropped by {@link AdmissionPolicy} to make room for others.
+         */
+        public long getDropped(int level) {
+            return dropped[level];
+        }
+
+        /**
+         * @return Count of guests whose {@link ThreadGuest#run(long)} returned normally.
+         */
+        public long getCompleted(int level) {
+            return completed[level];
+        }
+
+        /**
+         * @return Count of guests whose {@link ThreadGuest#run(long)} threw an exception.
+         */
+        public long getFailed(int level) {
+            return failed[level];
+        }
+
+        /**
+         * @return Distribution of time from offer to start of run, in microseconds.
+         */
+        public Histogram getWaitTime(int level) {
+            return waitTime[level];
+        }
+
+        /**
+         * @return Distribution of time taken by {@link ThreadGuest#run(long)}, in microseconds.
+         */
+        public Histogram getRunTime(int level) {
+            return runTime[level];
+        }
+
+        /**
+         * @param previous Earlier snapshot. If null, throughput is not calculated.
+         * @return Guests finished per second in the level, between previous and this.
+         */
+        public double getThroughput(Snapshot previous, int level) {
+            if (previous == null || timeMillis <= previous.timeMillis) {
+                return 0;
+            }
+            final long finished = completed[level] + failed[level] - previous.completed[level] - previous.failed[level];
+            return finished * 1000.0 / (timeMillis - previous.timeMillis);
+        }
+
+        @Override
+        public String toString() {
+            return toString(null);
+        }
+
+        /**
+         * @param previous Earlier snapshot to calculate throughput. May be null.
+         * @return Multi-line description. Levels with no activity are omitted.
+         */
+        public String toString(Snapshot previous) {
+            final StringBuilder builder = new StringBuilder();
+            builder.append("HostMetrics queueDepth=").append(queueDepth);
+            for (int i = 0; i < LEVEL_COUNT; i++) {
+                if (offered[i] == 0 && rejected[i] == 0 && dropped[i] == 0 && completed[i] == 0 && failed[i] == 0) {
+                    continue;
+                }
+                builder.append('\n').append(LEVEL_NAMES[i])
+                        .append(" offered=").append(offered[i])
+                        .append(" rejected=").append(rejected[i])
+                        .append(" dropped=").append(dropped[i])
+                        .append(" completed=").append(completed[i])
+                        .append(" failed=").append(failed[i]);
+                if (previous != null) {
+                    builder.append(String.format(Locale.US, " throughput=%.1f/s", getThroughput(previous, i)));
+                }
+                builder.append(" wait(us)=").append(waitTime[i])
+                        .append(" run(us)=").append(runTime[i]);
+            }
+            return builder.toString();
+        }
+
+    }
+
+    /**
+     * Distribution of recorded values. Values are bucketed with about 6% relative error, like HDR histogram.
+     */
+    public static final class Histogram {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Histogram(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile 0 ~ 100
+         * @return The value that the given percentage of recorded values are equal to or below. 0 if empty.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final double clamped = Math.max(0, Math.min(100, percentile));
+            final long target = Math.max(1, (long) Math.ceil(clamped / 100 * count));
+            long accumulated = 0;
+            for (int i = 0; i < counts.length; i++) {
+                accumulated += counts[i];
+                if (accumulated >= target) {
+                    return Math.min(LatencyHistogram.highestValueAt(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "p50:" + getValueAtPercentile(50)
+                    + " p99:" + getValueAtPercentile(99)
+                    + " max:" + max
+                    + " n:" + count;
+        }
+
+    }
+
+}
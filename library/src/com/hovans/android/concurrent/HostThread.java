@@ -0,0 +1,25 @@
+package com.hovans.android.concurrent;
+
+/**
+ * {@link ThreadHost}의 엔진이 만드는 작업 스레드.
+ * 현재 스레드가 호스트의 작업 스레드인지 판단하는 데 사용한다.
+ *
+ * @author Arngard
+ * @see ThreadHost#isHostThread()
+ */
+class HostThread extends Thread {
+
+    /**
+     * 이 스레드에서 수행 중인 게스트. 이 스레드만 읽고 쓴다. {@link ThreadHost#currentGuest()} 참고.
+     */
+    ThreadGuest mRunningGuest;
+
+    HostThread(String name) {
+        super(name);
+    }
+
+    HostThread(Runnable runnable, String name) {
+        super(runnable, name);
+    }
+
+}
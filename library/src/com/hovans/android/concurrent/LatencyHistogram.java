@@ -0,0 +1,85 @@
+package com.hovans.android.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR 히스토그램과 같은 방식으로 값의 분포를 기록한다. 값의 단위는 호출하는 쪽이 정한다.<br/>
+ * <br/>
+ * 값을 2의 거듭제곱 구간으로 나누고, 각 구간을 다시 {@link #SUB_BUCKET_HALF}개의 칸으로 나눈다.
+ * 따라서 값의 크기와 관계없이 상대 오차가 일정하다(약 6%). 기록은 배열의 한 칸을 원자적으로 증가시키는 것뿐이다.
+ *
+ * @author Arngard
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+    /**
+     * 기록할 수 있는 가장 큰 값. 이보다 큰 값은 이 값으로 기록된다.
+     */
+    static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int LENGTH = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * 값이 들어갈 칸의 번호. {@link #SUB_BUCKET_COUNT}보다 작은 값은 그 값 자체가 번호이다.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * @return 인자의 칸에 들어가는 가장 큰 값.
+     */
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF - 1;
+        final long mantissa = index - shift * SUB_BUCKET_HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    void record(long value) {
+        final long clamped = value < 0 ? 0 : Math.min(value, MAX_VALUE);
+        counts.incrementAndGet(indexOf(clamped));
+        sum.addAndGet(clamped);
+        long current;
+        while (clamped > (current = max.get())) {
+            if (max.compareAndSet(current, clamped)) {
+                break;
+            }
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < LENGTH; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return 현재 내용의 복사본. 기록 중에 복사하므로 칸의 합과 개수가 약간 다를 수 있다.
+     */
+    HostMetrics.Histogram snapshot() {
+        final long[] copy = new long[LENGTH];
+        long count = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new HostMetrics.Histogram(copy, count, sum.get(), max.get());
+    }
+
+}
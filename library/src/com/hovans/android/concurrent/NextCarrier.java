@@ -1,18 +1,76 @@
 package com.hovans.android.concurrent;
 
-import android.os.Handler;
 import android.os.Message;
 
 /**
- * 스레드 체인이 {@link Handler}를 통해 연계될 때, {@link Message#obj}에 이 객체를 담아 전달한다.
+ * 지연 체인이 다음 게스트로 건너갈 때 {@link TimingWheel}에 등록하는 작업. 지연이 없으면 캐리어 없이 바로 offer 한다.
+ * 수행되면 자신을 풀에 돌려준 뒤 다음 게스트를 {@link ThreadGuest#execute()} 한다.<br/>
+ * <br/>
+ * {@link Message}처럼 재사용 풀을 가진다. {@link #obtain(ThreadGuest)}로 얻을 것. 한 번 수행되면 알아서 풀로 돌아간다.
  *
  * @author Arngard
  */
-class NextCarrier {
+class NextCarrier implements Runnable {
+
+    private static final int MAX_POOL_SIZE = 64;
+    private static final Object sPoolSync = new Object();
+    private static NextCarrier sPool;
+    private static int sPoolSize = 0;
 
     /**
      * 다음 실행될 게스트
      */
     ThreadGuest nextGuest;
+    /**
+     * 재사용 풀에서 다음 캐리어.
+     */
+    private NextCarrier next;
+
+    private NextCarrier() {
+    }
+
+    /**
+     * @return 풀에서 꺼낸 캐리어. 풀이 비어 있으면 새로 만든다.
+     */
+    static NextCarrier obtain(ThreadGuest nextGuest) {
+        NextCarrier carrier = null;
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                carrier = sPool;
+                sPool = carrier.next;
+                sPoolSize--;
+            }
+        }
+        if (carrier == null) {
+            carrier = new NextCarrier();
+        }
+        carrier.next = null;
+        carrier.nextGuest = nextGuest;
+        return carrier;
+    }
+
+    @Override
+    public void run() {
+        final ThreadGuest guest = nextGuest;
+        if (guest == null) {
+            throw new NullPointerException("Failed to reference ThreadGuest Next");
+        }
+        recycle();
+        guest.execute();
+    }
+
+    /**
+     * 내용을 비우고 풀에 돌려준다. 이후에는 이 객체를 사용하면 안 된다.
+     */
+    void recycle() {
+        nextGuest = null;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
 
 }
@@ -0,0 +1,350 @@
+package com.hovans.android.concurrent;
+
+import android.util.Log;
+import com.hovans.android.constant.DebugConfig;
+import com.hovans.android.constant.ThreadConfig;
+import com.hovans.android.log.LogByCodeLab;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 하나의 우선순위 대기열을 {@link ThreadPoolExecutor}가 소비하는 기존 방식의 엔진.
+ * 대기열은 {@link PriorityBucketQueue}이므로 넣는 쪽은 락을 잡지 않는다.<br/>
+ * <br/>
+ * 스레드의 수는 {@link PoolSizing}을 따른다. 적응형이면 타이머 스레드에서 주기적으로 수행 기록을 보고 코어 크기를 조절한다.
+ * 조절은 할 일이 있거나 줄일 스레드가 남아 있는 동안만 한다. 한가해지면 멈추고, 게스트가 다시 오면 이어서 한다.
+ * 그렇지 않으면 코어 크기는 상한이고, 게스트가 왔을 때 한가한 스레드가 없으면 하나씩 시작한다.
+ * 블로킹 게스트를 위한 풀이 이 방식이다.
+ *
+ * @author Arngard
+ * @see ThreadHost#MODE_SINGLE
+ */
+class PoolEngine extends HostEngine {
+
+    private static final int CORES = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 작업 공간
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * 주 작업 대기열
+     */
+    private final PriorityBucketQueue queue;
+    /**
+     * 살아 있는 작업 스레드의 수. 대기열에 넣은 뒤 스레드가 하나도 없으면 깨운다.
+     */
+    private final AtomicInteger liveThreads = new AtomicInteger(0);
+    /**
+     * 게스트를 수행 중인 작업 스레드의 수. 한가한 스레드가 대기열의 게스트만큼 있으면 새 스레드를 시작하지 않는다.
+     */
+    private final AtomicInteger busyThreads = new AtomicInteger(0);
+
+	/*	크기 조절. sizingLock 으로 보호한다.	*/
+
+    private final Object sizingLock = new Object();
+    private PoolSizing sizing;
+    /**
+     * 지금의 코어 크기. 대기열에 직접 넣으므로 스레드는 코어 크기를 넘어 늘어나지 않는다.
+     * offer 에서 락 없이 읽는다.
+     */
+    private volatile int target;
+    /**
+     * 한가한 주기가 이어진 횟수.
+     */
+    private int calmRounds;
+    private int sizingGeneration = 0;
+    private TimingWheel.Timeout sizingTimeout;
+    private volatile boolean isSampling = false;
+    /**
+     * 다음 조절이 예약되어 있다. 한가해서 조절을 멈추면 false 가 되고, offer 가 보고 다시 예약한다.
+     */
+    private volatile boolean isAdjustScheduled = false;
+
+	/*	표본. 작업 스레드들이 기록하고, 타이머 스레드가 주기마다 읽고 비운다.	*/
+
+    private final StripedCounter sampledRuns = new StripedCounter();
+    private final StripedCounter sampledWaitMillis = new StripedCounter();
+    /**
+     * CPU 시간을 잴 수 있었던 수행들의 전체 시간.
+     */
+    private final StripedCounter sampledRunNanos = new StripedCounter();
+    private final StripedCounter sampledCpuNanos = new StripedCounter();
+
+    /**
+     * @param sizing     스레드의 수.
+     * @param threadName 작업 스레드 이름의 앞부분.
+     */
+    PoolEngine(PoolSizing sizing, final String threadName) {
+        queue = new PriorityBucketQueue(ThreadConfig.THREAD_BUCKET_MAX_SIZE);
+        executor = new ThreadPoolExecutor(
+                Math.max(1, sizing.getMinThreads()), sizing.getMaxThreads(),
+                sizing.getKeepAliveMillis(), TimeUnit.MILLISECONDS,
+                queue, new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new HostThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                liveThreads.incrementAndGet();
+                                try {
+                                    runnable.run();
+                                } finally {
+                                    onThreadExit();
+                                }
+                            }
+                        }, threadName + threadNumber.getAndIncrement());
+                    }
+                }) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable runnable) {
+                busyThreads.incrementAndGet();
+            }
+
+            @Override
+            protected void afterExecute(Runnable runnable, Throwable throwable) {
+                busyThreads.decrementAndGet();
+            }
+        };
+        applySizing(sizing);
+        if (!executor.prestartCoreThread()) {
+            Log.w(DebugConfig.LOG_TAG, "Fail to pre-start core thread. It may already Started.");    // 공공연히 알려야 하므로 로그 래핑을 쓰지 않음.
+        }
+    }
+
+    @Override
+    boolean offer(RunnableGuest runnable) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        // executor.execute()를 거치지 않고 대기열에 직접 넣는다. 미리 시작된 코어 스레드가 가져간다.
+        // 크기 제한은 대기열이 지킨다.
+        if (!queue.offer(runnable)) {
+            return false;
+        }
+        // 코어 크기만큼 스레드가 없다. 한가해서 끝났거나 아직 시작하지 않았다. execute()가 하던 일이다.
+        // 다만 한가한 스레드가 대기열의 게스트를 모두 가져갈 수 있으면 시작하지 않는다.
+        final int live = liveThreads.get();
+        if (live < target && (live == 0 || live - busyThreads.get() < queue.size())) {
+            executor.prestartCoreThread();
+        }
+        resumeAdjusting();
+        return true;
+    }
+
+    @Override
+    int offerAll(RunnableGuest[] runnables, int count) {
+        if (executor.isShutdown()) {
+            return 0;
+        }
+        final int offered = queue.offerAll(runnables, count);
+        // offer() 와 같은 판단이다. 다만 한꺼번에 들어왔으므로 모자란 만큼 여러 스레드를 시작할 수 있다.
+        // 시작한 스레드는 수행되어야 세어지므로, 여기서 시작한 수를 따로 더한다.
+        final int live = liveThreads.get();
+        final int idle = live - busyThreads.get();
+        int started = 0;
+        while (started < offered && live + started < target
+                && (live + started == 0 || idle + started < queue.size()) && executor.prestartCoreThread()) {
+            started++;
+        }
+        if (offered > 0) {
+            resumeAdjusting();
+        }
+        return offered;
+    }
+
+    /**
+     * 작업 스레드가 끝날 때 호출된다.
+     * 스레드 수를 줄인 뒤에 대기열을 확인하므로, offer 쪽의 확인과 엇갈려도 둘 중 하나는 대기열의 게스트를 본다.
+     */
+    private void onThreadExit() {
+        if (liveThreads.decrementAndGet() == 0 && !queue.isEmpty()) {
+            executor.prestartCoreThread();
+        }
+    }
+
+    @Override
+    RunnableGuest pollLowest(int minBucket) {
+        return (RunnableGuest) queue.pollLowest(minBucket);
+    }
+
+    @Override
+    int size() {
+        return queue.size();
+    }
+
+    @Override
+    void shutdown() {
+        synchronized (sizingLock) {
+            stopAdjusting();
+        }
+        executor.shutdown();
+    }
+
+	/*	크기 조절	*/
+
+    @Override
+    void applySizing(PoolSizing sizing) {
+        synchronized (sizingLock) {
+            stopAdjusting();
+            this.sizing = sizing;
+            calmRounds = 0;
+            target = sizing.isAdaptive()
+                    ? Math.min(Math.max(target, lowerBound()), sizing.getMaxThreads())
+                    : sizing.getMaxThreads();    // 늘어날 수 있는 만큼 열어 둔다. 실제 스레드 수는 offer 가 정한다.
+            resize(target, sizing.getMaxThreads());
+            executor.setKeepAliveTime(sizing.getKeepAliveMillis(), TimeUnit.MILLISECONDS);
+            executor.allowCoreThreadTimeOut(sizing.getMinThreads() == 0);
+            if (sizing.isAdaptive()) {
+                takeSamples();    // 이전 설정에서 쌓인 표본은 버린다.
+                isSampling = true;
+                scheduleAdjust(sizingGeneration);
+            }
+        }
+    }
+
+    @Override
+    boolean isSampling() {
+        return isSampling;
+    }
+
+    @Override
+    void recordRun(long waitMillis, long runNanos, long cpuNanos) {
+        sampledRuns.increment();
+        sampledWaitMillis.add(waitMillis);
+        if (cpuNanos >= 0) {
+            sampledRunNanos.add(runNanos);
+            sampledCpuNanos.add(cpuNanos);
+        }
+    }
+
+    /**
+     * @return 코어 크기의 하한. 하한이 0 이어도 게스트가 오면 스레드를 시작할 수 있도록 1 이상이다. 스레드는 한가하면 끝난다.
+     */
+    private int lowerBound() {
+        return Math.max(1, sizing.getMinThreads());
+    }
+
+    private void stopAdjusting() {
+        isSampling = false;
+        isAdjustScheduled = false;
+        sizingGeneration++;
+        if (sizingTimeout != null) {
+            sizingTimeout.cancel();
+            sizingTimeout = null;
+        }
+    }
+
+    private void scheduleAdjust(final int generation) {
+        isAdjustScheduled = true;
+        sizingTimeout = ThreadHost.runDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (sizingLock) {
+                    if (generation != sizingGeneration) {    // 그 사이에 설정이 바뀌었거나 엔진이 멈췄다.
+                        return;
+                    }
+                    // 대기열을 보기 전에 내려 둔다. 그 사이에 들어온 게스트는 offer 가 이 값을 보고 다시 예약한다.
+                    isAdjustScheduled = false;
+                    sizingTimeout = null;
+                    if (adjust()) {
+                        scheduleAdjust(generation);
+                    }
+                }
+            }
+        }, sizing.getPeriodMillis());
+    }
+
+    /**
+     * 한가해서 멈춘 조절을 다시 예약한다. 예약되어 있으면 락을 잡지 않는다.
+     */
+    private void resumeAdjusting() {
+        if (!isSampling || isAdjustScheduled) {
+            return;
+        }
+        synchronized (sizingLock) {
+            if (isSampling && !isAdjustScheduled) {
+                takeSamples();    // 멈춰 있던 동안의 표본은 주기에 맞지 않는다.
+                scheduleAdjust(sizingGeneration);
+            }
+        }
+    }
+
+    /**
+     * 지난 주기의 표본을 보고 코어 크기를 정한다.
+     * 오래 기다렸으면 바로 늘리고, 한가한 주기가 이어져야 하나씩 줄인다. 그 사이의 대기 시간에는 아무것도 하지 않는다.
+     *
+     * @return 다음 주기에도 조절해야 하면 true. 수행한 게스트도, 대기열의 게스트도, 줄일 스레드도 없으면 false.
+     */
+    private boolean adjust() {
+        final long[] samples = takeSamples();
+        final long runs = samples[0];
+        final long runNanos = samples[2];
+        final long cpuNanos = samples[3];
+        final long averageWait = runs == 0 ? 0 : samples[1] / runs;
+        final int backlog = queue.size();
+        final int max = sizing.getMaxThreads();
+
+        // CPU 를 쓰는 비율만큼만 코어를 채운다. 수행 시간의 절반을 I/O 에 막혀 있으면 코어 수의 두 배까지 쓸 수 있다.
+        // 코어보다 스레드가 많으면 선점당한 시간도 수행 시간에 들어가므로 올림하지 않는다. 올림하면 조금씩 계속 늘어난다.
+        final int useful = cpuNanos > 0
+                ? (int) Math.max(1, Math.min(max, Math.round((double) CORES * runNanos / cpuNanos)))
+                : max;
+        // 끝난 게스트가 없는데 대기열이 차 있으면 모든 스레드가 막혀 있는 것이다.
+        final boolean isBacklogged = averageWait > sizing.getGrowWaitMillis() || (runs == 0 && backlog > 0);
+        final boolean isCalm = averageWait <= sizing.getShrinkWaitMillis() && backlog == 0;
+
+        int next = target;
+        if (isBacklogged) {
+            calmRounds = 0;
+            if (target < useful) {
+                next = Math.min(useful, Math.max(target + 1, target * 2));
+            }
+        } else if (isCalm) {
+            if (++calmRounds >= sizing.getPatience()) {
+                calmRounds = 0;
+                next = Math.max(lowerBound(), target - 1);
+            }
+        } else {
+            calmRounds = 0;
+        }
+        if (next != target) {
+            LogByCodeLab.v("PoolEngine.adjust(): " + target + " -> " + next + " threads, wait " + averageWait + "ms, backlog " + backlog);
+            target = next;
+            resize(next, max);
+        }
+        return runs > 0 || backlog > 0 || busyThreads.get() > 0 || target > lowerBound();
+    }
+
+    /**
+     * @return 지난 주기의 {수행 수, 대기 시간의 합, 수행 시간의 합, CPU 시간의 합}. 읽은 표본은 비운다.
+     */
+    private long[] takeSamples() {
+        final long[] samples = {sampledRuns.sum(), sampledWaitMillis.sum(), sampledRunNanos.sum(), sampledCpuNanos.sum()};
+        sampledRuns.reset();    // 읽고 비우는 사이의 기록은 잃을 수 있다. 주기마다의 경향만 보면 된다.
+        sampledWaitMillis.reset();
+        sampledRunNanos.reset();
+        sampledCpuNanos.reset();
+        return samples;
+    }
+
+    /**
+     * {@link ThreadPoolExecutor}는 코어 크기가 최대 크기를 넘는 순간을 허용하지 않으므로 순서를 맞춰 바꾼다.
+     * 코어 크기를 늘리면 대기열에 게스트가 있는 만큼 스레드가 바로 시작된다.
+     */
+    private void resize(int core, int max) {
+        if (max >= executor.getCorePoolSize()) {
+            executor.setMaximumPoolSize(max);
+            executor.setCorePoolSize(core);
+        } else {
+            executor.setCorePoolSize(core);
+            executor.setMaximumPoolSize(max);
+        }
+    }
+
+}
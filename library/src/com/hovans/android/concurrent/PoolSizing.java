@@ -0,0 +1,173 @@
+package com.hovans.android.concurrent;
+
+import com.hovans.android.constant.ThreadConfig;
+
+/**
+ * How many threads {@link ThreadHost} runs in {@link ThreadHost#MODE_SINGLE}.<br/>
+ * <br/>
+ * Between the bounds, the host measures itself periodically and resizes the pool.
+ * If guests wait in queue longer than {@link #getGrowWaitMillis()}, the pool grows,
+ * but not beyond what the guests can use: CPU-bound guests are limited to the count of cores,
+ * and guests blocking on I/O for half of their run time are limited to twice the count of cores, and so on.
+ * The pool shrinks by one thread after {@link #getPatience()} periods in a row
+ * with an empty queue and waits not longer than {@link #getShrinkWaitMillis()}.
+ * Waits between the two thresholds change nothing.<br/>
+ * <br/>
+ * Threads above the lower bound end after idle for {@link #getKeepAliveMillis()}.
+ * With the lower bound of 0, every thread may end, and a thread starts again when a guest arrives.<br/>
+ * ex)<pre>
+ * ThreadHost.setPoolSizing(PoolSizing.adaptive(0, 8).setKeepAlive(30000));</pre>
+ * Changes to an instance take effect when it is passed to {@link ThreadHost#setPoolSizing(PoolSizing)}.
+ *
+ * @author Arngard
+ * @see ThreadConfig#THREAD_CORE_SIZE
+ * @see ThreadConfig#THREAD_MAX_SIZE
+ */
+public final class PoolSizing {
+
+    private final int minThreads;
+    private final int maxThreads;
+    private final boolean adaptive;
+    private long keepAliveMillis = ThreadConfig.THREAD_ALIVE_TIME;
+    private long periodMillis = ThreadConfig.THREAD_SIZING_PERIOD_MILLIS;
+    private long growWaitMillis = ThreadConfig.THREAD_SIZING_GROW_WAIT_MILLIS;
+    private long shrinkWaitMillis = ThreadConfig.THREAD_SIZING_SHRINK_WAIT_MILLIS;
+    private int patience = ThreadConfig.THREAD_SIZING_PATIENCE;
+
+    private PoolSizing(int minThreads, int maxThreads, boolean adaptive) {
+        if (minThreads < 0 || maxThreads < 1 || minThreads > maxThreads) {
+            throw new IllegalArgumentException("Invalid bounds: " + minThreads + ".." + maxThreads);
+        }
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.adaptive = adaptive && minThreads != maxThreads;
+    }
+
+    /**
+     * @param threads Count of threads. Always alive.
+     * @return Sizing that does not adapt.
+     */
+    public static PoolSizing fixed(int threads) {
+        return new PoolSizing(threads, threads, false);
+    }
+
+    /**
+     * @param minThreads Count of threads always alive. 0 lets all threads end while idle.
+     * @param maxThreads Upper bound. At least 1.
+     * @return Sizing that adapts between the bounds.
+     */
+    public static PoolSizing adaptive(int minThreads, int maxThreads) {
+        return new PoolSizing(minThreads, maxThreads, true);
+    }
+
+    /**
+     * For blocking work. Without measuring, a thread starts whenever a guest arrives and no thread is idle,
+     * and ends after idle for {@link #getKeepAliveMillis()}.
+     *
+     * @param maxThreads Upper bound. At least 1.
+     * @return Sizing that grows and shrinks with the demand.
+     */
+    public static PoolSizing elastic(int maxThreads) {
+        return new PoolSizing(0, maxThreads, false);
+    }
+
+    /**
+     * @return Sizing with {@link ThreadConfig#THREAD_CORE_SIZE} and {@link ThreadConfig#THREAD_MAX_SIZE} as bounds.
+     */
+    static PoolSizing fromConfig() {
+        return new PoolSizing(ThreadConfig.THREAD_CORE_SIZE, ThreadConfig.THREAD_MAX_SIZE, true);
+    }
+
+    /**
+     * @return Sizing of the pool for blocking guests, with {@link ThreadConfig#THREAD_BLOCKING_MAX_SIZE}.
+     */
+    static PoolSizing blockingFromConfig() {
+        return elastic(ThreadConfig.THREAD_BLOCKING_MAX_SIZE).setKeepAlive(ThreadConfig.THREAD_BLOCKING_ALIVE_TIME);
+    }
+
+    /**
+     * @param idleMillis Idle time before a thread above the lower bound ends. Positive.
+     * @return This instance.
+     */
+    public PoolSizing setKeepAlive(long idleMillis) {
+        if (idleMillis <= 0) {
+            throw new IllegalArgumentException("idleMillis must be positive.");
+        }
+        keepAliveMillis = idleMillis;
+        return this;
+    }
+
+    /**
+     * @param periodMillis Period of measuring and resizing. Positive.
+     * @return This instance.
+     */
+    public PoolSizing setPeriod(long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be positive.");
+        }
+        this.periodMillis = periodMillis;
+        return this;
+    }
+
+    /**
+     * @param shrinkBelowMillis Average wait in queue considered calm.
+     * @param growAboveMillis   Average wait in queue considered backlog. Not less than shrinkBelowMillis.
+     * @return This instance.
+     */
+    public PoolSizing setWaitThresholds(long shrinkBelowMillis, long growAboveMillis) {
+        if (shrinkBelowMillis < 0 || growAboveMillis < shrinkBelowMillis) {
+            throw new IllegalArgumentException("Invalid thresholds: " + shrinkBelowMillis + ", " + growAboveMillis);
+        }
+        shrinkWaitMillis = shrinkBelowMillis;
+        growWaitMillis = growAboveMillis;
+        return this;
+    }
+
+    /**
+     * @param periods Count of calm periods in a row before shrinking by one thread. At least 1.
+     * @return This instance.
+     */
+    public PoolSizing setPatience(int periods) {
+        if (periods < 1) {
+            throw new IllegalArgumentException("periods must be at least 1.");
+        }
+        patience = periods;
+        return this;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public long getGrowWaitMillis() {
+        return growWaitMillis;
+    }
+
+    public long getShrinkWaitMillis() {
+        return shrinkWaitMillis;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    /**
+     * @return true if the pool is measured and resized between the bounds.
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+}
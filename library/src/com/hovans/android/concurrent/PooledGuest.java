@@ -0,0 +1,102 @@
+package com.hovans.android.concurrent;
+
+/**
+ * A {@link ThreadGuest} to be reused, for tasks submitted thousands of times per second.<br/>
+ * <br/>
+ * Get one from a {@link GuestPool}, set its fields and {@link #execute()} it.
+ * When the guest is done, {@link ThreadHost} puts it back to the pool by itself:
+ * after {@link #run(long)} and the chain, after {@link #after(Object)} if run() returned non-null,
+ * after {@link #onError(Throwable)}, or after {@link #offerFail()}.
+ * The wrapper ThreadHost makes for each submission is kept in the guest and reused, too.
+ * So submitting, running and completing pooled guests allocates nothing in steady state.<br/>
+ * <br/>
+ * Once submitted, don't touch the guest, nor the {@link GuestHandle} from execute(), after it is done.
+ * They may already belong to another submission. Don't execute a guest again while it is still waiting or running.
+ * Settings like {@link #addChain(long, ThreadGuest) chain} or {@link #setRetryPolicy(RetryPolicy) retry policy}
+ * are cleared when the guest goes back to the pool. Clear your own fields in {@link #onRecycle()}.<br/>
+ * ex)<pre>
+ * class DecodeGuest extends PooledGuest {
+ *     byte[] frame;
+ *
+ *     public Object run(long waitTimeMillis) {
+ *         decoder.decode(frame);
+ *         return null;
+ *     }
+ *
+ *     protected void onRecycle() {
+ *         frame = null;
+ *     }
+ * }
+ *
+ * DecodeGuest guest = pool.obtain();
+ * guest.frame = frame;
+ * guest.execute();</pre>
+ *
+ * @author Arngard
+ * @see GuestPool
+ */
+public abstract class PooledGuest extends ThreadGuest {
+
+    /**
+     * 이 게스트가 돌아갈 풀. 풀에서 얻지 않았으면 null.
+     */
+    volatile GuestPool<?> mPool;
+    /**
+     * 풀에서 다음 게스트.
+     */
+    PooledGuest mNextPooled;
+    /**
+     * offer 마다 재사용하는 작업.
+     */
+    private final ThreadHost.HostRunnable mRunnable = new ThreadHost.HostRunnable(this, false);
+
+    /**
+     * @see ThreadGuest#ThreadGuest()
+     */
+    public PooledGuest() {
+        this(PRIORITY_NORMAL);
+    }
+
+    /**
+     * @see ThreadGuest#ThreadGuest(int)
+     */
+    public PooledGuest(int priority) {
+        this(priority, false);
+    }
+
+    /**
+     * @see ThreadGuest#ThreadGuest(int, boolean)
+     */
+    public PooledGuest(int priority, boolean blocking) {
+        super(priority, blocking);
+    }
+
+    /**
+     * Invoked when this guest goes back to the pool, on the thread that finished it.
+     * Release what this guest holds, so the pool does not keep it alive.<br/>
+     * It will do nothing if you don't override this method.
+     */
+    protected void onRecycle() {
+        // do nothing
+    }
+
+    /**
+     * @return 재사용할 작업. 앞선 offer 가 아직 끝나지 않았으면 null.
+     */
+    ThreadHost.HostRunnable claimRunnable() {
+        return mRunnable.claim() ? mRunnable : null;
+    }
+
+    /**
+     * 할 일을 모두 마쳤다. 풀에서 얻은 게스트이면 풀로 돌려보낸다.
+     */
+    void recycle() {
+        final GuestPool<?> pool = mPool;
+        if (pool == null) {
+            return;
+        }
+        mPool = null;
+        pool.recycle(this);
+    }
+
+}
@@ -0,0 +1,640 @@
+package com.hovans.android.concurrent;
+
+import com.hovans.android.constant.ThreadConfig;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ThreadGuest}의 우선순위 프리셋마다 하나씩 FIFO 를 두는 대기열.<br/>
+ * <br/>
+ * 넣는 쪽은 락을 잡지 않는다. 각 FIFO 는 여러 생산자, 하나의 소비자(MPSC) 구조의 연결 리스트이고,
+ * 비어 있지 않은 FIFO 는 비트맵으로 표시한다. 크기 제한은 원자적 카운터로 지킨다.
+ * 꺼내는 쪽은 {@link #takeLock}으로 한 번에 하나의 소비자만 들어가게 하므로, 여러 작업 스레드가 소비해도 안전하다.<br/>
+ * <br/>
+ * 우선순위는 프리셋 단위의 구간(band)으로 나뉜다. 예를 들어 11과 12는 모두 {@link ThreadGuest#PRIORITY_ABOVE_NORMAL} 구간이다.
+ * 같은 구간 안에서는 들어온 순서대로 나간다.<br/>
+ * <br/>
+ * 노화(aging)가 켜져 있으면 각 구간의 머리가 기다린 시간만큼 앞 구간으로 올려서 비교한다.
+ * 구간 안에서는 머리가 가장 오래 기다렸으므로 머리끼리만 비교하면 된다.
+ *
+ * @see ThreadHost#setAgingStep(long)
+ * @author Arngard
+ */
+class PriorityBucketQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * 구간의 수. {@link ThreadGuest}의 우선순위 프리셋 수와 같다.
+     */
+    static final int BUCKET_COUNT = 6;
+    /**
+     * 노화 단계(ms). 0 이하이면 노화하지 않는다. 모든 대기열이 공유한다.
+     */
+    static volatile long agingStepMillis = ThreadConfig.THREAD_AGING_STEP_MILLIS;
+
+    private final Bucket[] buckets = new Bucket[BUCKET_COUNT];
+    /**
+     * i 번째 비트가 켜져 있으면 i 번째 구간에 게스트가 있을 수 있다. 0번 비트가 가장 우선적이다.
+     */
+    private final AtomicInteger nonEmptyBits = new AtomicInteger(0);
+    /**
+     * 대기열의 크기. 넣기 전에 먼저 예약하고 꺼낸 뒤에 감소시키므로 근사값이다.
+     */
+    private final AtomicInteger count = new AtomicInteger(0);
+    private final int capacity;
+
+    /* 소비자 쪽 동기화 */
+    private final ReentrantLock takeLock = new ReentrantLock();
+    private final Condition notEmpty = takeLock.newCondition();
+    private volatile int waitingConsumers = 0;
+
+    /**
+     * @param capacity 최대 크기. 이보다 많이 들어 있으면 {@link #offer(Runnable)}가 false 를 리턴한다.
+     */
+    PriorityBucketQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive.");
+        }
+        this.capacity = capacity;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * 우선순위 값을 구간 번호로 바꾼다. 작은 번호가 우선적이다.
+     *
+     * @param priority {@link ThreadGuest#getEffectivePriority()}
+     * @return 0 ~ {@link #BUCKET_COUNT} - 1
+     */
+    static int bucketOf(int priority) {
+        if (priority >= ThreadGuest.PRIORITY_GREEDY) {
+            return 0;
+        } else if (priority >= ThreadGuest.PRIORITY_HIGH) {
+            return 1;
+        } else if (priority >= ThreadGuest.PRIORITY_ABOVE_NORMAL) {
+            return 2;
+        } else if (priority >= ThreadGuest.PRIORITY_NORMAL) {
+            return 3;
+        } else if (priority >= ThreadGuest.PRIORITY_BELOW_NORMAL) {
+            return 4;
+        } else {
+            return 5;
+        }
+    }
+
+    private static int bucketOf(Runnable runnable) {
+        if (runnable instanceof RunnableGuest) {
+            return bucketOf(((RunnableGuest) runnable).mGuest.getEffectivePriority());
+        }
+        return bucketOf(ThreadGuest.PRIORITY_NORMAL);
+    }
+
+    /**
+     * 기다린 시간만큼 올린 구간 번호. 0 미만으로도 내려가므로, 가장 우선적인 구간의 게스트도 오래 기다린 쪽이 앞선다.
+     *
+     * @param bucket       원래의 구간 번호
+     * @param waitedMillis 기다린 시간
+     * @param stepMillis   노화 단계. 양수여야 한다.
+     */
+    static long agedBucket(int bucket, long waitedMillis, long stepMillis) {
+        return bucket - Math.max(0, waitedMillis) / stepMillis;
+    }
+
+    /**
+     * @return 노화가 켜져 있으면 현재 시각, 아니면 0. {@link #precedes(Runnable, Runnable, long)}에 넘긴다.
+     */
+    static long agingNow() {
+        return agingStepMillis > 0 ? HostClock.now() : 0;
+    }
+
+    /**
+     * 서로 다른 대기열의 머리를 비교한다. 노화가 꺼져 있으면 {@link RunnableGuest#compareTo(RunnableGuest)}와 같다.
+     *
+     * @param now {@link #agingNow()}
+     * @return a 가 b 보다 먼저 수행되어야 하면 true.
+     */
+    static boolean precedes(Runnable a, Runnable b, long now) {
+        final RunnableGuest guestA = (RunnableGuest) a;
+        final RunnableGuest guestB = (RunnableGuest) b;
+        final long step = agingStepMillis;
+        if (step > 0) {
+            final long agedA = agedBucket(bucketOf(a), now - guestA.mOfferTime, step);
+            final long agedB = agedBucket(bucketOf(b), now - guestB.mOfferTime, step);
+            if (agedA != agedB) {
+                return agedA < agedB;
+            }
+            if (guestA.mOfferTime != guestB.mOfferTime) {
+                return guestA.mOfferTime < guestB.mOfferTime;
+            }
+        }
+        return guestA.compareTo(guestB) < 0;
+    }
+
+	/*	생산자 쪽	*/
+
+    /**
+     * 락 없이 대기열에 넣는다.
+     *
+     * @return 가득 차 있으면 false.
+     */
+    @Override
+    public boolean offer(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException("runnable is null.");
+        }
+        if (reserve(1) == 0) {
+            return false;
+        }
+        enqueue(runnable);
+        if (waitingConsumers > 0) {    // 기다리는 소비자가 있을 때만 락을 잡는다.
+            takeLock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                takeLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 여러 작업을 락 없이 한꺼번에 넣는다. 자리는 한 번에 예약하고, 기다리는 소비자는 마지막에 한 번만 깨운다.
+     *
+     * @param runnables 넣을 작업들. 이 순서로 넣는다.
+     * @param count     runnables 에서 사용할 수
+     * @return 앞에서부터 넣은 수. 자리가 모자라면 들어갈 수 있는 만큼만 넣는다.
+     */
+    int offerAll(Runnable[] runnables, int count) {
+        final int reserved = reserve(count);
+        for (int i = 0; i < reserved; i++) {
+            enqueue(runnables[i]);
+        }
+        if (reserved > 0 && waitingConsumers > 0) {
+            takeLock.lock();
+            try {
+                if (reserved == 1) {
+                    notEmpty.signal();
+                } else {
+                    notEmpty.signalAll();
+                }
+            } finally {
+                takeLock.unlock();
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * 예약한 자리에 넣는다. 소비자를 깨우지는 않는다.
+     */
+    private void enqueue(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException("runnable is null.");
+        }
+        int index = bucketOf(runnable);
+        if (runnable instanceof RunnableGuest) {
+            // 구간을 기록한 뒤에 우선순위를 다시 읽는다. 그 사이에 물려받은 우선순위는 여기서 보거나, 물려준 쪽이 기록을 보고 승격한다.
+            final RunnableGuest guest = (RunnableGuest) runnable;
+            guest.queuedIn(index);
+            final int recheck = bucketOf(runnable);
+            if (recheck < index) {
+                index = recheck;
+                guest.queuedIn(index);
+            }
+        }
+        buckets[index].offer(runnable);
+        markNonEmpty(index);
+    }
+
+    /**
+     * 크기 제한을 넘지 않는 만큼만 자리를 예약한다.
+     *
+     * @return 예약한 자리의 수. 0 ~ wanted
+     */
+    private int reserve(int wanted) {
+        while (true) {
+            final int current = count.get();
+            final int reserved = Math.min(wanted, capacity - current);
+            if (reserved <= 0) {
+                return 0;
+            }
+            if (count.compareAndSet(current, current + reserved)) {
+                return reserved;
+            }
+        }
+    }
+
+    private void markNonEmpty(int index) {
+        final int mask = 1 << index;
+        while (true) {
+            final int bits = nonEmptyBits.get();
+            if ((bits & mask) != 0 || nonEmptyBits.compareAndSet(bits, bits | mask)) {
+                return;
+            }
+        }
+    }
+
+    private void markEmpty(int index) {
+        final int mask = 1 << index;
+        while (true) {
+            final int bits = nonEmptyBits.get();
+            if ((bits & mask) == 0 || nonEmptyBits.compareAndSet(bits, bits & ~mask)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void put(Runnable runnable) {
+        offer(runnable);    // 가득 찬 경우는 ThreadHost 에서 offerFail 로 처리하므로 기다리지 않는다.
+    }
+
+    @Override
+    public boolean offer(Runnable runnable, long timeout, TimeUnit unit) {
+        return offer(runnable);
+    }
+
+	/*	소비자 쪽	*/
+
+    /**
+     * 다음에 꺼낼 구간을 고른다. {@link #takeLock}을 잡은 상태에서 호출해야 한다.
+     *
+     * @param clearEmpty 비어 있는 구간의 비트를 끌지. 꺼내는 경우에만 true.
+     * @return 구간 번호. 모두 비어 있으면 -1.
+     */
+    private int selectLocked(boolean clearEmpty) {
+        final long step = agingStepMillis;
+        final long now = step > 0 ? HostClock.now() : 0;
+        int bits = nonEmptyBits.get();
+        int best = -1;
+        long bestBucket = 0;
+        long bestOfferTime = 0;
+        while (bits != 0) {
+            final int index = Integer.numberOfTrailingZeros(bits);
+            bits &= ~(1 << index);
+            Runnable head = buckets[index].peek();
+            if (head == null) {
+                if (!clearEmpty) {
+                    continue;
+                }
+                // 비어 있다. 비트를 끈 뒤에 다시 확인해야 그 사이에 들어온 항목을 놓치지 않는다.
+                markEmpty(index);
+                head = buckets[index].peek();
+                if (head == null) {
+                    continue;
+                }
+                markNonEmpty(index);
+            }
+            if (step <= 0) {    // 노화하지 않으면 비어 있지 않은 첫 구간이다.
+                return index;
+            }
+            final long offerTime = head instanceof RunnableGuest ? ((RunnableGuest) head).mOfferTime : now;
+            final long aged = agedBucket(index, now - offerTime, step);
+            if (best < 0 || aged < bestBucket || (aged == bestBucket && offerTime < bestOfferTime)) {
+                best = index;
+                bestBucket = aged;
+                bestOfferTime = offerTime;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * {@link #takeLock}을 잡은 상태에서 호출해야 한다.
+     *
+     * @return 가장 우선적인 구간의 가장 오래된 항목. 없으면 null.
+     */
+    private Runnable pollLocked() {
+        final int index = selectLocked(true);
+        if (index < 0) {
+            return null;
+        }
+        final Runnable runnable = buckets[index].poll();    // 소비자는 하나뿐이므로 고른 머리가 그대로 있다.
+        count.decrementAndGet();
+        return runnable;
+    }
+
+    private Runnable peekLocked() {
+        final int index = selectLocked(false);
+        return index < 0 ? null : buckets[index].peek();
+    }
+
+    /**
+     * 인자의 구간에서 버릴 항목을 꺼낸다. 노화와 관계없다. {@link #pollVictimLocked(int)} 참고.
+     *
+     * @return 구간에 버릴 항목이 없으면 null.
+     */
+    Runnable pollBucket(int index) {
+        takeLock.lock();
+        try {
+            return pollVictimLocked(index);    // 비트는 다음에 꺼내는 소비자가 정리한다.
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * 가장 뒤 구간부터 minBucket 까지 살펴서, 버릴 항목이 있는 가장 뒤 구간의 가장 오래된 항목을 꺼낸다.
+     *
+     * @return 해당하는 항목이 없으면 null.
+     */
+    Runnable pollLowest(int minBucket) {
+        takeLock.lock();
+        try {
+            for (int index = BUCKET_COUNT - 1; index >= minBucket; index--) {
+                final Runnable runnable = pollVictimLocked(index);
+                if (runnable != null) {
+                    return runnable;
+                }
+            }
+            return null;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * 구간에서 버려도 되는 가장 오래된 항목을 꺼낸다. {@link #takeLock}을 잡은 상태에서 호출해야 한다.<br/>
+     * 같은 offer 의 다른 항목이 이미 꺼내진 항목과, 물려받은 우선순위가 이 구간보다 앞선 항목은 건너뛴다.
+     * 앞의 것은 버려도 자리가 나지 않고, 뒤의 것을 버리면 우선순위를 물려준 게스트가 기다리던 게스트를 버리게 된다.
+     * 중간의 항목은 뺄 수 없으므로, 건너뛴 항목은 꺼내서 구간의 끝에 다시 넣는다.
+     *
+     * @return 구간에 버릴 항목이 없으면 null.
+     */
+    private Runnable pollVictimLocked(int index) {
+        final Bucket bucket = buckets[index];
+        Runnable firstSkipped = null;
+        Runnable runnable;
+        while ((runnable = bucket.peek()) != null && runnable != firstSkipped) {    // 한 바퀴 돌았으면 멈춘다.
+            bucket.poll();
+            if (!(runnable instanceof RunnableGuest)
+                    || !((RunnableGuest) runnable).isStale() && bucketOf(runnable) >= index) {
+                count.decrementAndGet();
+                return runnable;
+            }
+            if (firstSkipped == null) {
+                firstSkipped = runnable;
+            }
+            bucket.offer(runnable);
+        }
+        return null;
+    }
+
+    @Override
+    public Runnable poll() {
+        if (nonEmptyBits.get() == 0) {
+            return null;
+        }
+        takeLock.lock();
+        try {
+            return pollLocked();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        takeLock.lock();
+        try {
+            return peekLocked();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * 다른 소비자가 꺼내는 중이면 기다리지 않고 null 을 리턴한다.
+     */
+    Runnable tryPeek() {
+        if (nonEmptyBits.get() == 0 || !takeLock.tryLock()) {
+            return null;
+        }
+        try {
+            return peekLocked();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        takeLock.lockInterruptibly();
+        try {
+            while (true) {
+                Runnable runnable = pollLocked();
+                if (runnable != null) {
+                    return runnable;
+                }
+                waitingConsumers++;    // 잠들 것임을 먼저 알리고 다시 확인해야 생산자의 신호를 놓치지 않는다.
+                try {
+                    runnable = pollLocked();
+                    if (runnable != null) {
+                        return runnable;
+                    }
+                    notEmpty.await();
+                } finally {
+                    waitingConsumers--;
+                }
+            }
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        takeLock.lockInterruptibly();
+        try {
+            while (true) {
+                Runnable runnable = pollLocked();
+                if (runnable != null) {
+                    return runnable;
+                }
+                if (nanos <= 0) {
+                    return null;
+                }
+                waitingConsumers++;
+                try {
+                    runnable = pollLocked();
+                    if (runnable != null) {
+                        return runnable;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                } finally {
+                    waitingConsumers--;
+                }
+            }
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+        if (collection == this) {
+            throw new IllegalArgumentException();
+        }
+        int drained = 0;
+        takeLock.lock();
+        try {
+            Runnable runnable;
+            while (drained < maxElements && (runnable = pollLocked()) != null) {
+                collection.add(runnable);
+                drained++;
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        return drained;
+    }
+
+	/*	상태	*/
+
+    @Override
+    public int size() {
+        return Math.max(0, count.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nonEmptyBits.get() == 0 && count.get() <= 0;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, capacity - count.get());
+    }
+
+    /**
+     * 호출 시점의 내용을 우선순위 순으로 복사한 반복자. 반복자를 통한 삭제는 지원하지 않는다.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final ArrayList<Runnable> snapshot = new ArrayList<Runnable>();
+        takeLock.lock();
+        try {
+            for (Bucket bucket : buckets) {
+                bucket.copyTo(snapshot);
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        final Iterator<Runnable> iterator = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * 여러 생산자, 하나의 소비자를 위한 FIFO. (D. Vyukov 의 intrusive MPSC 큐)<br/>
+     * 넣을 때는 꼬리를 원자적으로 바꿔치기한 뒤에 이전 꼬리에 연결한다.
+     * 꺼내는 쪽은 {@link #takeLock} 아래에서만 {@link #head}를 움직인다.<br/>
+     * <br/>
+     * {@link RunnableGuest}는 자신의 노드를 가지고 다니므로 넣을 때 노드를 만들지 않는다.
+     * 꺼낸 노드는 큐에서 완전히 떨어지므로 다시 넣어도 된다. 비어 있을 때는 stub 노드가 자리를 지킨다.
+     */
+    private static final class Bucket {
+
+        private final Node stub = new Node(null);
+        /**
+         * 다음에 꺼낼 노드. stub 일 수 있다.
+         */
+        private Node head = stub;
+        private final AtomicReference<Node> tail = new AtomicReference<Node>(stub);
+
+        void offer(Runnable value) {
+            offerNode(value instanceof RunnableGuest ? ((RunnableGuest) value).mQueueNode : new Node(value));
+        }
+
+        private void offerNode(Node node) {
+            node.next = null;
+            final Node previous = tail.getAndSet(node);
+            previous.next = node;    // 이 연결 전까지는 소비자에게 보이지 않는다. 그 동안은 비어 있는 것으로 취급된다.
+        }
+
+        Runnable poll() {
+            Node first = head;
+            Node next = first.next;
+            if (first == stub) {
+                if (next == null) {
+                    return null;
+                }
+                head = next;    // stub 을 건너뛴다.
+                first = next;
+                next = next.next;
+            }
+            if (next == null) {    // 마지막 노드이다. 떼어내려면 뒤에 무언가 있어야 하므로 stub 을 다시 넣는다.
+                if (first == tail.get()) {
+                    offerNode(stub);
+                }
+                // 꼬리는 이미 넘어갔다. 생산자가 연결을 마칠 때까지 잠시 기다린다. 꼬리를 바꾼 바로 다음 줄이다.
+                while ((next = first.next) == null) {
+                    Thread.yield();
+                }
+            }
+            head = next;
+            return first.value;
+        }
+
+        Runnable peek() {
+            Node first = head;
+            if (first == stub) {
+                first = first.next;
+            }
+            return first == null ? null : first.value;
+        }
+
+        void copyTo(Collection<Runnable> out) {
+            for (Node node = head; node != null; node = node.next) {
+                if (node != stub) {
+                    out.add(node.value);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * 큐의 노드. {@link RunnableGuest}는 하나를 만들어 두고 넣을 때마다 재사용한다.
+     */
+    static final class Node {
+
+        final Runnable value;
+        volatile Node next;
+
+        Node(Runnable value) {
+            this.value = value;
+        }
+
+    }
+
+}
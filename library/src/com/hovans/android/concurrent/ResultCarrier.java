@@ -6,12 +6,23 @@ import android.os.Message;
 /**
  * {@link ThreadHost}의 작업 스레드에서 {@link ThreadGuest#run(long)}의 수행이 끝나고 null 이 아닌 객체가 리턴된 경우,
  * 그 결과 객체를 {@link Handler}와 {@link Message}를 이용하여 메인스레드로 넘겨준다.
- * 이 때 {@link Message#obj}에 ThreadGuest 객체와 결과 객체를 담아 보내는 매개물로서 이 클래스가 존재한다.
+ * 이 때 {@link Message#obj}에 ThreadGuest 객체와 결과 객체를 담아 보내는 매개물로서 이 클래스가 존재한다.<br/>
+ * <br/>
+ * {@link Message}처럼 재사용 풀을 가진다. {@link #obtain(ThreadGuest, Object)}로 얻고 {@link #recycle()}로 돌려줄 것.
  *
  * @author Arngard
+ * @see ResultDispatcher
  */
 class ResultCarrier {
 
+    /**
+     * 한 묶음 구간 동안 쌓이는 결과를 모두 담을 수 있어야 부하 중에도 새로 만들지 않는다.
+     */
+    private static final int MAX_POOL_SIZE = 2048;
+    private static final Object sPoolSync = new Object();
+    private static ResultCarrier sPool;
+    private static int sPoolSize = 0;
+
     /**
      * 현재 작업의 게스트
      */
@@ -20,5 +31,50 @@ class ResultCarrier {
      * {@link #guest}의 {@link ThreadGuest#run(long)}}이 리턴한 객체. {@link ThreadGuest#after(Object)}로 전달해야 한다.
      */
     Object result;
+    /**
+     * 재사용 풀, 또는 메인스레드로 함께 넘어가는 묶음에서 다음 캐리어.
+     */
+    ResultCarrier next;
+
+    private ResultCarrier() {
+    }
+
+    /**
+     * @return 풀에서 꺼낸 캐리어. 풀이 비어 있으면 새로 만든다.
+     */
+    static ResultCarrier obtain(ThreadGuest guest, Object result) {
+        ResultCarrier carrier = null;
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                carrier = sPool;
+                sPool = carrier.next;
+                sPoolSize--;
+            }
+        }
+        if (carrier == null) {
+            carrier = new ResultCarrier();
+        }
+        carrier.next = null;
+        carrier.guest = guest;
+        carrier.result = result;
+        return carrier;
+    }
+
+    /**
+     * 내용을 비우고 풀에 돌려준다. 이후에는 이 객체를 사용하면 안 된다.
+     */
+    void recycle() {
+        guest = null;
+        result = null;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            } else {
+                next = null;
+            }
+        }
+    }
 
 }
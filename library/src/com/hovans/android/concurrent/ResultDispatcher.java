@@ -0,0 +1,106 @@
+package com.hovans.android.concurrent;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+import com.hovans.android.constant.DebugConfig;
+import com.hovans.android.constant.ThreadConfig;
+import com.hovans.android.log.LogByCodeLab;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link ThreadGuest#run(long)}의 결과를 메인스레드로 넘겨 {@link ThreadGuest#after(Object)}를 수행시킨다.<br/>
+ * <br/>
+ * 결과마다 메시지를 보내지 않는다. 작업 스레드는 {@link ResultCarrier}를 락 없이 스택에 쌓기만 하고,
+ * 비어 있던 스택에 처음 쌓은 스레드만 메시지 하나를 보낸다.
+ * 메시지는 {@link ThreadConfig#THREAD_RESULT_BATCH_MILLIS} 단위 구간의 끝에 도착하도록 예약되므로,
+ * 한 구간 안에 끝난 결과들은 메인스레드를 한 번만 깨운다.
+ *
+ * @author Arngard
+ */
+final class ResultDispatcher {
+
+    /**
+     * 메인스레드로 넘어가기를 기다리는 캐리어 스택. 최근에 쌓인 것이 머리에 있다.
+     */
+    private static final AtomicReference<ResultCarrier> pending = new AtomicReference<ResultCarrier>(null);
+
+    /**
+     * 메인 스레드 핸들러. 쌓인 결과를 한 번에 처리한다.
+     */
+    private static final Handler resultHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            // 여기는 메인스레드이다.
+            drain();
+        }
+    };
+
+    private ResultDispatcher() {
+    }
+
+    /**
+     * 작업 스레드에서 호출한다. 결과를 쌓고, 필요하면 메인스레드로 갈 메시지를 예약한다.
+     *
+     * @param guest  작업 대상
+     * @param result guest 의 {@link ThreadGuest#run(long) run()}이 리턴한 객체. null 이 아니어야 한다.
+     */
+    static void deliver(final ThreadGuest guest, final Object result) {
+        final ResultCarrier carrier = ResultCarrier.obtain(guest, result);    // 캐리어에 담는다.
+        ResultCarrier head;
+        do {
+            head = pending.get();
+            carrier.next = head;
+        } while (!pending.compareAndSet(head, carrier));
+        if (head == null) {    // 이번 묶음의 첫 결과. 메인스레드로 가자.
+            LogByCodeLab.v("ResultDispatcher.deliver(): ResultCarrier batch departed");
+            resultHandler.sendMessageAtTime(resultHandler.obtainMessage(), nextBatchTime());
+        }
+    }
+
+    /**
+     * @return 현재 구간이 끝나는 시각. {@link SystemClock#uptimeMillis()} 기준.
+     */
+    private static long nextBatchTime() {
+        final long now = SystemClock.uptimeMillis();
+        final long window = ThreadConfig.THREAD_RESULT_BATCH_MILLIS;
+        if (window <= 0) {
+            return now;
+        }
+        return (now / window + 1) * window;
+    }
+
+    /**
+     * 메인스레드에서 호출된다. 쌓인 결과를 모두 꺼내서 쌓인 순서대로 처리한다.
+     */
+    private static void drain() {
+        ResultCarrier stack = pending.getAndSet(null);    // 이후에 쌓이는 결과는 다음 메시지가 처리한다.
+        ResultCarrier ordered = null;
+        while (stack != null) {    // 스택을 뒤집어서 도착 순서로 만든다.
+            final ResultCarrier next = stack.next;
+            stack.next = ordered;
+            ordered = stack;
+            stack = next;
+        }
+        int count = 0;
+        while (ordered != null) {
+            final ResultCarrier next = ordered.next;
+            final ThreadGuest guest = ordered.guest;
+            final Object result = ordered.result;
+            ordered.recycle();
+            try {
+                guest.after(result);
+            } catch (Exception e) {
+                Log.e(DebugConfig.LOG_TAG, "Exception occurred in ThreadGuest.after()", e);    // 나머지 결과는 계속 처리해야 한다. 공공연히 알려야 하므로 로그 래핑을 쓰지 않음.
+            }
+            ThreadHost.processChain(guest);
+            ordered = next;
+            count++;
+        }
+        LogByCodeLab.v("ResultDispatcher.drain(): " + count + " ResultCarrier arrived.");
+    }
+
+}
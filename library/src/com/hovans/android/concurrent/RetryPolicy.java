@@ -0,0 +1,119 @@
+package com.hovans.android.concurrent;
+
+import java.util.Random;
+
+/**
+ * When and how soon a failed {@link ThreadGuest} runs again.<br/>
+ * <br/>
+ * If {@link ThreadGuest#run(long)} throws, the guest is offered again after a delay, up to the count of retries.
+ * The delay grows exponentially from the initial delay by the multiplier, but not over the max delay.
+ * Then a random part of it, by the jitter ratio, is taken off, so guests failed together do not retry together.
+ * Delays are measured by the timer thread of {@link ThreadHost}, not by the main looper.
+ * A retry is not checked by the {@link AdmissionPolicy} again, and a guest in a lane keeps its turn until it stops retrying.
+ * If the retry cannot be queued, the last error is given to {@link ThreadGuest#onError(Throwable)}.
+ * When no retry is left, {@link ThreadGuest#onError(Throwable)} is invoked.<br/>
+ * <br/>
+ * To retry only some errors, override {@link #shouldRetry(ThreadGuest, Throwable, int)}.<br/>
+ * ex)<pre>
+ * guest.setRetryPolicy(new RetryPolicy(5, 500, 30000) {
+ *     public boolean shouldRetry(ThreadGuest guest, Throwable error, int retries) {
+ *         return error instanceof IOException &amp;&amp; super.shouldRetry(guest, error, retries);
+ *     }
+ * }).execute();</pre>
+ * An instance may be shared by many guests.
+ *
+ * @author Arngard
+ * @see ThreadGuest#setRetryPolicy(RetryPolicy)
+ */
+public class RetryPolicy {
+
+    private static final Random random = new Random();
+
+    private final int maxRetries;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private volatile double multiplier = 2;
+    private volatile double jitter = 0.5;
+
+    /**
+     * @param maxRetries         Count of retries after the first run. 0 never retries.
+     * @param initialDelayMillis Delay before the first retry. Not negative.
+     * @param maxDelayMillis     Upper bound of delay. Not less than initialDelayMillis.
+     */
+    public RetryPolicy(int maxRetries, long initialDelayMillis, long maxDelayMillis) {
+        if (maxRetries < 0 || initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Invalid retry: " + maxRetries + " times, " + initialDelayMillis + ".." + maxDelayMillis + "ms");
+        }
+        this.maxRetries = maxRetries;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @param multiplier Growth of delay for each retry. At least 1. Default is 2.
+     * @return This instance.
+     */
+    public RetryPolicy setMultiplier(double multiplier) {
+        if (!(multiplier >= 1)) {
+            throw new IllegalArgumentException("multiplier must be at least 1.");
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * @param ratio Up to this ratio of delay is taken off at random. 0 for exact delays, 1 for delays from 0 to the full delay.
+     *              Default is 0.5.
+     * @return This instance.
+     */
+    public RetryPolicy setJitter(double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("ratio must be in 0..1.");
+        }
+        this.jitter = ratio;
+        return this;
+    }
+
+    /**
+     * Decide whether to retry the failed guest.
+     * Invoked on the thread of {@link ThreadHost}, which ran the guest.
+     *
+     * @param guest   Failed guest.
+     * @param error   Thrown by {@link ThreadGuest#run(long)}.
+     * @param retries Count of retries done before this failure.
+     * @return true to run the guest again. By default, while retries are left.
+     */
+    public boolean shouldRetry(ThreadGuest guest, Throwable error, int retries) {
+        return retries < maxRetries;
+    }
+
+    /**
+     * @param retries Count of retries done before. 0 for the first retry.
+     * @return Delay in milliseconds before the next retry, with jitter.
+     */
+    public long getDelayMillis(int retries) {
+        final double exact = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, retries));
+        return Math.round(exact - exact * jitter * random.nextDouble());
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+}
@@ -2,20 +2,90 @@ package com.hovans.android.concurrent;
 
 /**
  * 우선순위 큐의 동작을 위한 Runnable 래핑.
+ * 한 번의 offer 에 하나씩 만들어지며, 그 offer 의 {@link GuestHandle}이기도 하다.
+ * {@link PooledGuest}의 것은 예외적으로 게스트마다 하나를 만들어 두고 offer 마다 재사용한다.
+ * 우선순위를 물려받아 승격되면, 같은 offer 를 가리키는 항목이 대기열에 하나 더 들어간다. {@link ThreadHost#inheritPriority} 참고.
  *
  * @author Arngard
  */
-abstract class RunnableGuest implements Runnable, Comparable<RunnableGuest> {
+abstract class RunnableGuest extends GuestHandle implements Runnable, Comparable<RunnableGuest> {
 
     ThreadGuest mGuest;
+    /**
+     * 호스트에 offer 한 시각. {@link HostClock#now()} 기준. 우선순위 노화(aging)에 사용.
+     */
+    long mOfferTime;
+    /**
+     * 중복 제거에 사용한 키. offer 시점의 {@link ThreadGuest#getCoalescingKey()}. 없으면 null.
+     */
+    Object mCoalescingKey;
+    /**
+     * 이 작업이 속한 레인. offer 시점의 {@link ThreadGuest#getLane()}으로 정해진다. 없으면 null.
+     */
+    SerialLane mLane;
+    /**
+     * 대기열에 들어갈 때 쓰는 노드. 한 번에 하나의 대기열에만 들어가므로 재사용한다.
+     */
+    final PriorityBucketQueue.Node mQueueNode = new PriorityBucketQueue.Node(this);
+    /**
+     * 이 offer 가 기다리고 있는 가장 앞선 구간. 엔진의 대기열에 들어가기 전이면 -1. 승격할지 판단하는 데 사용.
+     */
+    volatile int mBucket = -1;
 
-    public RunnableGuest(ThreadGuest guest) {
+    public RunnableGuest(ThreadGuest guest, long offerTime) {
         mGuest = guest;
+        mOfferTime = offerTime;
     }
 
+    @Override
+    public ThreadGuest getGuest() {
+        return mGuest;
+    }
+
+    /**
+     * 게스트에만 우선순위를 물려준다. 이미 대기열에 들어간 항목은 옮기지 않는다.
+     */
+    @Override
+    public boolean raisePriority(int priority) {
+        mGuest.inheritPriority(priority);
+        return isPending();
+    }
+
+    /**
+     * 대기열의 구간에 들어갔다. {@link PriorityBucketQueue}가 호출한다.
+     */
+    void queuedIn(int bucket) {
+        mBucket = bucket;
+    }
+
+    /**
+     * @return 같은 offer 의 다른 항목이 이미 꺼내져서, 꺼내도 할 일이 없는 항목이면 true.
+     */
+    boolean isStale() {
+        return false;
+    }
+
+    @Override
+    void onSettled() {
+        if (mCoalescingKey != null) {    // 더 이상 대기 중이 아니므로 같은 키의 다음 게스트가 합쳐지지 않게 한다.
+            ThreadHost.unregisterCoalescing(this);
+        }
+    }
+
+    /**
+     * 유효 우선순위와 ID 로 비교한다. {@link ThreadGuest#compareTo(ThreadGuest)}와 달리 물려받은 우선순위를 따른다.
+     */
     @Override
     public int compareTo(RunnableGuest another) {
-        return mGuest.compareTo(another.mGuest);
+        final int priority = mGuest.getEffectivePriority();
+        final int anotherPriority = another.mGuest.getEffectivePriority();
+        if (priority != anotherPriority) {
+            return priority > anotherPriority ? -1 : 1;    // priority 는 숫자가 크면 우선적이다.
+        }
+        if (mGuest.mSeqNum == another.mGuest.mSeqNum) {
+            return 0;
+        }
+        return mGuest.mSeqNum < another.mGuest.mSeqNum ? -1 : 1;    // seqNum 은 숫자가 작으면 우선적이다.
     }
 
 }
@@ -0,0 +1,118 @@
+package com.hovans.android.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * 같은 레인 키를 가진 게스트들의 순서를 지킨다. {@link ThreadGuest#setLane(Object)} 참고.<br/>
+ * <br/>
+ * 한 레인에서는 한 번에 하나의 게스트만 호스트의 대기열에 들어간다. 나머지는 이 레인 안에서 도착한 순서대로 기다리다가,
+ * 앞선 게스트의 run()이 끝나면 다음 하나가 대기열에 들어간다. 서로 다른 레인은 작업 스레드들을 나누어 쓰며 동시에 진행된다.<br/>
+ * <br/>
+ * 기다리는 게스트가 없어지면 레인은 은퇴하고 {@link ThreadHost}의 맵에서 빠진다.
+ * 은퇴한 레인에는 더 이상 들어갈 수 없으므로, 같은 키로 새 레인을 만들어도 순서가 섞이지 않는다.
+ *
+ * @author Arngard
+ */
+final class SerialLane {
+
+    /**
+     * {@link #enter(RunnableGuest)}의 결과. 레인이 비어 있었다. 호출한 쪽이 바로 대기열에 넣어야 한다.
+     */
+    static final int ENTERED_HEAD = 0;
+    /**
+     * {@link #enter(RunnableGuest)}의 결과. 앞선 게스트가 있다. 차례가 되면 레인이 대기열에 넣는다.
+     */
+    static final int ENTERED_WAITING = 1;
+    /**
+     * {@link #enter(RunnableGuest)}의 결과. 은퇴한 레인이다. 레인을 다시 얻어야 한다.
+     */
+    static final int RETIRED = 2;
+
+    final Object key;
+
+    private final ArrayDeque<RunnableGuest> waiting = new ArrayDeque<RunnableGuest>();
+    /**
+     * 호스트의 대기열에 있거나 수행 중인 게스트의 작업. 없으면 null.
+     */
+    private RunnableGuest current = null;
+    /**
+     * 레인의 게스트 하나가 호스트의 대기열에 있거나 수행 중이다.
+     */
+    private boolean isBusy = false;
+    private boolean isRetired = false;
+
+    SerialLane(Object key) {
+        this.key = key;
+    }
+
+    /**
+     * 인자의 작업을 레인의 끝에 세운다.
+     *
+     * @return {@link #ENTERED_HEAD}, {@link #ENTERED_WAITING}, {@link #RETIRED} 중 하나.
+     */
+    synchronized int enter(RunnableGuest runnable) {
+        if (isRetired) {
+            return RETIRED;
+        }
+        if (isBusy) {
+            waiting.addLast(runnable);
+            return ENTERED_WAITING;
+        }
+        isBusy = true;
+        current = runnable;
+        return ENTERED_HEAD;
+    }
+
+    /**
+     * 앞선 게스트가 끝났을 때 호출한다. 기다리는 동안 취소된 게스트는 건너뛴다.
+     *
+     * @return 다음 차례의 작업. 없으면 null 이고, 레인은 은퇴한다.
+     */
+    synchronized RunnableGuest next() {
+        RunnableGuest next;
+        while ((next = waiting.pollFirst()) != null) {
+            if (next.isPending()) {
+                current = next;
+                return next;
+            }
+        }
+        current = null;
+        isBusy = false;
+        isRetired = true;
+        return null;
+    }
+
+    /**
+     * 재시도하는 게스트의 새 작업을 레인의 현재 작업으로 기록한다. 레인은 놓지 않으므로 뒤의 게스트들은 계속 기다린다.
+     *
+     * @param runnable 같은 게스트를 다시 수행할 작업
+     */
+    synchronized void resume(RunnableGuest runnable) {
+        current = runnable;
+    }
+
+    /**
+     * 인자의 작업 앞에서 기다리는 게스트들에게 그 우선순위를 물려준다.
+     * 앞선 게스트는 뒤에 선 게스트들에게서 이미 물려받았으므로, 물려줄 필요가 없는 게스트를 만나면 멈춘다.
+     *
+     * @param runnable 방금 레인의 끝에 선 작업
+     * @return 호스트의 대기열에 있거나 수행 중인 작업. 호출한 쪽이 락 밖에서 물려준다. 없으면 null.
+     */
+    synchronized RunnableGuest lendPriority(RunnableGuest runnable) {
+        final int priority = runnable.mGuest.getEffectivePriority();
+        final Iterator<RunnableGuest> iterator = waiting.descendingIterator();
+        while (iterator.hasNext()) {
+            final RunnableGuest ahead = iterator.next();
+            if (ahead == runnable) {
+                continue;
+            }
+            if (ahead.mGuest.getEffectivePriority() >= priority) {
+                break;
+            }
+            ahead.mGuest.inheritPriority(priority);    // 아직 대기열에 들어가기 전이다. 들어갈 때 물려받은 우선순위를 따른다.
+        }
+        return current;
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.hovans.android.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 여러 스레드가 자주 증가시키는 카운터. 스레드마다 다른 칸(stripe)을 증가시키고, 읽을 때 합친다.<br/>
+ * <br/>
+ * 각 칸은 캐시 라인 하나씩 떨어져 있으므로 서로 다른 작업 스레드가 같은 캐시 라인을 두고 다투지 않는다.
+ * 합은 읽는 순간의 근사값이다.
+ *
+ * @author Arngard
+ */
+final class StripedCounter {
+
+    /**
+     * 칸 사이의 간격. long 8개가 64바이트 캐시 라인 하나이다.
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripeCount();
+    private static final int MASK = STRIPES - 1;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * @return 코어 수 이상인 가장 작은 2의 거듭제곱. 최대 16.
+     */
+    private static int stripeCount() {
+        final int processors = Math.min(16, Math.max(1, Runtime.getRuntime().availableProcessors()));
+        return processors == 1 ? 1 : Integer.highestOneBit(processors - 1) << 1;
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        cells.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    private static int stripe() {
+        final long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;    // 연속된 스레드 번호를 흩뿌린다.
+        return (hash >>> 16) & MASK;
+    }
+
+}
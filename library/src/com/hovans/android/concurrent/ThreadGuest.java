@@ -1,8 +1,10 @@
 package com.hovans.android.concurrent;
 
-import java.util.ArrayList;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Contents of method run() will be executed on background thread of ThreadHost.
@@ -77,6 +79,31 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
     @SuppressWarnings("unused")
     public static final int PRIORITY_IDLE = 4;
 
+    /**
+     * Mode of coalescing. If a guest with the same key is waiting, the new one is not queued.
+     * {@link #execute()} returns the handle of the waiting one.
+     * The new one gets the outcome of the waiting one instead of running: {@link #after(Object)} with its result and then its own chain,
+     * {@link #onError(Throwable)}, or {@link #offerFail()}.
+     *
+     * @see #setCoalescingKey(Object, int)
+     */
+    public static final int COALESCE_MERGE = 0;
+    /**
+     * Mode of coalescing. If a guest with the same key is waiting, it is cancelled once the new one is queued.
+     * Guests merged into the cancelled one get the outcome of the new one. If the new one is rejected, the waiting one stays.
+     *
+     * @see #setCoalescingKey(Object, int)
+     */
+    public static final int COALESCE_REPLACE = 1;
+
+    /**
+     * {@link #mInheritedPriority}의 값. 물려받은 우선순위가 없다.
+     */
+    static final int NO_PRIORITY = Integer.MIN_VALUE;
+
+    private static final AtomicIntegerFieldUpdater<ThreadGuest> INHERITED_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(ThreadGuest.class, "mInheritedPriority");
+
     /**
      * {@link #mSeqNum}의 값을 발급하는 데에 사용한다.
      */
@@ -90,6 +117,14 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
      * 이 스레드 게스트의 우선순위.
      */
     final int mPriority;
+    /**
+     * 이 게스트를 기다리는 쪽에서 물려받은 우선순위. 없으면 {@link #NO_PRIORITY}. 할 일을 모두 마치면 되돌린다.
+     */
+    volatile int mInheritedPriority = NO_PRIORITY;
+    /**
+     * I/O 를 기다리는 게스트이면 true. 계산용 작업 스레드와 별도의 스레드에서 수행된다.
+     */
+    final boolean mBlocking;
 
 	/* 스레드 체인 관련 변수 */
     /**
@@ -105,10 +140,42 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
      * 체인으로 연결하는 다음 게스트
      */
     ThreadGuest mChainNextGuest;
+    /**
+     * 이 게스트가 {@link ChainBlocker}에서 기다리고 있는 노드. 마지막으로 기다린 것만 기록한다.
+     */
+    volatile ChainBlocker.Node mWaitingNode;
     /**
      * 체인을 통해 전달되는 임의의 객체
      */
     private Object mObjectHolder = null;
+    /**
+     * 중복 제거 키. null 이면 중복 제거하지 않는다.
+     */
+    private volatile Object mCoalescingKey = null;
+    /**
+     * 중복 제거 방식
+     */
+    private volatile int mCoalescingMode = COALESCE_MERGE;
+    /**
+     * 중복 제거로 이 게스트에 합쳐진 게스트들의 스택. 이 게스트의 결과나 실패를 넘겨받는다. {@link ThreadHost}가 락을 잡고 다룬다.
+     */
+    volatile ThreadGuest mMergedGuests;
+    /**
+     * {@link #mMergedGuests} 스택에서 다음 게스트.
+     */
+    ThreadGuest mNextMerged;
+    /**
+     * 순서를 지킬 레인의 키. null 이면 레인 없이 우선순위대로 수행된다.
+     */
+    private volatile Object mLaneKey = null;
+    /**
+     * run()이 실패했을 때의 재시도 방식. null 이면 재시도하지 않는다.
+     */
+    private volatile RetryPolicy mRetryPolicy = null;
+    /**
+     * 지금까지 재시도한 횟수. 성공하거나 포기하면 0 으로 돌아간다.
+     */
+    volatile int mRetryCount = 0;
 
     /**
      * Initiate with default priority.
@@ -128,11 +195,47 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
      * @see #PRIORITY_NORMAL
      */
     public ThreadGuest(int priority) {
+        this(priority, false);
+    }
+
+    /**
+     * Initiate with defined priority, and the kind of work.<br/>
+     * <br/>
+     * A blocking guest waits on I/O, like DNS lookup, socket or file, for most of its run.
+     * It runs on a separate pool of {@link ThreadHost}, which makes threads as needed and ends them while idle.
+     * So a stuck socket does not hold up computing guests, and computing guests keep the threads of their own pool as many as cores.
+     * Blocking guests are ordered by priority among themselves.
+     *
+     * @param priority Bigger number is prior. Recommended to use pre-defined values.
+     * @param blocking true if {@link #run(long)} mostly waits on I/O. false for computing work.
+     * @see ThreadHost#setBlockingPoolSizing(PoolSizing)
+     */
+    public ThreadGuest(int priority, boolean blocking) {
         this.mPriority = priority;
+        this.mBlocking = blocking;
         mSeqNum = mSeqSource.getAndIncrement();    // 자신의 ID를 발급받는다.
         // 값의 범위를 봤을 때 오버플로우가 일어날 가능성은 사실상 없음.
     }
 
+    /**
+     * 풀에 돌아가는 게스트의 상태를 새것처럼 비운다. {@link PooledGuest} 참고.
+     */
+    void clearForReuse() {
+        mChainDelay = 0;
+        mThreadChainBlocker = null;
+        mChainNextGuest = null;
+        mWaitingNode = null;
+        mObjectHolder = null;
+        mCoalescingKey = null;
+        mCoalescingMode = COALESCE_MERGE;
+        mMergedGuests = null;
+        mNextMerged = null;
+        mLaneKey = null;
+        mRetryPolicy = null;
+        mRetryCount = 0;
+        mInheritedPriority = NO_PRIORITY;
+    }
+
     /**
      * Compare to another ThreadGuest, by Priority and ID.<br/>
      * Result of comparison affects order in {@link PriorityBlockingQueue} on ThreadHost.
@@ -194,12 +297,54 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
     }
 
     /**
-     * @return priority of this guest.
+     * @return priority of this guest, given on construction.
+     * @see #getEffectivePriority()
      */
     public int getPriority() {
         return mPriority;
     }
 
+    /**
+     * Priority this guest is queued with. The bigger of {@link #getPriority()}, and the priority lent by work waiting for this guest:
+     * a guest before this in the chain, a guest behind this in the {@link #setLane(Object) lane},
+     * a guest merged into this by {@link #setCoalescingKey(Object, int) coalescing key},
+     * a waiter of {@link FutureCaller} or {@link GuestFuture#get()}, or {@link GuestHandle#raisePriority(int)}.
+     * The lent priority is taken back when this guest is done.
+     *
+     * @return effective priority of this guest.
+     */
+    public int getEffectivePriority() {
+        return Math.max(mPriority, mInheritedPriority);
+    }
+
+    /**
+     * 인자의 우선순위를 물려받는다. 이미 그보다 우선적이면 아무것도 하지 않는다.
+     *
+     * @return 이 호출로 유효 우선순위가 올라갔으면 true.
+     */
+    boolean inheritPriority(int priority) {
+        if (priority <= mPriority) {
+            return false;
+        }
+        while (true) {
+            final int inherited = mInheritedPriority;
+            if (priority <= inherited) {
+                return false;
+            }
+            if (INHERITED_UPDATER.compareAndSet(this, inherited, priority)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if this guest runs on the pool for blocking work.
+     * @see #ThreadGuest(int, boolean)
+     */
+    public boolean isBlocking() {
+        return mBlocking;
+    }
+
     /**
      * ID of guest is unique in global-runtime space. Is assigned when creating new instance.
      * Value grows bigger for new instance.
@@ -211,8 +356,9 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
     }
 
     /**
-     * It will be invoked if this guest is failed to enter {@link ThreadHost}.
-     * Will be invoked on the thread of {@link #execute()}.<br/>
+     * It will be invoked if this guest is failed to enter {@link ThreadHost},
+     * or dropped from the queue by {@link AdmissionPolicy#dropOldestLowestPriority(int)}.
+     * Will be invoked on the thread of {@link #execute()}, or of the guest offered instead of this.<br/>
      * <br/>
      * It will do nothing if you don't override this method.
      */
@@ -245,6 +391,7 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
      * @param waitTimeMillis Wait time of this guest in queue.
      * @return If you return non-null object here, {@link #after(Object)} will be invoked.
      * If you return null, It will be finished.
+     * If you throw, it runs again by {@link #setRetryPolicy(RetryPolicy)}, or {@link #onError(Throwable)} will be invoked.
      */
     public abstract Object run(long waitTimeMillis);
 
@@ -262,6 +409,22 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
         // do nothing
     }
 
+    /**
+     * Invoked if {@link #run(long)} threw and no retry is left by {@link #setRetryPolicy(RetryPolicy)},
+     * or if a guest before this in the chain failed so.<br/>
+     * On the main thread, like {@link #after(Object)}.<br/>
+     * <br/>
+     * Then {@link #after(Object)} is not invoked, and guests chained after this do not run.
+     * They get this invocation with the same error instead, in the order of chain.<br/>
+     * It will do nothing if you don't override this method.
+     *
+     * @param error Thrown by run() of the failed guest. It may not be this guest.
+     */
+    @SuppressWarnings("unused")
+    public void onError(Throwable error) {
+        // do nothing
+    }
+
     /**
      * Chaining guests and run sequentially.<br/>
      * nextGuest will be ready at the last of this guest's chain.<br/>
@@ -272,6 +435,7 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
      * @param nextGuest   will be executed after this guest's {@link #run(long)} or {@link #after(Object)}(if run() returns non-null).<br/>
      *                    If there is already a guest after this, then added at the last of chain.
      *                    If null, exact next reference will be un-set.
+     *                    It runs at least with the {@link #getEffectivePriority() effective priority} of the guest before it.
      * @return This instance. not the nextGuest.<br/>
      * Usage: {@code guest.addChain(0, other1).addChain(17000, other2).addChain(0, other3).execute()}
      */
@@ -298,23 +462,50 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
      * and invoke all waiting chains in the queue at that time.
      * this invocation flushes and empty the waiting queue.<br/>
      * <br/>
-     * During un-blocking state, chains will just pass through, not collected.
+     * During un-blocking state, chains will just pass through, not collected.<br/>
+     * <br/>
+     * It works like a reusable latch. No method takes a lock,
+     * and chains are continued outside of any lock, so it is safe to use from many threads.
      *
      * @author Arngard
      */
     public static class ChainBlocker {
 
-        private ArrayList<ThreadGuest> waitingGuests = new ArrayList<ThreadGuest>();
-        private boolean isBlocking = true;
+        /*
+         * 상태는 스택의 머리 하나로 표현한다.
+         * 머리가 null 이거나 대기 노드이면 블락 상태이고, 머리가 표지(guest 가 null 인 노드)이면 언블록 상태이다.
+         * 표지 아래에는 unblock(guest) 이후에도 남아 있는 대기 노드들이 있을 수 있다. block() 하면 표지를 걷어내고 다시 쌓는다.
+         * 하나의 머리를 CAS 로 바꾸므로, 대기열에 들어가는 것과 상태가 바뀌는 것이 서로 엇갈리지 않는다.
+         * */
 
         /**
-         * Enqueue the argument into this blocker's wait-queue.
+         * 아무도 기다리지 않는 언블록 상태.
+         */
+        private static final Node OPEN = new Node(null, null, null);
+
+        private final AtomicReference<Node> top = new AtomicReference<Node>(null);
+        private final AtomicInteger waitingCount = new AtomicInteger(0);
+
+        /**
+         * Enqueue the argument into this blocker's wait-queue, if it is blocking now.
          * It doesn't check any conditions include uniqueness.
          *
          * @param guest target.
+         * @return true if the guest is enqueued. false if it is not blocking, so the chain should just pass through.
          */
-        synchronized final void addWait(final ThreadGuest guest) {
-            waitingGuests.add(guest);
+        final boolean tryWait(final ThreadGuest guest) {
+            final Node node = new Node(this, guest, null);
+            Node head;
+            do {
+                head = top.get();
+                if (head != null && head.isMarker()) {    // 언블록 상태
+                    node.claim();    // 스택에 올라가지 않은 노드이다. 기다리는 것으로 보이지 않게 한다.
+                    return false;
+                }
+                node.next = head;
+            } while (!top.compareAndSet(head, node));
+            waitingCount.incrementAndGet();
+            return true;
         }
 
         /**
@@ -322,8 +513,17 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
          * @return If the target is waiting in this blocker's queue.
          */
         @SuppressWarnings("unused")
-        synchronized public final boolean isWaiting(final ThreadGuest guest) {
-            return waitingGuests.contains(guest);
+        public final boolean isWaiting(final ThreadGuest guest) {
+            final Node node = guest.mWaitingNode;
+            return node != null && node.blocker == this && node.isWaiting();
+        }
+
+        /**
+         * @return Count of guests waiting in this blocker's queue. Approximate.
+         */
+        @SuppressWarnings("unused")
+        public final int getWaitingCount() {
+            return waitingCount.get();
         }
 
         /**
@@ -331,15 +531,35 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
          * From now on, until state change to unblock,
          * Every chain passing throw this blocker is stopped and entered to this blocker's wait-queue.
          */
-        synchronized public void block() {
-            isBlocking = true;
+        public void block() {
+            Node head;
+            do {
+                head = top.get();
+                if (head == null || !head.isMarker()) {    // 이미 블락 상태
+                    return;
+                }
+            } while (!top.compareAndSet(head, head.next));    // 표지 아래 남아 있던 대기 노드들을 다시 드러낸다.
         }
 
         /**
          * @return True if it is blocking now.
          */
-        synchronized public final boolean isBlocking() {
-            return isBlocking;
+        public final boolean isBlocking() {
+            final Node head = top.get();
+            return head == null || !head.isMarker();
+        }
+
+        /**
+         * 언블록 상태로 바꾼다. 기다리던 게스트들은 그대로 둔다.
+         */
+        private void open() {
+            Node head;
+            do {
+                head = top.get();
+                if (head != null && head.isMarker()) {    // 이미 언블록 상태
+                    return;
+                }
+            } while (!top.compareAndSet(head, head == null ? OPEN : new Node(null, null, head)));
         }
 
         /**
@@ -353,14 +573,14 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
          * @see #unblock(ThreadGuest)
          */
         @SuppressWarnings("unused")
-        synchronized public boolean unblock(final ThreadGuest guest, final Object setObject) {
-            isBlocking = false;
-            if (waitingGuests.remove(guest)) {
-                guest.setObject(setObject);
-                ThreadHost.processChain(guest);
-                return true;
+        public boolean unblock(final ThreadGuest guest, final Object setObject) {
+            open();
+            if (!claim(guest)) {
+                return false;
             }
-            return false;
+            guest.setObject(setObject);
+            ThreadHost.continueChain(guest);
+            return true;
         }
 
         /**
@@ -371,33 +591,205 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
          * @see #unblock(ThreadGuest, Object)
          */
         @SuppressWarnings("unused")
-        synchronized public boolean unblock(final ThreadGuest guest) {
-            isBlocking = false;
-            if (waitingGuests.remove(guest)) {
-                ThreadHost.processChain(guest);
-                return true;
+        public boolean unblock(final ThreadGuest guest) {
+            open();
+            if (!claim(guest)) {
+                return false;
             }
-            return false;
+            ThreadHost.continueChain(guest);
+            return true;
+        }
+
+        /**
+         * 인자의 게스트가 이 블로커에서 기다리고 있다면 대기에서 빼낸다. 노드는 스택에 남지만 다시 꺼내지지 않는다.
+         *
+         * @return 이 호출로 빼냈으면 true.
+         */
+        private boolean claim(final ThreadGuest guest) {
+            final Node node = guest.mWaitingNode;
+            if (node == null || node.blocker != this || !node.claim()) {
+                return false;
+            }
+            waitingCount.decrementAndGet();
+            return true;
         }
 
         /**
          * Continue all the guests in this blocker's queue.
+         * They continue in the order they arrived, outside of any lock.
          *
          * @return Count of guests that continued.
          * @see #unblock(ThreadGuest, Object)
          * @see #unblock(ThreadGuest)
          */
         @SuppressWarnings("unused")
-        synchronized public int unblock() {
-            isBlocking = false;
-            int reVal = waitingGuests.size();
-            for (ThreadGuest waitingGuest : waitingGuests) {
-                ThreadHost.processChain(waitingGuest);
+        public int unblock() {
+            Node head = top.getAndSet(OPEN);    // 대기열 전체를 한 번에 떼어낸다.
+            if (head != null && head.isMarker()) {
+                head = head.next;
             }
-            waitingGuests.clear();
+            // 도착한 순서로 진행하기 위해 뒤집으면서, 아직 빼내지 않은 것만 모은다.
+            Node ordered = null;
+            int reVal = 0;
+            while (head != null) {
+                final Node next = head.next;
+                if (head.claim()) {
+                    head.next = ordered;
+                    ordered = head;
+                    reVal++;
+                }
+                head = next;
+            }
+            waitingCount.addAndGet(-reVal);
+            ThreadHost.continueChains(ordered);
             return reVal;
         }
 
+        /**
+         * 대기 노드. guest 가 null 이면 언블록 상태를 나타내는 표지이다.
+         */
+        static final class Node {
+
+            private static final AtomicIntegerFieldUpdater<Node> CLAIMED_UPDATER =
+                    AtomicIntegerFieldUpdater.newUpdater(Node.class, "claimed");
+
+            final ChainBlocker blocker;
+            final ThreadGuest guest;
+            /**
+             * 스택에서 아래 노드. 스택에 올라간 뒤에는 떼어낸 쪽만 바꾼다.
+             */
+            Node next;
+            private volatile int claimed = 0;
+
+            Node(ChainBlocker blocker, ThreadGuest guest, Node next) {
+                this.blocker = blocker;
+                this.guest = guest;
+                this.next = next;
+                if (guest != null) {
+                    guest.mWaitingNode = this;    // O(1)로 찾기 위해 게스트에 기록한다.
+                }
+            }
+
+            boolean isMarker() {
+                return guest == null;
+            }
+
+            boolean isWaiting() {
+                return claimed == 0;
+            }
+
+            boolean claim() {
+                return CLAIMED_UPDATER.compareAndSet(this, 0, 1);
+            }
+
+        }
+
+    }
+
+    /**
+     * Deduplicate submissions of the same logical work.<br/>
+     * <br/>
+     * While a guest submitted with a key is waiting in queue, another submission with an {@link Object#equals(Object) equal} key
+     * is merged into it({@link #COALESCE_MERGE}), or replaces it({@link #COALESCE_REPLACE}).
+     * Once a guest starts to run, it no longer takes part in coalescing, so the next submission is queued normally.<br/>
+     * ex)<pre>
+     * new ThreadGuest() {
+     *     public Object run(long waitTimeMillis) {
+     *         return loadProfile(userId);
+     *     }
+     * }.setCoalescingKey("profile:" + userId, ThreadGuest.COALESCE_MERGE).execute();</pre>
+     *
+     * @param key  Key of the work. null to stop coalescing.
+     * @param mode {@link #COALESCE_MERGE} or {@link #COALESCE_REPLACE}.
+     * @return This instance.
+     */
+    @SuppressWarnings("unused")
+    public ThreadGuest setCoalescingKey(Object key, int mode) {
+        if (mode != COALESCE_MERGE && mode != COALESCE_REPLACE) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        mCoalescingMode = mode;
+        mCoalescingKey = key;
+        return this;
+    }
+
+    /**
+     * @return Key set by {@link #setCoalescingKey(Object, int)}. null if not set.
+     */
+    public Object getCoalescingKey() {
+        return mCoalescingKey;
+    }
+
+    /**
+     * @return Mode set by {@link #setCoalescingKey(Object, int)}.
+     */
+    public int getCoalescingMode() {
+        return mCoalescingMode;
+    }
+
+    /**
+     * Run this guest in a serial lane.<br/>
+     * <br/>
+     * Guests with an {@link Object#equals(Object) equal} lane key run one at a time, in the order they were submitted.
+     * Guests of different lanes, and guests without a lane, run in parallel on the threads of {@link ThreadHost}.
+     * So you get the ordering of a dedicated thread, without making one for each key.<br/>
+     * <br/>
+     * The next guest of a lane is queued when {@link #run(long)} of the previous one returns.
+     * {@link #after(Object)} and chained guests are not part of the ordering. Within a lane, priority does not reorder guests.
+     * A guest cancelled while waiting in its lane is skipped.<br/>
+     * ex)<pre>
+     * new ThreadGuest() {
+     *     public Object run(long waitTimeMillis) {
+     *         syncAccount(account);
+     *         return null;
+     *     }
+     * }.setLane("account:" + account.id).execute();</pre>
+     *
+     * @param laneKey Key of the lane. null to run without a lane.
+     * @return This instance.
+     */
+    @SuppressWarnings("unused")
+    public ThreadGuest setLane(Object laneKey) {
+        mLaneKey = laneKey;
+        return this;
+    }
+
+    /**
+     * @return Key set by {@link #setLane(Object)}. null if not set.
+     */
+    public Object getLane() {
+        return mLaneKey;
+    }
+
+    /**
+     * Run this guest again if {@link #run(long)} throws.<br/>
+     * <br/>
+     * The guest is offered again after the delay of the policy, as a new submission.
+     * So {@link GuestHandle} of the first {@link #execute()} can cancel only the first run,
+     * and in a {@link #setLane(Object) lane} the retry goes to the end of the lane.
+     * The chain continues once a run succeeds. If every retry fails, {@link #onError(Throwable)} is invoked.
+     *
+     * @param policy How to retry. null not to retry.
+     * @return This instance.
+     */
+    @SuppressWarnings("unused")
+    public ThreadGuest setRetryPolicy(RetryPolicy policy) {
+        mRetryPolicy = policy;
+        return this;
+    }
+
+    /**
+     * @return Policy set by {@link #setRetryPolicy(RetryPolicy)}. null if not set.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * @return Count of retries of current run. 0 for the first run.
+     */
+    public int getRetryCount() {
+        return mRetryCount;
     }
 
     /**
@@ -412,6 +804,7 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
      * @param nextGuest will be executed after this guest's {@link #run(long)} or {@link #after(Object)}(if run() returns non-null).<br/>
      *                  If there is already a guest after this, then added at the last of chain.
      *                  If null, exact next reference will be un-set.
+     *                  It runs at least with the {@link #getEffectivePriority() effective priority} of the guest before it.
      * @return This instance. not the nextGuest.<br/>
      * Usage: {@code guest.addChain(blocker1, other1).addChain(0, other2).addChain(blocker2, other3).execute()}
      */
@@ -449,9 +842,32 @@ public abstract class ThreadGuest implements Comparable<ThreadGuest> {
     /**
      * Enqueue this guest in {@link ThreadHost}.
      * {@link ThreadGuest#run(long)} will be invoked when it can be.
+     *
+     * @return Handle to cancel this submission. If merged by {@link #setCoalescingKey(Object, int) coalescing key},
+     * the handle of the guest already waiting.
+     */
+    public GuestHandle execute() {
+        return ThreadHost.offer(this);
+    }
+
+    /**
+     * Enqueue this guest in {@link ThreadHost} after the delay.
+     * The delay is measured by a timer thread of ThreadHost, not by the main looper.
+     *
+     * @param delayMillis Delay in milliseconds. If not positive, same as {@link #execute()}.
      */
-    public void execute() {
-        ThreadHost.offer(this);
+    @SuppressWarnings("unused")
+    public void executeDelayed(long delayMillis) {
+        if (delayMillis <= 0) {
+            execute();
+            return;
+        }
+        ThreadHost.runDelayed(new Runnable() {
+            @Override
+            public void run() {
+                execute();
+            }
+        }, delayMillis);
     }
 
     /**
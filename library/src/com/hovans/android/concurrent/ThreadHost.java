@@ -1,17 +1,16 @@
 package com.hovans.android.concurrent;
 
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.Message;
 import android.util.Log;
 import com.hovans.android.constant.DebugConfig;
 import com.hovans.android.constant.ThreadConfig;
 import com.hovans.android.log.LogByCodeLab;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * worker 스레드의 작업 환경을 제공한다.<br/>
@@ -20,11 +19,23 @@ import java.util.concurrent.TimeUnit;
  * 대기열에 {@link ThreadGuest}가 들어오면 하나씩 작업 공간에 옮겨져 게스트 내부에 정의된 작업을 수행한다.<br/>
  * <br/>
  * 스레드 자원은 singleton 으로 사용된다.
+ * 대기열과 작업 스레드의 구성은 {@link #setMode(int)}로 고를 수 있다.
  *
  * @author Arngard
  * @see ThreadGuest
  */
-class ThreadHost {
+public class ThreadHost {
+
+    /**
+     * Mode of host. All guests share one priority queue, consumed by {@link ThreadConfig#THREAD_CORE_SIZE} threads
+     * and more up to {@link ThreadConfig#THREAD_MAX_SIZE}, one per core by default, while guests wait too long.
+     */
+    public static final int MODE_SINGLE = 0;
+    /**
+     * Mode of host. {@link ThreadConfig#THREAD_WORKER_COUNT} threads, each with its own priority queue.
+     * Idle threads steal guests from the others, and a thread always takes the most prior guest it can see.
+     */
+    public static final int MODE_WORK_STEALING = 1;
 
     /*
      * ThreadHost 의 작업 스레드 내부에서 Looper 를 얻을 수 있게 만들어 보려고도 했다.
@@ -59,23 +70,70 @@ class ThreadHost {
      * */
 
     /**
-     * 작업 공간
+     * 대기열과 작업 공간
      */
-    private static ThreadPoolExecutor executor = null;
+    private static volatile HostEngine engine = null;
     /**
-     * 주 작업 대기열
+     * 현재의 동작 방식
      */
-    private static BlockingQueue<Runnable> queue = null;
+    private static int mode = ThreadConfig.THREAD_HOST_MODE;
 
-	/* 핸들러 내부에서 분기하는 시간조차 아깝다. 어차피 확장되는 분기가 아니니 핸들러 변수를 따로 두자. */
     /**
-     * 메인 스레드 핸들러. {@link ThreadGuest#run(long)} 결과를 메인 스레드로 보낼 때 사용.
+     * 과부하 때의 동작
+     */
+    private static volatile AdmissionPolicy admission = AdmissionPolicy.unbounded();
+
+    /**
+     * {@link #MODE_SINGLE}의 스레드 수
+     */
+    private static PoolSizing poolSizing = PoolSizing.fromConfig();
+
+    /**
+     * 블로킹 게스트의 대기열과 작업 공간. 처음으로 블로킹 게스트가 올 때 만든다.
+     * 동작 방식과 상관없이 하나의 우선순위 대기열과 필요한 만큼의 스레드를 쓴다.
+     */
+    private static volatile HostEngine blockingEngine = null;
+    /**
+     * 블로킹 게스트 풀의 스레드 수
      */
-    private static Handler resultHandler = null;
+    private static PoolSizing blockingPoolSizing = PoolSizing.blockingFromConfig();
     /**
-     * 메인 스레드 핸들러. 스레드 게스트 체인을 건너갈 때 사용.
+     * 0 보다 크면 블로킹 게스트를 가상 스레드에서 수행하고, 동시에 수행되는 수를 이만큼으로 제한한다.
      */
-    private static Handler nextHandler = null;
+    private static int blockingVirtualMaxRunning =
+            VirtualThreadEngine.isSupported() ? ThreadConfig.THREAD_BLOCKING_VIRTUAL_MAX_RUNNING : 0;
+
+    /**
+     * 키마다 대기 중인 게스트의 작업.
+     */
+    private static final ConcurrentHashMap<Object, RunnableGuest> pendingByKey = new ConcurrentHashMap<Object, RunnableGuest>();
+    /**
+     * 합쳐진 게스트의 스택({@link ThreadGuest#mMergedGuests})을 지키는 락.
+     */
+    private static final Object mergeLock = new Object();
+
+    /**
+     * 레인 키마다 진행 중인 레인.
+     */
+    private static final ConcurrentHashMap<Object, SerialLane> lanes = new ConcurrentHashMap<Object, SerialLane>();
+    /**
+     * 레인에서 앞선 게스트를 기다리는 작업의 수. 엔진의 대기열에는 없지만 admission 정책의 자리를 차지한다.
+     */
+    private static final AtomicInteger laneWaiting = new AtomicInteger(0);
+
+    /**
+     * 측정하지 않는 게스트의 offer 시각. {@link HostMetrics}가 꺼져 있을 때 사용.
+     */
+    private static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    /**
+     * 메인 스레드 핸들러. 메인스레드에서 수행할 작업을 보낼 때 사용.
+     */
+    private static Handler mainHandler = null;
+    /**
+     * 지연 체인과 지연 작업을 관리하는 타이머. 메인스레드를 쓰지 않는다.
+     */
+    private static final TimingWheel timer = new TimingWheel(ThreadConfig.THREAD_TIMER_TICK_MILLIS, "ThreadHost-timer");
 
     static {
         makeHandlers();
@@ -86,34 +144,8 @@ class ThreadHost {
     }
 
     synchronized private static void makeHandlers() {
-        if (resultHandler == null) {
-            resultHandler = new Handler(Looper.getMainLooper()) {
-                @Override
-                public void handleMessage(android.os.Message msg) {
-                    // 여기는 메인스레드이다.
-                    LogByCodeLab.v("ThreadHost.resultHandler.handleMessage(): ResultCarrier arrived.");
-                    final ResultCarrier carrier = (ResultCarrier) msg.obj;    // 캐리어로 날아온 결과로 guest.after()를 수행해야 한다.
-                    if (carrier == null) {
-                        throw new NullPointerException("Failed to reference ThreadGuest Result");
-                    }
-                    carrier.guest.after(carrier.result);
-                    processChain(carrier.guest);
-                }
-            };
-        }
-        if (nextHandler == null) {
-            nextHandler = new Handler(Looper.getMainLooper()) {
-                @Override
-                public void handleMessage(android.os.Message msg) {
-                    // 여기는 메인스레드이다.
-                    LogByCodeLab.v("ThreadHost.nextHandler.handleMessage(): NextCarrier arrived.");
-                    final NextCarrier carrier = (NextCarrier) msg.obj;    // 캐리어로 날아온 결과로 다음 체인을 등록해야 한다.
-                    if (carrier == null) {
-                        throw new NullPointerException("Failed to reference ThreadGuest Next");
-                    }
-                    carrier.nextGuest.execute();
-                }
-            };
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
         }
     }
 
@@ -123,17 +155,8 @@ class ThreadHost {
      * 스레드풀의 연산을 시작한다. 동기화에 안전하지 않으므로 너무 자주 호출하지 말 것.
      */
     synchronized protected static void threadingStart() {
-        if (queue == null) {
-            queue = new PriorityBlockingQueue<Runnable>(ThreadConfig.THREAD_BUCKET_SIZE);
-        }
-        if (executor == null) {
-            executor = new ThreadPoolExecutor(
-                    ThreadConfig.THREAD_CORE_SIZE, ThreadConfig.THREAD_MAX_SIZE,
-                    ThreadConfig.THREAD_ALIVE_TIME, TimeUnit.MILLISECONDS,
-                    queue);
-        }
-        if (!executor.prestartCoreThread()) {
-            Log.w(DebugConfig.LOG_TAG, "Fail to pre-start core thread. It may already Started.");    // 공공연히 알려야 하므로 로그 래핑을 쓰지 않음.
+        if (engine == null) {
+            engine = makeEngine(mode);
         }
     }
 
@@ -142,8 +165,171 @@ class ThreadHost {
      */
     @SuppressWarnings("unused")
     synchronized protected static void threadingEnd() {
-        executor.shutdown();
-        executor = null;
+        engine.shutdown();
+        engine = null;
+        if (blockingEngine != null) {
+            blockingEngine.shutdown();
+            blockingEngine = null;
+        }
+    }
+
+    private static HostEngine makeEngine(int mode) {
+        switch (mode) {
+            case MODE_WORK_STEALING:
+                return new WorkStealingEngine(ThreadConfig.THREAD_WORKER_COUNT);
+            case MODE_SINGLE:
+            default:
+                return new PoolEngine(poolSizing, "ThreadHost-pool-");
+        }
+    }
+
+    /**
+     * @return 인자의 게스트가 들어갈 엔진. 호스트가 멈췄으면 null.
+     */
+    private static HostEngine engineFor(final ThreadGuest guest) {
+        if (!guest.isBlocking()) {
+            return engine;
+        }
+        final HostEngine current = blockingEngine;
+        return current != null ? current : startBlockingEngine();
+    }
+
+    synchronized private static HostEngine startBlockingEngine() {
+        if (blockingEngine == null && engine != null) {    // 호스트가 멈춘 뒤에는 만들지 않는다.
+            blockingEngine = makeBlockingEngine();
+        }
+        return blockingEngine;
+    }
+
+    private static HostEngine makeBlockingEngine() {
+        if (blockingVirtualMaxRunning > 0) {
+            return new VirtualThreadEngine(blockingVirtualMaxRunning);
+        }
+        return new PoolEngine(blockingPoolSizing, "ThreadHost-io-");
+    }
+
+    /**
+     * Change the way guests are queued and run.<br/>
+     * Guests offered from now on go to the new mode.
+     * Guests already waiting in the previous mode will be finished by its threads, then those threads end.
+     *
+     * @param newMode {@link #MODE_SINGLE} or {@link #MODE_WORK_STEALING}.
+     * @throws IllegalArgumentException if newMode is unknown.
+     */
+    synchronized public static void setMode(int newMode) {
+        if (newMode != MODE_SINGLE && newMode != MODE_WORK_STEALING) {
+            throw new IllegalArgumentException("Unknown mode: " + newMode);
+        }
+        if (mode == newMode && engine != null) {
+            return;
+        }
+        final HostEngine oldEngine = engine;
+        mode = newMode;
+        engine = makeEngine(newMode);
+        if (oldEngine != null) {
+            oldEngine.shutdown();
+        }
+    }
+
+    /**
+     * @return Current mode of host.
+     * @see #setMode(int)
+     */
+    synchronized public static int getMode() {
+        return mode;
+    }
+
+    /**
+     * Change how many threads run guests in {@link #MODE_SINGLE}, while running.
+     * {@link #MODE_WORK_STEALING} always uses {@link ThreadConfig#THREAD_WORKER_COUNT} threads, and keeps this for later.
+     *
+     * @param sizing New sizing. Default is {@link ThreadConfig#THREAD_CORE_SIZE} to {@link ThreadConfig#THREAD_MAX_SIZE}.
+     * @see PoolSizing
+     */
+    synchronized public static void setPoolSizing(PoolSizing sizing) {
+        if (sizing == null) {
+            throw new NullPointerException("sizing is null.");
+        }
+        poolSizing = sizing;
+        if (engine != null) {
+            engine.applySizing(sizing);
+        }
+    }
+
+    /**
+     * @return Current sizing.
+     * @see #setPoolSizing(PoolSizing)
+     */
+    synchronized public static PoolSizing getPoolSizing() {
+        return poolSizing;
+    }
+
+    /**
+     * Change how many threads run {@link ThreadGuest#isBlocking() blocking} guests, while running.
+     * Blocking guests use their own pool in every mode, so they never hold up the threads of computing guests.
+     *
+     * @param sizing New sizing. Default is {@link PoolSizing#elastic(int)} with {@link ThreadConfig#THREAD_BLOCKING_MAX_SIZE},
+     *               and threads end after idle for {@link ThreadConfig#THREAD_BLOCKING_ALIVE_TIME}.
+     * @see ThreadGuest#ThreadGuest(int, boolean)
+     */
+    synchronized public static void setBlockingPoolSizing(PoolSizing sizing) {
+        if (sizing == null) {
+            throw new NullPointerException("sizing is null.");
+        }
+        blockingPoolSizing = sizing;
+        if (blockingEngine != null) {
+            blockingEngine.applySizing(sizing);
+        }
+    }
+
+    /**
+     * @return Current sizing of the pool for blocking guests.
+     * @see #setBlockingPoolSizing(PoolSizing)
+     */
+    synchronized public static PoolSizing getBlockingPoolSizing() {
+        return blockingPoolSizing;
+    }
+
+    /**
+     * Run each {@link ThreadGuest#isBlocking() blocking} guest on a virtual thread of its own, instead of the pool.
+     * Only on JVM with virtual threads, JDK 21 or later. Not on Android.<br/>
+     * <br/>
+     * A virtual thread blocked on I/O costs a few kilobytes, so thousands of blocking guests can wait at the same time.
+     * Still, at most maxRunning guests run at once. The others wait in queue and get their turn in order of priority,
+     * as on the pool. Guests offered from now on go to the new backend.
+     * Guests already waiting in the previous one are finished by it.
+     *
+     * @param maxRunning How many blocking guests run at once. 0 or less goes back to the pool of {@link #setBlockingPoolSizing(PoolSizing)}.
+     * @return false if virtual threads are not supported on this runtime. Nothing changes then.
+     * @see ThreadConfig#THREAD_BLOCKING_VIRTUAL_MAX_RUNNING
+     */
+    synchronized public static boolean setBlockingVirtualThreads(int maxRunning) {
+        if (maxRunning > 0 && !VirtualThreadEngine.isSupported()) {
+            return false;
+        }
+        blockingVirtualMaxRunning = Math.max(0, maxRunning);
+        final HostEngine oldEngine = blockingEngine;
+        if (oldEngine != null) {
+            blockingEngine = makeBlockingEngine();
+            oldEngine.shutdown();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if blocking guests run on virtual threads.
+     * @see #setBlockingVirtualThreads(int)
+     */
+    synchronized public static boolean isBlockingOnVirtualThreads() {
+        return blockingVirtualMaxRunning > 0;
+    }
+
+    /**
+     * @return true if this runtime has virtual threads.
+     * @see #setBlockingVirtualThreads(int)
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreadEngine.isSupported();
     }
 
     /**
@@ -151,51 +337,695 @@ class ThreadHost {
      * 외부에서는 이 메소드 대신 {@link ThreadGuest#execute()}를 사용할 것을 권장함.<br/>
      *
      * @param guest 대기시킬 대상
+     * @return 이번 offer 의 핸들. 같은 키의 대기 중인 게스트에 합쳐졌다면 그 게스트의 핸들.
      */
-    synchronized static void offer(final ThreadGuest guest) {
+    static GuestHandle offer(final ThreadGuest guest) {
         if (guest == null) {
             throw new NullPointerException("guest is null.");
         }
+        final boolean measuring = HostMetrics.isEnabled();
+        final long offerNanos = measuring ? System.nanoTime() : NOT_MEASURED;
+        final HostRunnable runnable = makeRunnable(HostClock.now(), offerNanos, guest);
+        final Object key = guest.getCoalescingKey();
+        RunnableGuest replaced = null;
+        if (key != null) {
+            runnable.mCoalescingKey = key;
+            if (guest.getCoalescingMode() == ThreadGuest.COALESCE_REPLACE) {
+                replaced = pendingByKey.put(key, runnable);    // 새 게스트가 받아들여진 뒤에 취소한다.
+            } else {
+                final RunnableGuest pending = registerCoalescing(key, runnable);
+                if (pending != null) {    // 같은 일이 이미 기다리고 있다. 새로 넣지 않는다. 새 게스트는 그 결과를 넘겨받는다.
+                    runnable.release();
+                    pending.raisePriority(guest.getEffectivePriority());    // 새 게스트를 기다리던 쪽은 이제 대기 중인 게스트를 기다린다.
+                    return pending;
+                }
+            }
+        }
+        // 락을 잡지 않는다. 크기 제한({@link ThreadConfig#THREAD_BUCKET_MAX_SIZE})은 엔진의 대기열이 원자적으로 지킨다.
+        // 그보다 작은 제한과 넘쳤을 때의 동작은 admission 정책이 정한다.
+        final HostEngine current = engineFor(guest);
+        final AdmissionPolicy policy = admission;
+        final Object laneKey = guest.getLane();
         boolean offerSucceed = false;
-        if (queue.size() < ThreadConfig.THREAD_BUCKET_MAX_SIZE) {
-            offerSucceed = queue.offer(makeRunnable(android.os.SystemClock.elapsedRealtime(), guest));
+        if (current != null && laneKey == null) {
+            offerSucceed = policy.admit(current, runnable);
+        } else if (current != null && policy.admitToLane(current, runnable)) {    // 레인에서 기다릴 수도 있으므로, 레인에 서기 전에 받아들인다.
+            if (!enterLane(laneKey, runnable)) {    // 앞선 게스트 뒤에 섰다. 차례가 되면 레인이 대기열에 넣는다.
+                if (measuring) {
+                    HostMetrics.recordOffer(guest.getPriority(), true);
+                }
+                replace(replaced, runnable);
+                return runnable;
+            }
+            offerSucceed = policy.offerOrReject(current, runnable);    // 레인의 첫 번째이다. 이미 받아들였으므로 바로 넣는다.
+        }
+        if (measuring) {
+            HostMetrics.recordOffer(guest.getPriority(), offerSucceed);
         }
         if (!offerSucceed) {    // offer 실패했다면
+            runnable.cancel();
+            if (replaced != null && replaced.isPending()) {    // 대체하려던 게스트는 그대로 남는다.
+                pendingByKey.putIfAbsent(key, replaced);
+            }
             guest.offerFail();
+            failMerged(guest);
+            if (runnable.mLane != null) {    // 수행되지 않으므로 레인의 다음 게스트에게 차례를 넘긴다.
+                leaveLane(runnable.mLane);
+            }
+            runnable.release();
+            finished(guest);
+        } else {
+            replace(replaced, runnable);
+        }
+        return runnable;
+    }
+
+    /**
+     * 여러 게스트를 한꺼번에 대기시킨다. 블로커에서 한꺼번에 풀려난 체인처럼 같은 순간에 준비된 게스트들에 사용한다.<br/>
+     * 중복 제거 키나 레인이 없는 게스트들은 admission 을 한 번만 거쳐 엔진에 한 번에 넘기므로, 작업 스레드도 한 번만 깨운다.
+     * 그 밖의 게스트와, 한 번에 넣을 자리가 없을 때는 {@link #offer(ThreadGuest)}처럼 하나씩 넣는다.
+     *
+     * @param guests 대기시킬 게스트들. 이 순서로 넣는다.
+     * @param count  guests 에서 사용할 수
+     */
+    static void offerAll(final ThreadGuest[] guests, final int count) {
+        final HostEngine current = engine;
+        final boolean measuring = HostMetrics.isEnabled();
+        final long offerTime = HostClock.now();
+        final long offerNanos = measuring ? System.nanoTime() : NOT_MEASURED;
+        final HostRunnable[] batch = new HostRunnable[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            final ThreadGuest guest = guests[i];
+            if (current == null || guest.isBlocking() || guest.getCoalescingKey() != null || guest.getLane() != null) {
+                offer(guest);    // 게스트마다 따로 다뤄야 한다.
+            } else {
+                batch[size++] = makeRunnable(offerTime, offerNanos, guest);
+            }
+        }
+        if (size == 0) {
+            return;
+        }
+        final AdmissionPolicy policy = admission;
+        final int admitted = policy.admitAll(current, batch, size);
+        for (int i = 0; i < size; i++) {
+            final HostRunnable runnable = batch[i];
+            final boolean offerSucceed = i < admitted || policy.admit(current, runnable);
+            if (measuring) {
+                HostMetrics.recordOffer(runnable.mGuest.getPriority(), offerSucceed);
+            }
+            if (!offerSucceed) {
+                final ThreadGuest guest = runnable.mGuest;
+                runnable.cancel();
+                guest.offerFail();
+                failMerged(guest);
+                runnable.release();
+                finished(guest);
+            }
+        }
+    }
+
+    /**
+     * 대기열에 있던 게스트가 {@link AdmissionPolicy}에 의해 버려졌을 때 호출.
+     *
+     * @param entry 대기열에서 꺼낸 항목. 승격 항목일 수 있다.
+     */
+    static void dropped(final RunnableGuest entry) {
+        final HostRunnable runnable = entry instanceof Promotion ? ((Promotion) entry).target : (HostRunnable) entry;
+        final ThreadGuest guest = runnable.mGuest;
+        if (!runnable.take()) {    // 같은 offer 의 다른 항목이 이미 꺼내졌으면 자리만 치운다.
+            runnable.discardStale();
+            return;
+        }
+        if (runnable.cancel()) {    // 이미 취소된 게스트였다면 알릴 것이 없다.
+            if (HostMetrics.isEnabled()) {
+                HostMetrics.recordDrop(guest.getPriority());
+            }
+            guest.offerFail();
+        }
+        failMerged(guest);
+        if (runnable.mLane != null) {    // 대기열에서 빠졌으므로 run()이 불리지 않는다.
+            leaveLane(runnable.mLane);
+        }
+        runnable.release();
+        finished(guest);
+    }
+
+    /**
+     * 게스트가 할 일을 모두 마쳤다. 수행과 체인이 끝났거나, 실패를 알렸거나, 수행되지 못했다.
+     * 물려받은 우선순위를 되돌리고, {@link PooledGuest}이면 풀로 돌려보낸다.
+     */
+    static void finished(final ThreadGuest guest) {
+        guest.mInheritedPriority = ThreadGuest.NO_PRIORITY;
+        if (guest instanceof PooledGuest) {
+            ((PooledGuest) guest).recycle();
+        }
+    }
+
+	/*	중복 제거	*/
+
+    /**
+     * 인자의 작업을 키의 대기 중인 작업으로 등록한다. 같은 키로 대기 중인 작업이 있으면 그 작업에 게스트를 합친다.
+     *
+     * @return 합쳐진 대기 중인 작업. 새 작업을 대기열에 넣어야 하면 null.
+     */
+    private static RunnableGuest registerCoalescing(final Object key, final RunnableGuest runnable) {
+        while (true) {
+            final RunnableGuest existing = pendingByKey.putIfAbsent(key, runnable);
+            if (existing == null) {
+                return null;
+            }
+            if (merge(existing, runnable.mGuest)) {
+                return existing;
+            }
+            pendingByKey.remove(key, existing);    // 이미 시작했거나 취소된 것이 남아 있다. 치우고 다시.
+        }
+    }
+
+    /**
+     * 게스트를 대기 중인 작업에 합친다. 합쳐진 게스트는 run() 대신 그 작업의 결과로 after()와 체인을 진행하거나,
+     * 그 작업의 실패를 onError() 나 offerFail() 로 넘겨받는다.
+     *
+     * @return 작업이 아직 대기 중이라서 합쳤으면 true.
+     */
+    private static boolean merge(final RunnableGuest pending, final ThreadGuest guest) {
+        synchronized (mergeLock) {    // 대기 중일 때 넣었다면, 수행을 마친 쪽이 락을 잡고 가져갈 때 반드시 보인다.
+            if (!pending.isPending()) {
+                return false;
+            }
+            final ThreadGuest target = pending.mGuest;
+            if (target != guest) {    // 같은 게스트를 다시 execute() 한 것이면 따로 알릴 것이 없다.
+                guest.mNextMerged = target.mMergedGuests;
+                target.mMergedGuests = guest;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return 게스트에 합쳐졌던 게스트들. 합쳐진 순서로 {@link ThreadGuest#mNextMerged}에 이어져 있다. 없으면 null.
+     */
+    private static ThreadGuest takeMerged(final ThreadGuest guest) {
+        if (guest.mMergedGuests == null) {    // 대부분은 락을 잡지 않고 지나간다.
+            return null;
+        }
+        ThreadGuest stack;
+        synchronized (mergeLock) {
+            stack = guest.mMergedGuests;
+            guest.mMergedGuests = null;
+        }
+        ThreadGuest ordered = null;
+        while (stack != null) {    // 합쳐진 순서로 알리기 위해 뒤집는다.
+            final ThreadGuest next = stack.mNextMerged;
+            stack.mNextMerged = ordered;
+            ordered = stack;
+            stack = next;
+        }
+        return ordered;
+    }
+
+    /**
+     * 수행되지 못한 게스트에 합쳐졌던 게스트들에게도 {@link ThreadGuest#offerFail()}을 알린다.
+     */
+    private static void failMerged(final ThreadGuest guest) {
+        ThreadGuest merged = takeMerged(guest);
+        while (merged != null) {
+            final ThreadGuest next = merged.mNextMerged;
+            merged.mNextMerged = null;
+            merged.offerFail();
+            finished(merged);
+            merged = next;
+        }
+    }
+
+    /**
+     * {@link ThreadGuest#COALESCE_REPLACE}의 새 작업이 받아들여졌다. 같은 키로 대기 중이던 작업을 취소하고,
+     * 그 게스트에 합쳐졌던 게스트들은 새 작업에 합친다.
+     *
+     * @param previous 대체되는 작업. 없으면 null.
+     * @param runnable 받아들여진 새 작업
+     */
+    private static void replace(final RunnableGuest previous, final RunnableGuest runnable) {
+        if (previous == null || !previous.cancel()) {    // 이미 시작했다면 그대로 끝까지 수행된다.
+            return;
+        }
+        ThreadGuest merged = takeMerged(previous.mGuest);
+        while (merged != null) {
+            final ThreadGuest next = merged.mNextMerged;
+            merged.mNextMerged = null;
+            if (!merge(runnable, merged)) {    // 새 작업도 이미 시작했다. 결과를 넘겨받을 수 없다.
+                merged.offerFail();
+                finished(merged);
+            }
+            merged = next;
+        }
+    }
+
+    /**
+     * 대기 상태를 벗어난 작업을 키에서 뗀다.
+     */
+    static void unregisterCoalescing(final RunnableGuest runnable) {
+        pendingByKey.remove(runnable.mCoalescingKey, runnable);
+    }
+
+	/*	레인	*/
+
+    /**
+     * 인자의 작업을 키의 레인에 세운다. 레인이 없거나 은퇴했으면 새로 만든다.
+     *
+     * @return 레인의 첫 번째라서 바로 대기열에 넣어야 하면 true. 앞선 게스트 뒤에서 기다리면 false.
+     */
+    private static boolean enterLane(final Object key, final RunnableGuest runnable) {
+        while (true) {
+            SerialLane lane = lanes.get(key);
+            if (lane == null) {
+                final SerialLane created = new SerialLane(key);
+                lane = lanes.putIfAbsent(key, created);
+                if (lane == null) {
+                    lane = created;
+                }
+            }
+            runnable.mLane = lane;    // 레인에 서는 순간 앞선 게스트가 끝나서 수행될 수 있으므로, 먼저 기록한다.
+            final int entered = lane.enter(runnable);
+            if (entered == SerialLane.RETIRED) {
+                lanes.remove(key, lane);    // 은퇴한 레인이 아직 남아 있다. 치우고 다시.
+                continue;
+            }
+            if (entered == SerialLane.ENTERED_WAITING) {    // 앞선 게스트들이 끝나야 수행되므로, 그들에게 우선순위를 물려준다.
+                laneWaiting.incrementAndGet();
+                final RunnableGuest head = lane.lendPriority(runnable);
+                if (head != null) {
+                    head.raisePriority(runnable.mGuest.getEffectivePriority());
+                }
+            }
+            return entered == SerialLane.ENTERED_HEAD;
+        }
+    }
+
+    /**
+     * @return 레인에서 앞선 게스트를 기다리는 작업의 수. {@link AdmissionPolicy}가 자리를 셀 때 사용.
+     */
+    static int laneWaitingCount() {
+        return laneWaiting.get();
+    }
+
+    /**
+     * 레인의 작업 하나가 끝났다. 레인의 다음 게스트를 대기열에 넣는다.
+     * 다음 게스트는 이미 offer 때 받아들여졌으므로 admission 정책을 다시 거치지 않는다.
+     *
+     * @param lane 끝난 작업의 레인. 작업은 수행되었거나, 취소되었거나, 대기열에 들어가지 못했다.
+     */
+    static void leaveLane(final SerialLane lane) {
+        RunnableGuest next;
+        while ((next = lane.next()) != null) {
+            laneWaiting.decrementAndGet();    // 레인에서 기다리던 자리는 대기열의 자리로 옮겨 간다.
+            final HostEngine current = engineFor(next.mGuest);
+            if (current != null && current.offer(next)) {
+                return;
+            }
+            if (next.cancel()) {    // 호스트가 멈췄다. 남은 게스트들도 실패를 알린다.
+                next.mGuest.offerFail();
+                failMerged(next.mGuest);
+                if (next instanceof HostRunnable) {
+                    ((HostRunnable) next).release();
+                }
+                finished(next.mGuest);
+            }
         }
+        lanes.remove(lane.key, lane);
     }
 
     /**
      * 인자의 게스트에 정의된 작업을 수행하는 Runnable 을 만든다.
+     * {@link PooledGuest}의 작업은 앞선 offer 가 끝났으면 재사용한다.
      *
-     * @param offerTime 주 대기열에 대기시키기를 시도하는 시각
-     * @param guest     작업이 정의된 대상
+     * @param offerTime  주 대기열에 대기시키기를 시도하는 시각
+     * @param offerNanos offer 시점의 {@link System#nanoTime()}. 측정하지 않으면 {@link #NOT_MEASURED}.
+     * @param guest      작업이 정의된 대상
      * @return 주 대기열에 넣을 runnable 객체
      */
-    private static RunnableGuest makeRunnable(final long offerTime, final ThreadGuest guest) {
-        return new RunnableGuest(guest) {
-            @Override
-            public void run() {
-                runGuest(offerTime, mGuest);
+    private static HostRunnable makeRunnable(final long offerTime, final long offerNanos, final ThreadGuest guest) {
+        HostRunnable runnable = null;
+        if (guest instanceof PooledGuest) {
+            runnable = ((PooledGuest) guest).claimRunnable();
+        }
+        if (runnable == null) {    // 재시도처럼 앞선 offer 가 아직 끝나지 않았으면 새로 만든다.
+            runnable = new HostRunnable(guest, true);
+        }
+        return runnable.prepare(offerTime, offerNanos);
+    }
+
+    /**
+     * 게스트의 작업을 수행하는 Runnable. offer 마다 하나씩 만든다.
+     * {@link PooledGuest}는 하나를 가지고 있다가 offer 마다 재사용하므로, 이 객체를 붙잡고 있는 쪽의 수를 센다.
+     * 이 객체와 {@link Promotion}들 중에 먼저 꺼내진 하나만 게스트를 수행한다.
+     */
+    static final class HostRunnable extends RunnableGuest {
+
+        private static final AtomicIntegerFieldUpdater<HostRunnable> IN_USE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(HostRunnable.class, "inUse");
+        private static final AtomicIntegerFieldUpdater<HostRunnable> TAKEN_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(HostRunnable.class, "taken");
+
+        /**
+         * offer 시점의 {@link System#nanoTime()}. 측정하지 않으면 {@link #NOT_MEASURED}.
+         */
+        private long mOfferNanos;
+        /**
+         * 이 객체를 붙잡고 있는 쪽의 수. 대기열이나 레인에 있거나 수행 중인 이번 offer 와, 대기열에 남은 승격 항목들이다.
+         * 0 이 아니면 재사용할 수 없다.
+         */
+        private volatile int inUse;
+        /**
+         * 1 이면 이번 offer 의 항목 하나가 대기열에서 꺼내져 수행되었거나 버려졌다. 나머지 항목은 할 일이 없다.
+         */
+        private volatile int taken;
+        /**
+         * 승격 항목을 넣은 엔진. 승격하지 않았으면 null. 할 일 없이 꺼내진 항목을 그 엔진의 크기에서 뺀다.
+         */
+        private volatile HostEngine mPromotedIn;
+
+        HostRunnable(ThreadGuest guest, boolean inUse) {
+            super(guest, 0);
+            this.inUse = inUse ? 1 : 0;
+        }
+
+        /**
+         * @return 재사용할 수 있어서 차지했으면 true.
+         */
+        boolean claim() {
+            return IN_USE_UPDATER.compareAndSet(this, 0, 1);
+        }
+
+        /**
+         * 승격 항목이 이 객체를 붙잡는다.
+         *
+         * @return 이번 offer 가 아직 끝나지 않아서 붙잡았으면 true.
+         */
+        boolean retain() {
+            while (true) {
+                final int current = inUse;
+                if (current <= 0) {
+                    return false;
+                }
+                if (IN_USE_UPDATER.compareAndSet(this, current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 붙잡고 있던 쪽 하나가 놓는다. 모두 놓으면 이번 offer 가 끝난 것이고, 이후에는 이 객체를 사용하면 안 된다.
+         */
+        void release() {
+            IN_USE_UPDATER.decrementAndGet(this);
+        }
+
+        /**
+         * @return 이번 offer 의 항목 중 처음으로 꺼내진 것이면 true.
+         */
+        boolean take() {
+            return TAKEN_UPDATER.compareAndSet(this, 0, 1);
+        }
+
+        @Override
+        boolean isStale() {
+            return taken != 0;
+        }
+
+        /**
+         * 이번 offer 의 다른 항목이 먼저 꺼내진 뒤에, 할 일 없는 항목 하나가 꺼내졌다.
+         */
+        void discardStale() {
+            final HostEngine promotedIn = mPromotedIn;    // 놓고 나면 이 객체는 다시 쓰일 수 있으므로 먼저 읽는다.
+            if (promotedIn != null) {
+                promotedIn.removeExtraEntry();
+            }
+            release();
+        }
+
+        @Override
+        public boolean raisePriority(int priority) {
+            return inheritPriority(this, priority);
+        }
+
+        HostRunnable prepare(long offerTime, long offerNanos) {
+            reset();
+            mOfferTime = offerTime;
+            mOfferNanos = offerNanos;
+            mCoalescingKey = null;
+            mLane = null;
+            mBucket = -1;
+            taken = 0;
+            mPromotedIn = null;
+            return this;
+        }
+
+        @Override
+        public void run() {
+            admission.onDequeued();    // 자리가 났다.
+            if (!take()) {    // 같은 offer 의 다른 항목이 먼저 꺼내졌다.
+                discardStale();
+                return;
             }
-        };
+            final SerialLane lane = mLane;    // 게스트가 풀로 돌아가면 이 객체는 다시 쓰일 수 있으므로 먼저 읽어 둔다.
+            boolean retrying = false;
+            try {
+                if (tryStart()) {    // 기다리는 동안 취소되었으면 수행하지 않는다.
+                    retrying = runGuest(mOfferTime, mOfferNanos, mGuest, lane);
+                } else {
+                    failMerged(mGuest);
+                    finished(mGuest);
+                }
+            } finally {
+                if (lane != null && !retrying) {    // 재시도하는 게스트는 레인을 붙잡고 있다. 재시도가 끝나면 놓는다.
+                    leaveLane(lane);
+                }
+                release();
+            }
+        }
+
+    }
+
+    /**
+     * 우선순위를 물려받은 offer 를 앞 구간에서 다시 기다리게 하는 항목.
+     * 대기열의 중간에서는 항목을 뺄 수 없으므로, 원래 항목은 그대로 두고 이것을 하나 더 넣는다.
+     * 먼저 꺼내진 쪽이 게스트를 수행하고, 나중에 꺼내진 쪽은 아무것도 하지 않는다.
+     */
+    static final class Promotion extends RunnableGuest {
+
+        final HostRunnable target;
+
+        Promotion(HostRunnable target) {
+            super(target.mGuest, target.mOfferTime);    // 노화는 원래의 offer 시각을 따른다.
+            this.target = target;
+        }
+
+        @Override
+        void queuedIn(int bucket) {
+            target.queuedIn(bucket);
+        }
+
+        @Override
+        boolean isStale() {
+            return target.isStale();
+        }
+
+        @Override
+        public boolean raisePriority(int priority) {
+            return target.raisePriority(priority);
+        }
+
+        @Override
+        public void run() {
+            target.run();
+        }
+
+    }
+
+    /**
+     * 인자의 offer 에 우선순위를 물려준다.
+     * 이미 엔진의 대기열에 들어가 있고 물려받은 우선순위가 더 앞선 구간이면, 그 구간에 {@link Promotion}을 넣는다.
+     * 아직 대기열에 들어가기 전이면 들어갈 때 물려받은 우선순위를 따른다.
+     *
+     * @param runnable 물려받을 offer
+     * @param priority 물려줄 우선순위
+     * @return 아직 대기 중이면 true.
+     */
+    static boolean inheritPriority(final HostRunnable runnable, final int priority) {
+        final ThreadGuest guest = runnable.mGuest;
+        if (guest.inheritPriority(priority)) {
+            final int bucket = runnable.mBucket;    // 우선순위를 먼저 바꾸고 읽는다. PriorityBucketQueue#offer 참고.
+            if (bucket > PriorityBucketQueue.bucketOf(guest.getEffectivePriority()) && runnable.isPending()) {
+                promote(runnable);
+            }
+        }
+        return runnable.isPending();
+    }
+
+    private static void promote(final HostRunnable runnable) {
+        final HostEngine current = engineFor(runnable.mGuest);
+        if (current == null || !runnable.retain()) {
+            return;
+        }
+        runnable.mPromotedIn = current;
+        current.addExtraEntry();    // 꺼내지기 전에 세어 두어야 빼는 쪽과 엇갈리지 않는다.
+        if (!current.offer(new Promotion(runnable))) {    // 대기열이 가득 찼다. 원래 자리에서 기다린다.
+            current.removeExtraEntry();
+            runnable.release();
+        }
     }
 
     /**
      * {@link RunnableGuest} 위에서 수행되는 작업을 정의한 메소드.
      *
-     * @param offerTime 주 대기열에 대기시키기를 시도하는 시각
-     * @param guest     작업이 정의된 대상
+     * @param offerTime  주 대기열에 대기시키기를 시도하는 시각
+     * @param offerNanos offer 시점의 {@link System#nanoTime()}. 측정하지 않으면 {@link #NOT_MEASURED}.
+     * @param guest      작업이 정의된 대상
+     * @param lane       게스트의 레인. 없으면 null.
+     * @return 게스트가 재시도를 위해 레인을 붙잡고 있으면 true. 레인을 놓지 않아야 한다.
      */
-    private static void runGuest(final long offerTime, final ThreadGuest guest) {
-        final long waitTime = android.os.SystemClock.elapsedRealtime() - offerTime;    // offer 이후 기다린 시각
-        //TODO: 에러 처리의 방법을 개선할 필요가 있다.
+    private static boolean runGuest(final long offerTime, final long offerNanos, final ThreadGuest guest, final SerialLane lane) {
+        final long waitTime = HostClock.now() - offerTime;    // offer 이후 기다린 시각
+        final HostEngine sampler = engineFor(guest);
+        final boolean sampling = sampler != null && sampler.isSampling();    // 스레드 수를 조절하는 엔진에 수행 기록을 준다.
+        final long startNanos = offerNanos == NOT_MEASURED && !sampling ? NOT_MEASURED : System.nanoTime();
+        final long startCpuNanos = sampling ? Debug.threadCpuTimeNanos() : -1;
+        final Thread thread = Thread.currentThread();
+        final HostThread host = thread instanceof HostThread ? (HostThread) thread : null;
+        final ThreadGuest outer = host != null ? host.mRunningGuest : null;    // 호출자 수행 정책으로 다른 게스트 안에서 수행될 수 있다.
+        Object runResult = null;
+        Exception error = null;
+        if (host != null) {
+            host.mRunningGuest = guest;
+        }
         try {
-            final Object runResult = guest.run(waitTime);    // 본문 실행
-            handleResult(guest, runResult);
+            runResult = guest.run(waitTime);    // 본문 실행
         } catch (Exception e) {
             Log.e(DebugConfig.LOG_TAG, "Exception occurred in ThreadGuest.run()", e);    // 이건 run 안에서 발생한 에러이다. 공공연히 알려야 하므로 로그 래핑을 쓰지 않음.
+            error = e;
+        } finally {
+            if (host != null) {
+                host.mRunningGuest = outer;
+            }
+        }
+        final boolean failed = error != null;
+        if (startNanos != NOT_MEASURED) {
+            final long runNanos = System.nanoTime() - startNanos;
+            if (sampling) {
+                sampler.recordRun(waitTime, runNanos, startCpuNanos < 0 ? -1 : Debug.threadCpuTimeNanos() - startCpuNanos);
+            }
+            if (offerNanos != NOT_MEASURED) {
+                HostMetrics.recordRun(guest.getPriority(), startNanos - offerNanos, runNanos, failed);
+            }
+        }
+        if (failed) {
+            return handleFailure(guest, error, lane);
+        }
+        guest.mRetryCount = 0;
+        handleResult(guest, runResult);
+        return false;
+    }
+
+    /**
+     * 게스트의 {@link ThreadGuest#run(long) run()}이 예외를 던졌을 때 호출.
+     * 재시도 방식이 허락하면 지연 뒤에 다시 대기열에 넣고, 아니면 체인을 따라 실패를 알린다.
+     *
+     * @param guest 실패한 게스트
+     * @param error run()이 던진 예외
+     * @param lane  게스트의 레인. 없으면 null.
+     * @return 재시도한다면 true. 레인은 재시도하는 동안 붙잡아 둔다.
+     */
+    private static boolean handleFailure(final ThreadGuest guest, final Throwable error, final SerialLane lane) {
+        final RetryPolicy policy = guest.getRetryPolicy();
+        final int retries = guest.mRetryCount;
+        try {
+            if (policy != null && policy.shouldRetry(guest, error, retries)) {
+                final long delay = policy.getDelayMillis(retries);
+                guest.mRetryCount = retries + 1;
+                LogByCodeLab.w("ThreadHost.handleFailure(): retry " + (retries + 1) + " after " + delay + "ms");
+                if (delay <= 0) {
+                    offerRetry(guest, error, lane);
+                } else {
+                    runDelayed(new Runnable() {    // 타이머 스레드에서 다시 넣는다.
+                        @Override
+                        public void run() {
+                            offerRetry(guest, error, lane);
+                        }
+                    }, delay);
+                }
+                return true;
+            }
+        } catch (RuntimeException e) {    // 재시도 방식이 실패했다. 포기한다.
+            LogByCodeLab.e(e);
+        }
+        notifyFailure(guest, error);
+        return false;
+    }
+
+    /**
+     * 실패한 게스트를 다시 대기열에 넣는다.
+     * 처음 offer 때 이미 받아들여졌으므로 admission 정책을 거치지 않는다.
+     * 레인의 게스트는 레인을 놓지 않은 채로 다시 수행되므로, 뒤에 선 게스트들보다 먼저 수행된다.
+     *
+     * @param error 마지막 실패. 다시 넣지 못하면 이것을 알린다.
+     * @param lane  게스트가 붙잡고 있는 레인. 없으면 null.
+     */
+    private static void offerRetry(final ThreadGuest guest, final Throwable error, final SerialLane lane) {
+        final HostRunnable runnable = makeRunnable(HostClock.now(), HostMetrics.isEnabled() ? System.nanoTime() : NOT_MEASURED, guest);
+        runnable.mLane = lane;
+        if (lane != null) {
+            lane.resume(runnable);    // 뒤에 선 게스트들이 물려주는 우선순위를 새 작업이 받는다.
+        }
+        final HostEngine current = engineFor(guest);
+        if (current != null && current.offer(runnable)) {
+            return;
         }
+        // 호스트가 멈췄거나 대기열이 가득 찼다. 재시도를 포기하고 마지막 실패를 알린다.
+        runnable.cancel();
+        runnable.release();
+        if (lane != null) {
+            leaveLane(lane);
+        }
+        notifyFailure(guest, error);
+    }
+
+    /**
+     * 게스트와 체인, 합쳐진 게스트들에게 실패를 메인스레드에서 알리고 끝낸다.
+     */
+    private static void notifyFailure(final ThreadGuest guest, final Throwable error) {
+        final ThreadGuest merged = takeMerged(guest);    // 게스트가 풀로 돌아가기 전에 가져온다.
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                notifyError(guest, error);
+                guest.mRetryCount = 0;    // onError 에서는 재시도 횟수를 볼 수 있게 알린 뒤에 되돌린다.
+                finished(guest);
+                ThreadGuest pointer = merged;
+                while (pointer != null) {    // 합쳐진 게스트들도 같은 에러를 넘겨받는다.
+                    final ThreadGuest next = pointer.mNextMerged;
+                    pointer.mNextMerged = null;
+                    notifyError(pointer, error);
+                    finished(pointer);
+                    pointer = next;
+                }
+            }
+        });
+    }
+
+    /**
+     * 게스트와 체인의 남은 게스트들에게 같은 에러를 순서대로 알린다. 그들은 수행되지 않는다.
+     */
+    private static void notifyError(final ThreadGuest guest, final Throwable error) {
+        ThreadGuest pointer = guest;
+        do {
+            try {
+                pointer.onError(error);
+            } catch (RuntimeException e) {
+                LogByCodeLab.e(e);    // 하나가 실패해도 나머지에게 알린다.
+            }
+            pointer = pointer.mChainNextGuest;
+        } while (pointer != null && pointer != guest);    // 순환 체인은 한 바퀴만.
     }
 
     /**
@@ -206,19 +1036,24 @@ class ThreadHost {
      * @param result guest 의 {@link ThreadGuest#run(long) run()}이 리턴한 객체.
      */
     private static void handleResult(final ThreadGuest guest, final Object result) {
+        ThreadGuest merged = takeMerged(guest);    // 게스트가 풀로 돌아가기 전에 가져온다.
+        deliverResult(guest, result);
+        while (merged != null) {    // 합쳐진 게스트들은 같은 결과로 after() 와 체인을 진행한다.
+            final ThreadGuest next = merged.mNextMerged;
+            merged.mNextMerged = null;
+            deliverResult(merged, result);
+            merged = next;
+        }
+    }
+
+    private static void deliverResult(final ThreadGuest guest, final Object result) {
         try {
             if (result == null) {    // null 이면 결과를 넘겨줄 필요가 없음.
                 processChain(guest);
             } else {
-                // guest.run()의 결과를 메인스레드로 넘겨주는 작업.
-                final ResultCarrier carrier = new ResultCarrier();    // 캐리어에 담는다.
-                carrier.guest = guest;
-                carrier.result = result;
-                final Message messageToMain = resultHandler.obtainMessage();    // 메인스레드로 가자.
-                messageToMain.obj = carrier;
-                LogByCodeLab.v("ThreadHost.handleResult(): ResultCarrier departed");
-                resultHandler.dispatchMessage(messageToMain);
-                // 간 후의 작업은 resultHandler 정의를 참고.
+                // guest.run()의 결과를 메인스레드로 넘겨주는 작업. 같은 구간에 끝난 결과들과 묶여서 넘어간다.
+                ResultDispatcher.deliver(guest, result);
+                // 간 후의 작업은 ResultDispatcher 정의를 참고.
             }
         } catch (Exception e) {
             LogByCodeLab.e(e);
@@ -231,31 +1066,187 @@ class ThreadHost {
      *
      * @param guest 현재 수행중인 스레드 게스트.
      */
-    synchronized static void processChain(final ThreadGuest guest) {
+    static void processChain(final ThreadGuest guest) {
         if (guest.mChainNextGuest == null) {    // 체인이 없으면
             // 더 이상 할 일이 없다.
+            finished(guest);
             return;
         }
-        // 체인이 있다.
-        if (guest.mThreadChainBlocker != null) {    // 체크아웃 이벤트 기반 체인인 경우
-            if (guest.mThreadChainBlocker.isBlocking()) {    // 블락 상태라면
-                guest.mThreadChainBlocker.addWait(guest);    // 아무것도 하지 않고 체크아웃을 기다려야 한다.
-                return;
-            }
+        // 체인이 있다. 락을 잡지 않는다. 블로커는 상태 확인과 대기열 등록을 원자적으로 한다.
+        if (guest.mThreadChainBlocker != null && guest.mThreadChainBlocker.tryWait(guest)) {    // 블락 상태인 이벤트 기반 체인
+            return;    // 아무것도 하지 않고 체크아웃을 기다려야 한다.
         }
         // 시간 기반 체인. 혹은 이미 언블록된 이벤트 기반 체인.
-        final NextCarrier carrier = new NextCarrier();    // 캐리어에 담는다.
-        carrier.nextGuest = guest.mChainNextGuest;
-        carrier.nextGuest.setObject(guest.getObject());    // 다음 게스트에게 오브젝트를 전달한다.
-        final Message messageToMain = nextHandler.obtainMessage();    // 메인스레드로 가자.
-        messageToMain.obj = carrier;
-        LogByCodeLab.v("ThreadHost.processChain(): NextCarrier departed with time " + guest.mChainDelay);
+        continueChain(guest);
+    }
+
+    /**
+     * 블로커를 확인하지 않고 다음 게스트로 진행한다. 블로커에서 풀려난 게스트에 사용.
+     *
+     * @param guest 체인이 세팅된 게스트.
+     */
+    static void continueChain(final ThreadGuest guest) {
+        final ThreadGuest next = departChain(guest);
+        if (next != null) {
+            next.execute();
+        }
+        finished(guest);
+    }
+
+    /**
+     * 체인의 다음 게스트에게 오브젝트와 우선순위를 넘겨준다. 지연이 있으면 타이머에 맡긴다.
+     *
+     * @param guest 체인이 세팅된 게스트.
+     * @return 바로 offer 해야 할 다음 게스트. 타이머에 맡겼으면 null.
+     */
+    private static ThreadGuest departChain(final ThreadGuest guest) {
+        final ThreadGuest next = guest.mChainNextGuest;
+        next.setObject(guest.getObject());    // 다음 게스트에게 오브젝트를 전달한다.
+        next.inheritPriority(guest.getEffectivePriority());    // 체인은 앞선 게스트의 우선순위보다 뒤처지지 않는다.
+        LogByCodeLab.v("ThreadHost.processChain(): next guest departed with time " + guest.mChainDelay);
         if (guest.mChainDelay <= 0) {
-            nextHandler.dispatchMessage(messageToMain);
-        } else {
-            nextHandler.sendMessageDelayed(messageToMain, guest.mChainDelay);
+            return next;
+        }
+        timer.schedule(NextCarrier.obtain(next), guest.mChainDelay);    // 타이머 스레드에서 다음 게스트를 offer 한다. NextCarrier.run() 참고.
+        return null;
+    }
+
+    /**
+     * 블로커에서 한꺼번에 풀려난 게스트들을 진행한다. 바로 수행될 다음 게스트들은 모아서 {@link #offerAll(ThreadGuest[], int)}로 한 번에 넘긴다.
+     *
+     * @param first 풀려난 노드의 연결 리스트. 도착한 순서이다.
+     */
+    static void continueChains(ThreadGuest.ChainBlocker.Node first) {
+        int count = 0;
+        for (ThreadGuest.ChainBlocker.Node node = first; node != null; node = node.next) {
+            count++;
+        }
+        final ThreadGuest[] departed = new ThreadGuest[count];
+        final ThreadGuest[] ready = new ThreadGuest[count];
+        int departedCount = 0;
+        int readyCount = 0;
+        for (ThreadGuest.ChainBlocker.Node node = first; node != null; node = node.next) {
+            try {
+                final ThreadGuest next = departChain(node.guest);
+                departed[departedCount++] = node.guest;
+                if (next != null) {
+                    ready[readyCount++] = next;
+                }
+            } catch (RuntimeException e) {
+                LogByCodeLab.e(e);    // 하나가 실패해도 나머지는 진행한다.
+            }
         }
-        // 간 후의 작업은 nextHandler 정의를 참고.
+        try {
+            offerAll(ready, readyCount);
+        } finally {
+            for (int i = 0; i < departedCount; i++) {    // 다음 게스트를 넘긴 뒤에 앞선 게스트를 끝낸다. continueChain() 과 같은 순서이다.
+                finished(departed[i]);
+            }
+        }
+    }
+
+    /**
+     * Turn on priority aging, or off.<br/>
+     * <br/>
+     * With aging on, a waiting guest is treated as one priority preset higher for every step it waits.
+     * For example, with 1000ms step, a {@link ThreadGuest#PRIORITY_IDLE} guest competes with
+     * {@link ThreadGuest#PRIORITY_NORMAL} guests after 2 seconds, and with {@link ThreadGuest#PRIORITY_GREEDY} guests after 5 seconds.
+     * Between guests of the same aged preset, the one offered earlier runs first.
+     * So a steady stream of high priority guests cannot starve low priority guests forever.<br/>
+     * <br/>
+     * {@link ThreadGuest#getPriority()} is not changed by aging. Off by default({@link ThreadConfig#THREAD_AGING_STEP_MILLIS}).
+     *
+     * @param stepMillis Waiting time to raise one preset. 0 or less turns aging off.
+     */
+    public static void setAgingStep(long stepMillis) {
+        PriorityBucketQueue.agingStepMillis = Math.max(0, stepMillis);
+    }
+
+    /**
+     * @return Current aging step in milliseconds. 0 if aging is off.
+     * @see #setAgingStep(long)
+     */
+    public static long getAgingStep() {
+        return PriorityBucketQueue.agingStepMillis;
+    }
+
+    /**
+     * Change the behavior under load. Guests offered from now on follow the new policy.
+     * Threads blocked by the previous policy stop waiting.
+     *
+     * @param policy Default is {@link AdmissionPolicy#unbounded()}.
+     */
+    public static void setAdmissionPolicy(AdmissionPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("policy is null.");
+        }
+        final AdmissionPolicy previous = admission;
+        admission = policy;
+        if (previous != policy) {
+            previous.release();
+        }
+    }
+
+    /**
+     * @return Current admission policy.
+     * @see #setAdmissionPolicy(AdmissionPolicy)
+     */
+    public static AdmissionPolicy getAdmissionPolicy() {
+        return admission;
+    }
+
+    /**
+     * @return 대기열에서 수행을 기다리는 게스트의 수. 근사값.
+     */
+    static int queueSize() {
+        final HostEngine current = engine;
+        final HostEngine blocking = blockingEngine;
+        return (current == null ? 0 : current.guestCount()) + (blocking == null ? 0 : blocking.guestCount());
+    }
+
+    /**
+     * @return 현재 스레드가 호스트의 작업 스레드이거나, 호스트가 게스트를 수행하려고 만든 가상 스레드이면 true.
+     */
+    static boolean isHostThread() {
+        return Thread.currentThread() instanceof HostThread || VirtualThreadEngine.isGuestThread();
+    }
+
+    /**
+     * @return 현재 스레드에서 수행 중인 게스트. 호스트의 스레드가 아니거나, 수행 중인 게스트가 없으면 null.
+     */
+    static ThreadGuest currentGuest() {
+        final Thread current = Thread.currentThread();
+        if (current instanceof HostThread) {
+            return ((HostThread) current).mRunningGuest;
+        }
+        return VirtualThreadEngine.currentGuest();
+    }
+
+    /**
+     * @return 현재 스레드가 호스트의 작업 스레드이거나 타이머 스레드이면 true. 호스트가 진행되려면 이 스레드들이 멈추면 안 된다.
+     */
+    static boolean isInternalThread() {
+        return isHostThread() || timer.isTimerThread();
+    }
+
+    /**
+     * 인자의 작업을 메인스레드에서 수행시킨다.
+     *
+     * @param runnable 수행할 작업
+     */
+    static void runOnMain(final Runnable runnable) {
+        mainHandler.post(runnable);
+    }
+
+    /**
+     * 인자의 작업을 지정된 시간 뒤에 타이머 스레드에서 수행시킨다. 가벼운 작업만 넘길 것.
+     *
+     * @param runnable    수행할 작업
+     * @param delayMillis 지연 시간
+     * @return 취소에 사용할 수 있는 객체.
+     */
+    static TimingWheel.Timeout runDelayed(final Runnable runnable, final long delayMillis) {
+        return timer.schedule(runnable, delayMillis);
     }
 
 	/*	큐잉관리 끝	*/
@@ -0,0 +1,383 @@
+package com.hovans.android.concurrent;
+
+import android.util.Log;
+import com.hovans.android.constant.DebugConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 지연 작업을 위한 계층형 타이밍 휠.<br/>
+ * <br/>
+ * 바퀴 {@link #LEVELS}개가 각각 {@link #WHEEL_SIZE}개의 칸을 가진다. 0번 바퀴의 한 칸은 한 틱이고,
+ * 윗 바퀴의 한 칸은 아랫 바퀴 한 바퀴에 해당한다. 아랫 바퀴가 한 바퀴 돌 때마다 윗 바퀴의 한 칸을 아래로 풀어 내린다(cascade).
+ * 등록과 취소는 칸의 이중 연결 리스트에 넣고 빼는 것이므로 O(1)이다.<br/>
+ * <br/>
+ * 바퀴는 전용 스레드 하나만 만진다. 다른 스레드는 등록과 취소를 락 없는 스택에 쌓아두기만 하고,
+ * 전용 스레드가 깨어날 때마다 그것을 반영한다. 한 틱 안에 만료되는 작업은 함께 수행된다.
+ * 전용 스레드는 틱마다 깨어나지 않고, 가장 가까운 만료나 풀어 내림이 있는 틱까지 잠들며, 대기 중인 작업이 없으면 깨어나지 않는다.<br/>
+ * <br/>
+ * 만료된 작업은 전용 스레드에서 수행되므로, 게스트를 offer 하는 정도의 가벼운 작업만 넘겨야 한다.
+ *
+ * @author Arngard
+ */
+final class TimingWheel {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    /**
+     * 바퀴가 다룰 수 있는 가장 먼 틱 수. 이보다 먼 작업은 맨 윗 바퀴의 끝에 넣었다가 다시 풀어 내린다.
+     */
+    private static final long MAX_SPAN = 1L << (WHEEL_BITS * LEVELS);
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final String threadName;
+
+    /**
+     * [바퀴][칸]의 연결 리스트 머리. 전용 스레드만 접근한다.
+     */
+    private final Timeout[][] slots = new Timeout[LEVELS][WHEEL_SIZE];
+    /**
+     * 다음에 처리할 틱. 전용 스레드만 접근한다.
+     */
+    private long currentTick = 0;
+    /**
+     * 바퀴에 들어 있는 작업의 수. 전용 스레드만 접근한다.
+     */
+    private int scheduledCount = 0;
+
+    /* 다른 스레드에서 전용 스레드로 넘기는 스택 */
+    private final AtomicReference<Timeout> incoming = new AtomicReference<Timeout>(null);
+    private final AtomicReference<Timeout> cancelled = new AtomicReference<Timeout>(null);
+
+    private Thread worker = null;
+    /**
+     * 전용 스레드가 잠든 동안 깨어나기로 한 틱. 깨어 있으면 {@link Long#MIN_VALUE}, 기한 없이 잠들었으면 {@link Long#MAX_VALUE}.
+     */
+    private volatile long wakeTick = Long.MIN_VALUE;
+
+    /**
+     * @param tickMillis 한 틱의 길이. 같은 틱에 만료되는 작업들은 함께 수행된다.
+     * @param threadName 전용 스레드의 이름.
+     */
+    TimingWheel(long tickMillis, String threadName) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive.");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.startNanos = System.nanoTime();
+        this.threadName = threadName;
+    }
+
+    /**
+     * 인자의 작업을 지연 시간 뒤에 수행하도록 등록한다. 어느 스레드에서나 호출할 수 있다.
+     *
+     * @param task        수행할 작업. 전용 스레드에서 수행된다.
+     * @param delayMillis 지연 시간. 0 이하이면 다음 틱에 수행된다.
+     * @return 취소에 사용할 수 있는 객체.
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        if (task == null) {
+            throw new NullPointerException("task is null.");
+        }
+        final long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        final long elapsed = System.nanoTime() - startNanos + delayNanos;
+        final Timeout timeout = new Timeout(this, task, (elapsed + tickNanos - 1) / tickNanos);
+        Timeout head;
+        do {
+            head = incoming.get();
+            timeout.nextIncoming = head;
+        } while (!incoming.compareAndSet(head, timeout));
+        wakeUp(timeout.deadlineTick);
+        return timeout;
+    }
+
+    /**
+     * @return 현재 스레드가 이 타이머의 전용 스레드이면 true.
+     */
+    boolean isTimerThread() {
+        return Thread.currentThread() == worker;    // 전용 스레드라면 시작 전에 대입된 값을 본다.
+    }
+
+    private void wakeUp(long deadlineTick) {
+        final Thread thread = startIfNeeded();
+        if (deadlineTick < wakeTick) {    // 깨어나기로 한 틱보다 먼저 만료될 때만 깨운다. 아니면 그때 반영된다.
+            LockSupport.unpark(thread);
+        }
+    }
+
+    synchronized private Thread startIfNeeded() {
+        if (worker == null) {
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, threadName);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return worker;
+    }
+
+    private void cancelled(Timeout timeout) {
+        Timeout head;
+        do {
+            head = cancelled.get();
+            timeout.nextCancelled = head;
+        } while (!cancelled.compareAndSet(head, timeout));
+    }
+
+	/*	이하 전용 스레드	*/
+
+    private void loop() {
+        while (true) {
+            final long targetTick = (System.nanoTime() - startNanos) / tickNanos;
+            if (scheduledCount == 0 && currentTick < targetTick) {    // 바퀴가 비어 있으면 지나간 틱을 하나하나 돌 필요가 없다.
+                currentTick = targetTick;
+            }
+            transferIncoming();
+            removeCancelled();
+            long next = nextEventTick();
+            while (next <= targetTick) {    // 할 일이 없는 틱은 건너뛴다. 그 사이의 틱을 돌아도 바뀌는 것이 없다.
+                currentTick = next;
+                processTick();
+                removeCancelled();
+                next = nextEventTick();
+            }
+            currentTick = Math.min(next, targetTick + 1);
+            wakeTick = next;    // 잠들 것임을 먼저 알리고 나서 다시 확인해야 등록을 놓치지 않는다.
+            if (incoming.get() == null) {
+                if (next == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    final long sleepNanos = startNanos + next * tickNanos - System.nanoTime();
+                    if (sleepNanos > 0) {
+                        LockSupport.parkNanos(this, sleepNanos);
+                    }
+                }
+            }
+            wakeTick = Long.MIN_VALUE;
+            Thread.interrupted();    // 인터럽트로 잠들지 못하는 일이 없도록 한다.
+        }
+    }
+
+    /**
+     * @return {@link #currentTick}부터 보아, 0번 바퀴의 칸이 만료되거나 윗 바퀴의 칸이 풀어 내려지는 가장 가까운 틱.
+     * 바퀴가 비어 있으면 {@link Long#MAX_VALUE}.
+     */
+    private long nextEventTick() {
+        if (scheduledCount == 0) {
+            return Long.MAX_VALUE;
+        }
+        long next = Long.MAX_VALUE;
+        for (int offset = 0; offset < WHEEL_SIZE; offset++) {
+            if (slots[0][(int) ((currentTick + offset) & WHEEL_MASK)] != null) {
+                next = currentTick + offset;
+                break;
+            }
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            final int shift = WHEEL_BITS * level;
+            final long unit = 1L << shift;
+            final long base = (currentTick + unit - 1) & -unit;    // 이 바퀴가 다음에 한 칸 움직이는 틱
+            final int baseIndex = (int) ((base >>> shift) & WHEEL_MASK);
+            for (int offset = 0; offset < WHEEL_SIZE; offset++) {
+                final long tick = base + ((long) offset << shift);
+                if (tick >= next) {
+                    break;
+                }
+                if (slots[level][(baseIndex + offset) & WHEEL_MASK] != null) {
+                    next = tick;
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+
+    private void transferIncoming() {
+        Timeout stack = incoming.getAndSet(null);
+        while (stack != null) {
+            final Timeout next = stack.nextIncoming;
+            stack.nextIncoming = null;
+            if (stack.state == Timeout.STATE_WAITING) {
+                place(stack);
+            }
+            stack = next;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout stack = cancelled.getAndSet(null);
+        while (stack != null) {
+            final Timeout next = stack.nextCancelled;
+            stack.nextCancelled = null;
+            if (stack.level >= 0) {
+                unlink(stack);
+            }
+            stack = next;
+        }
+    }
+
+    /**
+     * 만료 틱과 현재 틱의 차이에 맞는 바퀴의 칸에 넣는다.
+     */
+    private void place(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        long tick = timeout.deadlineTick;
+        if (delta < 0) {    // 이미 지났다. 바로 다음에 처리할 칸에 넣는다.
+            delta = 0;
+            tick = currentTick;
+        } else if (delta >= MAX_SPAN) {
+            delta = MAX_SPAN - 1;
+            tick = currentTick + delta;
+        }
+        int level = 0;
+        while (delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        final int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        timeout.level = level;
+        timeout.index = index;
+        timeout.prev = null;
+        timeout.next = slots[level][index];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[level][index] = timeout;
+        scheduledCount++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = -1;
+        scheduledCount--;
+    }
+
+    /**
+     * {@link #currentTick}을 처리한다. 필요하면 윗 바퀴를 풀어 내리고, 0번 바퀴의 칸을 만료시킨다.
+     */
+    private void processTick() {
+        final long tick = currentTick;
+        // 아랫 비트가 모두 0인 바퀴들을 위에서부터 풀어 내린다.
+        int topLevel = 0;
+        while (topLevel + 1 < LEVELS && (tick & ((1L << (WHEEL_BITS * (topLevel + 1))) - 1)) == 0) {
+            topLevel++;
+        }
+        for (int level = topLevel; level >= 1; level--) {
+            final int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            Timeout timeout = detach(level, index);
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                timeout.next = null;
+                place(timeout);
+                timeout = next;
+            }
+        }
+        Timeout timeout = detach(0, (int) (tick & WHEEL_MASK));
+        currentTick = tick + 1;
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            timeout.next = null;
+            if (timeout.deadlineTick > tick) {    // 맨 윗 바퀴에 잘려서 들어갔던 먼 작업
+                place(timeout);
+            } else {
+                timeout.expire();
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * 칸의 리스트를 통째로 떼어낸다. 떼어낸 노드들은 {@link Timeout#next}로만 이어져 있다.
+     */
+    private Timeout detach(int level, int index) {
+        final Timeout head = slots[level][index];
+        slots[level][index] = null;
+        for (Timeout timeout = head; timeout != null; timeout = timeout.next) {
+            timeout.prev = null;
+            timeout.level = -1;
+            scheduledCount--;
+        }
+        return head;
+    }
+
+    /**
+     * 등록된 지연 작업. 취소에 사용한다.
+     */
+    static final class Timeout {
+
+        static final int STATE_WAITING = 0;
+        static final int STATE_CANCELLED = 1;
+        static final int STATE_EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        final long deadlineTick;
+        volatile int state = STATE_WAITING;
+
+        /* 이하 전용 스레드만 접근 */
+        Timeout prev;
+        Timeout next;
+        int level = -1;
+        int index;
+
+        /* 스택 연결 */
+        Timeout nextIncoming;
+        Timeout nextCancelled;
+
+        Timeout(TimingWheel wheel, Runnable task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * 아직 수행되지 않았다면 취소한다.
+         *
+         * @return 이 호출로 취소되었으면 true.
+         */
+        boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, STATE_WAITING, STATE_CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state == STATE_CANCELLED;
+        }
+
+        private void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, STATE_WAITING, STATE_EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(DebugConfig.LOG_TAG, "Exception occurred in delayed task", e);    // 전용 스레드는 살려둔다. 공공연히 알려야 하므로 로그 래핑을 쓰지 않음.
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.hovans.android.concurrent;
+
+import com.hovans.android.constant.ThreadConfig;
+import com.hovans.android.log.LogByCodeLab;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 블로킹 게스트마다 가상 스레드를 하나씩 만드는 엔진. JDK 21 이상의 JVM 에서만 쓸 수 있다.
+ * 라이브러리는 Java 7 로 컴파일되므로 가상 스레드의 API 는 리플렉션으로 찾는다. 안드로이드에는 없다.<br/>
+ * <br/>
+ * 가상 스레드는 막혀 있는 동안 캐리어 스레드를 놓아주므로, 수천 개의 게스트가 동시에 막혀 있어도 스택 몇 KB 씩만 쓴다.
+ * 다만 스레드를 만드는 대로 모두 시작하면 우선순위가 의미가 없어진다.
+ * 그래서 {@link PriorityBucketQueue}와 허가 수를 묶어 우선순위 순서의 세마포어로 쓴다.
+ * 허가를 얻은 게스트만 가상 스레드에서 수행되고, 나머지는 대기열에서 우선순위 순서대로 허가를 기다린다.
+ * 수행이 끝나 허가가 반납되면 그 자리에서 다음 게스트에게 넘긴다.
+ *
+ * @author Arngard
+ * @see ThreadHost#setBlockingVirtualThreads(int)
+ */
+class VirtualThreadEngine extends HostEngine {
+
+    /**
+     * 가상 스레드를 만드는 팩토리. 이 런타임에서 쓸 수 없으면 null.
+     */
+    private static final ThreadFactory FACTORY = findFactory();
+
+    /**
+     * 이 엔진이 만든 가상 스레드에서 수행하는 작업. 가상 스레드는 {@link HostThread}를 상속할 수 없으므로 여기에 표시해 둔다.
+     */
+    private static final ThreadLocal<RunnableGuest> currentRunnable = new ThreadLocal<RunnableGuest>();
+
+    /**
+     * 허가를 기다리는 작업
+     */
+    private final PriorityBucketQueue queue = new PriorityBucketQueue(ThreadConfig.THREAD_BUCKET_MAX_SIZE);
+    /**
+     * 남은 허가의 수. 동시에 수행되는 게스트의 상한이다.
+     */
+    private final AtomicInteger permits;
+    private volatile boolean isShutdown = false;
+
+    /**
+     * @param maxRunning 동시에 수행되는 게스트의 상한.
+     * @throws UnsupportedOperationException 이 런타임에 가상 스레드가 없으면.
+     */
+    VirtualThreadEngine(int maxRunning) {
+        if (FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported on this runtime.");
+        }
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException("maxRunning must be at least 1.");
+        }
+        permits = new AtomicInteger(maxRunning);
+    }
+
+    /**
+     * @return 이 런타임에서 가상 스레드를 쓸 수 있으면 true.
+     */
+    static boolean isSupported() {
+        return FACTORY != null;
+    }
+
+    /**
+     * @return 현재 스레드가 이 엔진의 가상 스레드이면 true.
+     */
+    static boolean isGuestThread() {
+        return FACTORY != null && currentRunnable.get() != null;
+    }
+
+    /**
+     * @return 현재 스레드가 이 엔진의 가상 스레드이면 그 스레드가 수행하는 게스트. 아니면 null.
+     */
+    static ThreadGuest currentGuest() {
+        if (FACTORY == null) {
+            return null;
+        }
+        final RunnableGuest runnable = currentRunnable.get();
+        return runnable == null ? null : runnable.mGuest;
+    }
+
+    /**
+     * Thread.ofVirtual().name("ThreadHost-virtual-", 0).factory() 와 같다.
+     */
+    private static ThreadFactory findFactory() {
+        try {
+            final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "ThreadHost-virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {    // 찾지 못했거나, 미리보기 기능이라 꺼져 있다.
+            return null;
+        }
+    }
+
+    @Override
+    boolean offer(RunnableGuest runnable) {
+        if (isShutdown || !queue.offer(runnable)) {
+            return false;
+        }
+        dispatch();
+        return true;
+    }
+
+    /**
+     * 남은 허가만큼 대기열의 앞에서부터 꺼내 가상 스레드를 시작한다.
+     * 허가를 먼저 얻고 나서 꺼내므로, 허가 없이 수행되는 게스트는 없다.
+     */
+    private void dispatch() {
+        while (!queue.isEmpty()) {
+            final int available = permits.get();
+            if (available <= 0) {    // 수행 중인 게스트가 끝나면서 다시 부른다.
+                return;
+            }
+            if (!permits.compareAndSet(available, available - 1)) {
+                continue;
+            }
+            final RunnableGuest next = (RunnableGuest) queue.poll();
+            if (next == null) {    // 다른 스레드가 먼저 꺼냈다. 허가를 돌려주고 대기열을 다시 본다.
+                permits.incrementAndGet();
+                continue;
+            }
+            start(next);
+        }
+    }
+
+    private void start(final RunnableGuest runnable) {
+        try {
+            FACTORY.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    currentRunnable.set(runnable);
+                    try {
+                        runnable.run();
+                    } finally {
+                        permits.incrementAndGet();
+                        dispatch();
+                    }
+                }
+            }).start();
+        } catch (RuntimeException e) {    // 스레드를 시작하지 못했다. 이 게스트만 실패시키고 허가는 돌려준다.
+            LogByCodeLab.e(e);
+            permits.incrementAndGet();
+            ThreadHost.dropped(runnable);
+        }
+    }
+
+    @Override
+    RunnableGuest pollLowest(int minBucket) {
+        return (RunnableGuest) queue.pollLowest(minBucket);
+    }
+
+    @Override
+    int size() {
+        return queue.size();
+    }
+
+    @Override
+    void shutdown() {
+        isShutdown = true;    // 대기열에 남은 게스트는 허가가 반납되는 대로 계속 수행된다.
+    }
+
+}
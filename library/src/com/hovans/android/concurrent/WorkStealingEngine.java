@@ -0,0 +1,294 @@
+package com.hovans.android.concurrent;
+
+import android.util.Log;
+import com.hovans.android.constant.DebugConfig;
+import com.hovans.android.constant.ThreadConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 작업 스레드마다 자신의 대기열을 두고, 할 일이 없거나 남의 대기열에 더 급한 게스트가 있으면 가져와서(steal) 수행하는 엔진.<br/>
+ * <br/>
+ * 각 대기열은 {@link PriorityBucketQueue}이므로, 한 대기열 안에서는 우선순위 구간과 구간 안의 도착 순서가 지켜진다.
+ * 작업을 가져올 때 다른 대기열의 머리와도 비교하므로, 대기열 사이에서도 근사적으로 같은 순서가 유지된다.
+ *
+ * @author Arngard
+ * @see ThreadHost#MODE_WORK_STEALING
+ */
+class WorkStealingEngine extends HostEngine {
+
+    /**
+     * 세어진 작업이 있는데 꺼내지 못했을 때, 양보만 하며 다시 시도하는 횟수. 그 뒤로는 잠깐씩 잔다.
+     */
+    private static final int SPIN_LIMIT = 16;
+    /**
+     * 꺼내지 못하고 잘 때의 최대 시간. 잘 때마다 두 배로 늘린다.
+     */
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Worker[] workers;
+    /**
+     * 모든 대기열에 들어 있는 작업의 수. {@link ThreadConfig#THREAD_BUCKET_MAX_SIZE}를 넘지 않도록 예약한 뒤에 넣는다.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+    /**
+     * 외부 스레드가 offer 할 때 대상 대기열을 고르는 데 사용한다.
+     */
+    private final AtomicInteger roundRobin = new AtomicInteger(0);
+
+    /* 할 일이 없는 작업 스레드를 재우고 깨우는 데 사용 */
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition workArrived = idleLock.newCondition();
+    private volatile int idleCount = 0;
+
+    private volatile boolean isShutdown = false;
+
+    /**
+     * @param workerCount 작업 스레드의 수. 1보다 작으면 1로 간주한다.
+     */
+    WorkStealingEngine(int workerCount) {
+        final int count = Math.max(1, workerCount);
+        workers = new Worker[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Worker(this, i);
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    @Override
+    boolean offer(RunnableGuest runnable) {
+        if (isShutdown) {
+            return false;
+        }
+        // 작업 스레드 안에서 들어온 게스트는 자신의 대기열에 넣는다. 캐시 지역성을 살리고 경합을 피한다.
+        Worker target = currentWorker();
+        if (target == null) {
+            target = workers[(roundRobin.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+        }
+        if (reserve(1) == 0) {    // 작업을 꺼낸 쪽이 먼저 감소시켜 음수가 되는 일이 없도록 먼저 센다.
+            return false;
+        }
+        target.localQueue.offer(runnable);
+        signalIdle(1);
+        return true;
+    }
+
+    /**
+     * 한 대기열에 모두 넣는다. 다른 작업 스레드들은 가져가서 수행하므로, 자고 있는 스레드는 한 번에 깨운다.
+     */
+    @Override
+    int offerAll(RunnableGuest[] runnables, int count) {
+        if (isShutdown) {
+            return 0;
+        }
+        Worker target = currentWorker();
+        if (target == null) {
+            target = workers[(roundRobin.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+        }
+        final int reserved = reserve(count);
+        target.localQueue.offerAll(runnables, reserved);
+        signalIdle(reserved);
+        return reserved;
+    }
+
+    /**
+     * @return 전체 크기 제한을 넘지 않는 만큼 예약한 수. 0 ~ wanted
+     */
+    private int reserve(int wanted) {
+        while (true) {
+            final int current = pendingCount.get();
+            final int reserved = Math.min(wanted, ThreadConfig.THREAD_BUCKET_MAX_SIZE - current);
+            if (reserved <= 0) {
+                return 0;
+            }
+            if (pendingCount.compareAndSet(current, current + reserved)) {
+                return reserved;
+            }
+        }
+    }
+
+    /**
+     * 작업이 들어왔음을 자고 있는 작업 스레드에게 알린다.
+     *
+     * @param added 들어온 작업의 수
+     */
+    private void signalIdle(int added) {
+        if (added > 0 && idleCount > 0) {    // 자고 있는 작업 스레드가 있을 때만 락을 잡는다.
+            idleLock.lock();
+            try {
+                if (added == 1) {
+                    workArrived.signal();
+                } else {
+                    workArrived.signalAll();
+                }
+            } finally {
+                idleLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    RunnableGuest pollLowest(int minBucket) {
+        for (int bucket = PriorityBucketQueue.BUCKET_COUNT - 1; bucket >= minBucket; bucket--) {
+            for (Worker worker : workers) {
+                final Runnable runnable = worker.localQueue.pollBucket(bucket);
+                if (runnable != null) {
+                    pendingCount.decrementAndGet();
+                    return (RunnableGuest) runnable;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    int size() {
+        return pendingCount.get();
+    }
+
+    @Override
+    void shutdown() {
+        isShutdown = true;
+        idleLock.lock();
+        try {
+            workArrived.signalAll();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    /**
+     * @return 현재 스레드가 이 엔진의 작업 스레드라면 그 객체. 아니면 null.
+     */
+    private Worker currentWorker() {
+        final Thread current = Thread.currentThread();
+        if (current instanceof Worker && ((Worker) current).engine == this) {
+            return (Worker) current;
+        }
+        return null;
+    }
+
+    /**
+     * 자신의 대기열 머리와 다른 대기열의 머리를 비교하여 가장 앞서는 작업을 꺼낸다.
+     *
+     * @param self    작업을 꺼내는 스레드
+     * @param waitBusy true 이면 다른 스레드가 꺼내는 중인 대기열도 기다려서 살펴본다.
+     * @return 꺼낸 작업. 없으면 null.
+     */
+    private RunnableGuest take(Worker self, boolean waitBusy) {
+        final long now = PriorityBucketQueue.agingNow();
+        Runnable best = self.localQueue.peek();
+        Worker from = best == null ? null : self;
+        for (int i = 1; i < workers.length; i++) {
+            final Worker victim = workers[(self.index + i) % workers.length];
+            final Runnable head = waitBusy ? victim.localQueue.peek() : victim.localQueue.tryPeek();    // 보통은 바쁜 대기열을 건너뛴다.
+            if (head != null && (best == null || PriorityBucketQueue.precedes(head, best, now))) {
+                best = head;
+                from = victim;
+            }
+        }
+        if (from == null) {
+            return null;
+        }
+        Runnable taken = from.localQueue.poll();    // 비교한 뒤에 머리가 바뀌었을 수 있지만, 그래도 그 대기열의 가장 앞선 작업이다.
+        if (taken == null && from != self) {
+            taken = self.localQueue.poll();
+        }
+        return (RunnableGuest) taken;
+    }
+
+    /**
+     * 세어진 작업이 있는데 꺼내지 못했을 때 호출한다. 다른 스레드가 대기열을 잡고 있었거나, 넣는 중이던 작업이다.
+     * 처음 몇 번은 양보만 하고, 그 뒤로는 자는 시간을 늘려 가며 코어를 놓아준다.
+     *
+     * @param misses 연속으로 꺼내지 못한 횟수. 1 부터.
+     */
+    private static void backOff(int misses) {
+        if (misses <= SPIN_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_BACKOFF_NANOS, 1000L << Math.min(20, misses - SPIN_LIMIT)));
+        }
+    }
+
+    /**
+     * 모든 대기열이 비어 있으면 새 작업이 들어올 때까지 잔다.
+     *
+     * @return 종료되어야 하면 false.
+     */
+    private boolean awaitWork() {
+        idleLock.lock();
+        try {
+            idleCount++;    // 먼저 잠들 것임을 알리고 나서 대기열을 다시 확인해야 신호를 놓치지 않는다.
+            try {
+                while (pendingCount.get() == 0) {
+                    if (isShutdown) {
+                        return false;
+                    }
+                    workArrived.await();
+                }
+            } finally {
+                idleCount--;
+            }
+        } catch (InterruptedException e) {
+            return !isShutdown;
+        } finally {
+            idleLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 자신의 대기열을 가진 작업 스레드.
+     */
+    private static final class Worker extends HostThread {
+
+        final WorkStealingEngine engine;
+        final int index;
+        /**
+         * 이 스레드의 대기열. 전체 크기 제한은 엔진이 지키므로 여기에는 제한을 두지 않는다.
+         */
+        final PriorityBucketQueue localQueue = new PriorityBucketQueue(Integer.MAX_VALUE);
+
+        Worker(WorkStealingEngine engine, int index) {
+            super("ThreadHost-" + index);
+            this.engine = engine;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            int misses = 0;
+            while (true) {
+                final RunnableGuest task = engine.take(this, misses >= SPIN_LIMIT);
+                if (task == null) {
+                    if (engine.pendingCount.get() > 0) {    // 세어진 작업이 있으니 잠들지 못한다. 물러났다가 다시 본다.
+                        backOff(++misses);
+                        continue;
+                    }
+                    misses = 0;
+                    if (!engine.awaitWork()) {
+                        return;
+                    }
+                    continue;
+                }
+                misses = 0;
+                engine.pendingCount.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // runGuest()가 이미 게스트의 예외를 처리하므로 여기까지 오는 것은 호스트 내부의 문제이다. 스레드는 살려둔다.
+                    Log.e(DebugConfig.LOG_TAG, "Exception occurred in ThreadHost worker", e);
+                }
+            }
+        }
+
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.hovans.android.constant;
 
 import com.hovans.android.concurrent.ThreadGuest;
+import com.hovans.android.concurrent.ThreadHost;
 
 /**
  * 스레드의 동작 방식을 정의함.
@@ -18,17 +19,74 @@ public class ThreadConfig {
      */
     public static final int THREAD_BUCKET_MAX_SIZE = 1048576;    // 2^20
     /**
-     * ThreadHost 작업소의 크기
+     * ThreadHost 작업소의 크기. 기본 {@link com.hovans.android.concurrent.PoolSizing}의 하한.
+     * {@link ThreadHost#setPoolSizing(com.hovans.android.concurrent.PoolSizing)}로 실행 중에 바꿀 수 있다.
      */
     public static final int THREAD_CORE_SIZE = 1;
     /**
-     * ThreadHost 작업소의 최대 크기
+     * ThreadHost 작업소의 최대 크기. 기본 {@link com.hovans.android.concurrent.PoolSizing}의 상한.
+     * 계산 게스트를 위한 작업소이므로 코어 수에 맞춘다. 하한에서 시작하여 게스트가 밀리면 이만큼까지 늘어난다.
      */
-    public static final int THREAD_MAX_SIZE = 1;
+    public static final int THREAD_MAX_SIZE = Runtime.getRuntime().availableProcessors();
     /**
      * ThreadHost 작업소가 idle 상태로 생존할 수 있는 시간.
      * {@link #THREAD_CORE_SIZE}와 {@link #THREAD_MAX_SIZE}가 같은 경우에는 무의미하다.
      */
     public static final int THREAD_ALIVE_TIME = 1 * 1000;
+    /**
+     * 작업소의 크기를 조절하기 위해 측정하는 주기(ms). 하한과 상한이 같으면 측정하지 않는다.
+     */
+    public static final long THREAD_SIZING_PERIOD_MILLIS = 500;
+    /**
+     * 한 주기 동안 게스트가 대기열에서 기다린 평균 시간(ms)이 이보다 길면 작업소를 키운다.
+     */
+    public static final long THREAD_SIZING_GROW_WAIT_MILLIS = 50;
+    /**
+     * 한 주기 동안 게스트가 대기열에서 기다린 평균 시간(ms)이 이보다 짧고 대기열이 비어 있으면 한가한 주기이다.
+     */
+    public static final long THREAD_SIZING_SHRINK_WAIT_MILLIS = 5;
+    /**
+     * 한가한 주기가 이만큼 이어지면 작업소를 스레드 하나만큼 줄인다.
+     */
+    public static final int THREAD_SIZING_PATIENCE = 4;
+    /**
+     * 블로킹 게스트 작업소의 최대 크기. 스레드는 필요할 때 하나씩 생기므로, 동시에 막혀 있을 수 있는 게스트의 수이다.
+     */
+    public static final int THREAD_BLOCKING_MAX_SIZE = 64;
+    /**
+     * 블로킹 게스트 작업소가 idle 상태로 생존할 수 있는 시간.
+     */
+    public static final int THREAD_BLOCKING_ALIVE_TIME = 10 * 1000;
+    /**
+     * 0 보다 크면, 가상 스레드가 있는 JVM(JDK 21 이상)에서 블로킹 게스트를 가상 스레드에서 수행한다. 동시에 수행되는 게스트의 상한이다.
+     * 안드로이드나 가상 스레드가 없는 JVM 에서는 무시된다. 0 이면 블로킹 게스트 작업소를 쓴다.
+     */
+    public static final int THREAD_BLOCKING_VIRTUAL_MAX_RUNNING = 0;
+    /**
+     * {@link ThreadGuest#after(Object)}를 메인스레드로 묶어 보내는 구간의 길이(ms). 한 프레임 정도로 잡는다.
+     * 한 구간 안에 끝난 게스트의 결과는 메인스레드를 한 번만 깨운다. 0 이하이면 묶지 않고 바로 보낸다.
+     */
+    public static final int THREAD_RESULT_BATCH_MILLIS = 16;
+    /**
+     * ThreadHost 의 기본 동작 방식. {@link ThreadHost#setMode(int)}로 실행 중에 바꿀 수 있다.
+     */
+    public static final int THREAD_HOST_MODE = ThreadHost.MODE_SINGLE;
+    /**
+     * {@link ThreadHost#MODE_WORK_STEALING}에서 사용하는 작업 스레드의 수. 코어 수에 맞춘다.
+     */
+    public static final int THREAD_WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+    /**
+     * 지연 체인 타이머의 한 틱의 길이(ms). 같은 틱에 만료되는 체인은 함께 깨어난다. 지연 시간의 오차는 이 값 이내이다.
+     */
+    public static final int THREAD_TIMER_TICK_MILLIS = 10;
+    /**
+     * {@link com.hovans.android.concurrent.HostMetrics}의 기록을 켠 채로 시작할지. 실행 중에 바꿀 수 있다.
+     */
+    public static final boolean THREAD_METRICS_ENABLED = false;
+    /**
+     * 우선순위 노화(aging)의 기본 단계(ms). 게스트는 이만큼 기다릴 때마다 우선순위 프리셋 하나만큼 앞서는 것으로 취급된다.
+     * 0 이하이면 노화하지 않는다. {@link ThreadHost#setAgingStep(long)}으로 실행 중에 바꿀 수 있다.
+     */
+    public static final long THREAD_AGING_STEP_MILLIS = 0;
 
 }
@@ -188,7 +188,8 @@ public class NetState {
 		
 		// 네트워크 상태를 체커에 마킹 작업. 별도의 스레드에서 해야 함.
 		// 반드시 별도의 스레드에서 체커를 갱신한 후 종료해야 한다.
-		new ThreadGuest(ThreadGuest.PRIORITY_ABOVE_NORMAL) {
+		// lookup 은 타임아웃 뒤에도 오래 막혀 있을 수 있으므로 블로킹 게스트로 보낸다. 계산용 작업 스레드를 붙잡지 않는다.
+		new ThreadGuest(ThreadGuest.PRIORITY_ABOVE_NORMAL, true) {
 
 			@Override
 			public void offerFail() {
@@ -7,11 +7,14 @@ import android.content.Intent;
 import android.os.Message;
 
 import com.hovans.android.app.PermissionManager;
+import com.hovans.android.concurrent.ThreadGuest;
 import com.hovans.android.log.LogByCodeLab;
 
 /**
- * {@link BaseService}를 기반으로 작업 스레드의 시작과 종료를 래핑한다.
- * 작업 스레드에 onStart 이벤트를 전달하는 과정을 래핑한다.
+ * {@link BaseService}를 기반으로 작업 스레드에 onStart 이벤트를 전달하는 과정을 래핑한다.<br>
+ * <br>
+ * 요청은 서비스마다 하나의 레인({@link ThreadGuest#setLane(Object)})으로 ThreadHost 에서 수행된다.
+ * 도착한 순서대로 하나씩 수행되며, 서비스마다 스레드를 따로 만들지 않는다.
  * @author Arngard
  *
  */
@@ -20,43 +23,29 @@ public abstract class WorkerService extends BaseService {
 	private final Lock mWorkerLock = new ReentrantLock();
 
 	/**
-	 * @return 작업 스레드를 만들 때 사용할 태그.
+	 * @return WakeLock 에 사용할 태그.
 	 */
 	public abstract String getWorkerTag();
 
 	/*	생명주기 대응 시작	*/
 
-	@Override
-	public void onCreate() {
-		super.onCreate();
-
-		startWorker(getWorkerTag());
-	}
-
 	/**
 	 * 이 이벤트를 작업 스레드에서 받기를 원하면 {@link #onWorkerRequest(Intent, int)}를 사용하면 된다.
 	 * @see com.hovans.android.service.BaseService#handleStart(android.content.Intent, int)
 	 */
 	@Override
-	protected void handleStart(Intent intent, int startId) {
+	protected void handleStart(final Intent intent, final int startId) {
 		// 이 메소드는 메인 스레드에서 동작한다.
-		// 요청자를 block하지 않기 위해 작업의 내용을 Worker 스레드에 넘겨주자.
-		// 넘겨준 정보는 Worker 스레드가 onWorkerRequest(Message)에서 받을 것이다.
-		try {
-			Message msg = getWorkerHandler().obtainMessage();
-			msg.what = startId;
-			msg.obj = intent;
-			getWorkerHandler().dispatchMessage(msg);
-		} catch (Exception e) {
-			LogByCodeLab.e(e);
-		}
-	}
-
-	@Override
-	public void onDestroy() {
-		super.onDestroy();
-
-		endWorker();
+		// 요청자를 block하지 않기 위해 작업의 내용을 ThreadHost 에 넘겨주자.
+		// 이 서비스의 레인에 서므로 앞선 요청이 끝난 뒤에 onWorkerRequest(Intent, int)에서 받을 것이다.
+		// 서비스의 작업은 대개 I/O 나 wakelock 에 묶여 있으므로, 계산 게스트의 작업소를 붙잡지 않도록 블로킹 게스트로 넘긴다.
+		new ThreadGuest(ThreadGuest.PRIORITY_NORMAL, true) {
+			@Override
+			public Object run(long waitTimeMillis) {
+				runWorkerRequest(intent, startId);
+				return null;
+			}
+		}.setLane(this).execute();
 	}
 
 	/*	생명주기 대응 끝	*/
@@ -69,10 +58,14 @@ public abstract class WorkerService extends BaseService {
 	 */
 	@Override
 	protected void onWorkerRequest(Message msg) {
+		runWorkerRequest((Intent) msg.obj, msg.what);
+	}
+
+	private void runWorkerRequest(Intent intent, int startId) {
 		mWorkerLock.lock();	// 동기화 락
 		PermissionManager.getWakeLockInstance(this, getWorkerTag()).acquire();
 		try {
-			onWorkerRequest((Intent) msg.obj, msg.what);
+			onWorkerRequest(intent, startId);
 		} catch (Exception e) {
 			LogByCodeLab.e(e);
 		} finally {
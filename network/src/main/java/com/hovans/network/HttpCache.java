@@ -0,0 +1,621 @@
+package com.hovans.network;
+
+import android.content.Context;
+import android.util.Log;
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.hovans.network.transport.HttpResponse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * HttpCache.java
+ * <p>
+ * Size-bounded LRU cache of response bodies for {@link HttpRequest#useCache}, one file per entry.
+ * Which entries exist, their sizes, their expiry and the order of use are kept in an append-only journal,
+ * so neither a read nor a write touches the other entries.
+ * An entry keeps the ETag and Last-Modified of its response, to revalidate it with a conditional request once it has expired.
+ * <p>
+ * The disk is used on a thread of the cache. {@link #put}, {@link #touch}, {@link #remove} and {@link #clear} return at once,
+ * and journal lines are flushed together once the pending work is done.
+ * {@link #get} reads the entry file where it is called, so call it through {@link #execute(Runnable)}, not on the main thread.
+ *
+ * @author Ben Yoo
+ */
+public class HttpCache {
+
+	private static final String TAG = HttpCache.class.getSimpleName();
+
+	public static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+	static final String DIRECTORY = "HttpRequest";
+	static final String JOURNAL = "journal";
+	static final String JOURNAL_TMP = "journal.tmp";
+	static final String CLEAN = "CLEAN", READ = "READ", REMOVE = "REMOVE";
+	/**
+	 * The journal is rewritten when it has this many lines, that don't describe an entry anymore.
+	 */
+	static final int REDUNDANT_OP_LIMIT = 2000;
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static HttpCache instance;
+
+	public static synchronized HttpCache getInstance(Context context) {
+		if (instance == null) {
+			instance = new HttpCache(new File(context.getCacheDir(), DIRECTORY), DEFAULT_MAX_SIZE);
+		}
+		return instance;
+	}
+
+	/**
+	 * Runs the disk work one by one, in the order it was asked.
+	 */
+	final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "HttpCache");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flushJournal();
+		}
+	};
+	boolean flushScheduled;
+
+	final File directory;
+	long maxSize;
+	long size;
+	int redundantOpCount;
+	Writer journalWriter;
+	/**
+	 * Keyed by the file name of an entry, in the order of use. The first one is evicted first.
+	 */
+	final LinkedHashMap<String, Record> records = new LinkedHashMap<>(16, 0.75f, true);
+
+	HttpCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	public synchronized long getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		if (journalWriter != null) {
+			trimToSize();
+		}
+	}
+
+	/**
+	 * @return Bytes of the entries on disk.
+	 */
+	public synchronized long size() {
+		open();
+		return size;
+	}
+
+	/**
+	 * Runs the task on the thread of the cache, after the disk work asked before.
+	 */
+	public void execute(Runnable task) {
+		diskExecutor.execute(task);
+	}
+
+	/**
+	 * Reads the entry file on the calling thread. Call it through {@link #execute(Runnable)}, not on the main thread.
+	 *
+	 * @return The entry of the key, even if it has expired. null if there is none.
+	 */
+	public synchronized Entry get(String key) {
+		if (open() == false) return null;
+
+		String name = nameOf(key);
+		Record record = records.get(name);
+		if (record == null) return null;
+
+		Entry entry = null;
+		try {
+			entry = readEntry(new File(directory, name), key, record.expiresAt);
+		} catch (IOException e) {
+			Log.w(TAG, e);
+		}
+		if (entry == null) {
+			remove(name, record);
+			return null;
+		}
+		redundantOpCount++;
+		appendJournal(READ + ' ' + name);
+		compactIfNeeded();
+		return entry;
+	}
+
+	/**
+	 * Stores the entry on the thread of the cache.
+	 */
+	public void put(final String key, final Entry entry) {
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				putNow(key, entry);
+			}
+		});
+	}
+
+	synchronized void putNow(String key, Entry entry) {
+		if (open() == false) return;
+
+		String name = nameOf(key);
+		File file = new File(directory, name);
+		File tmp = new File(directory, name + ".tmp");
+		try {
+			writeEntry(tmp, key, entry);
+			if (tmp.renameTo(file) == false) {
+				throw new IOException("Failed to rename " + tmp);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, e);
+			tmp.delete();
+			removeNow(key);
+			return;
+		}
+
+		Record record = records.get(name);
+		if (record == null) {
+			record = new Record();
+			records.put(name, record);
+		} else {
+			size -= record.size;
+			redundantOpCount++;
+		}
+		record.size = file.length();
+		record.expiresAt = entry.expiresAt;
+		size += record.size;
+		appendJournal(record.toJournal(name));
+		trimToSize();
+	}
+
+	/**
+	 * Renews the expiry of an entry, whose body is still the same, on the thread of the cache. For a response of 304 Not Modified.
+	 */
+	public void touch(final String key, final long expiresAt) {
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				touchNow(key, expiresAt);
+			}
+		});
+	}
+
+	synchronized void touchNow(String key, long expiresAt) {
+		if (open() == false) return;
+
+		String name = nameOf(key);
+		Record record = records.get(name);
+		if (record == null) return;
+
+		record.expiresAt = expiresAt;
+		redundantOpCount++;
+		appendJournal(record.toJournal(name));
+		compactIfNeeded();
+	}
+
+	/**
+	 * Removes the entry on the thread of the cache.
+	 */
+	public void remove(final String key) {
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				removeNow(key);
+			}
+		});
+	}
+
+	synchronized void removeNow(String key) {
+		if (open() == false) return;
+
+		String name = nameOf(key);
+		Record record = records.get(name);
+		if (record != null) {
+			remove(name, record);
+		}
+	}
+
+	/**
+	 * Removes all entries on the thread of the cache.
+	 */
+	public void clear() {
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				clearNow();
+			}
+		});
+	}
+
+	synchronized void clearNow() {
+		if (open() == false) return;
+
+		for (String name : records.keySet()) {
+			new File(directory, name).delete();
+		}
+		records.clear();
+		size = 0;
+		rebuildJournal();
+	}
+
+	private void remove(String name, Record record) {
+		new File(directory, name).delete();
+		records.remove(name);
+		size -= record.size;
+		redundantOpCount++;
+		appendJournal(REMOVE + ' ' + name);
+		compactIfNeeded();
+	}
+
+	private void trimToSize() {
+		Iterator<Map.Entry<String, Record>> iterator = records.entrySet().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			Map.Entry<String, Record> eldest = iterator.next();
+			new File(directory, eldest.getKey()).delete();
+			iterator.remove();
+			size -= eldest.getValue().size;
+			redundantOpCount++;
+			appendJournal(REMOVE + ' ' + eldest.getKey());
+		}
+		compactIfNeeded();
+	}
+
+	/**
+	 * Reads the journal on first use, so making the cache costs no disk access.
+	 *
+	 * @return false if the directory is not usable.
+	 */
+	private boolean open() {
+		if (journalWriter != null) return true;
+
+		if (directory.isDirectory() == false && directory.mkdirs() == false) {
+			Log.w(TAG, "Failed to create " + directory);
+			return false;
+		}
+		File journal = new File(directory, JOURNAL);
+		if (journal.exists()) {
+			try {
+				readJournal(journal);
+			} catch (IOException e) {
+				Log.w(TAG, "Journal is corrupted, the cache is cleared. " + e);
+				records.clear();
+				size = 0;
+				redundantOpCount = REDUNDANT_OP_LIMIT;    // So that it is rebuilt below.
+			}
+			deleteUnknownFiles();
+		}
+		if (journal.exists() && redundantOpCount < REDUNDANT_OP_LIMIT) {
+			try {
+				journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), UTF_8));
+			} catch (IOException e) {
+				Log.w(TAG, e);
+				return false;
+			}
+		} else {
+			rebuildJournal();
+		}
+		return journalWriter != null;
+	}
+
+	/**
+	 * A crash in the middle of a flush can leave the last line cut. That line is dropped, the ones before it are kept,
+	 * and the journal is rebuilt. A bad line anywhere else means the journal can't be trusted.
+	 */
+	private void readJournal(File journal) throws IOException {
+		boolean terminated = endsWithNewline(journal);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+		try {
+			boolean torn = false;
+			int lineCount = 0;
+			String line = reader.readLine();
+			while (line != null) {
+				String next = reader.readLine();
+				lineCount++;
+				if (next == null && terminated == false) {
+					torn = true;    // Even if it parses, a number in it may be cut.
+				} else {
+					try {
+						readJournalLine(line);
+					} catch (IOException e) {
+						if (next != null) throw e;
+						torn = true;
+					}
+				}
+				line = next;
+			}
+			if (torn) {
+				Log.w(TAG, "The last journal line is torn, and dropped.");
+				redundantOpCount = REDUNDANT_OP_LIMIT;    // So that it is rebuilt without the line.
+			} else {
+				redundantOpCount = lineCount - records.size();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void readJournalLine(String line) throws IOException {
+		String[] parts = line.split(" ");
+		if (parts.length < 2) throw new IOException("Unexpected journal line: " + line);
+		String name = parts[1];
+		try {
+			if (CLEAN.equals(parts[0]) && parts.length == 4) {
+				long recordSize = Long.parseLong(parts[2]);
+				long expiresAt = Long.parseLong(parts[3]);
+				Record record = records.get(name);
+				if (record == null) {
+					record = new Record();
+					records.put(name, record);
+				} else {
+					size -= record.size;
+				}
+				record.size = recordSize;
+				record.expiresAt = expiresAt;
+				size += record.size;
+			} else if (READ.equals(parts[0]) && parts.length == 2) {
+				records.get(name);    // Only moves it to the end, as most recently used.
+			} else if (REMOVE.equals(parts[0]) && parts.length == 2) {
+				Record record = records.remove(name);
+				if (record != null) size -= record.size;
+			} else {
+				throw new IOException("Unexpected journal line: " + line);
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException(e.toString());
+		}
+	}
+
+	private static boolean endsWithNewline(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length == 0) return true;
+			raf.seek(length - 1);
+			return raf.read() == '\n';
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Deletes entry files the journal doesn't know, like the ones left by a crash while writing.
+	 */
+	private void deleteUnknownFiles() {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		for (File file : files) {
+			String name = file.getName();
+			if (JOURNAL.equals(name) == false && records.containsKey(name) == false) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Buffers the line, and flushes it after the disk work already asked. A line lost by a crash before that is harmless:
+	 * an unknown entry file is deleted on the next open, and a missing one is removed when it fails to be read.
+	 */
+	private void appendJournal(String line) {
+		try {
+			journalWriter.write(line);
+			journalWriter.write('\n');
+		} catch (IOException e) {
+			Log.w(TAG, e);
+		}
+		if (flushScheduled == false) {
+			flushScheduled = true;
+			diskExecutor.execute(flushTask);
+		}
+	}
+
+	synchronized void flushJournal() {
+		flushScheduled = false;
+		if (journalWriter == null) return;
+		try {
+			journalWriter.flush();
+		} catch (IOException e) {
+			Log.w(TAG, e);
+		}
+	}
+
+	private void compactIfNeeded() {
+		if (redundantOpCount >= REDUNDANT_OP_LIMIT && redundantOpCount >= records.size()) {
+			rebuildJournal();
+		}
+	}
+
+	/**
+	 * Writes only the current entries, in the order of use, and replaces the journal with it.
+	 */
+	private void rebuildJournal() {
+		if (journalWriter != null) {
+			try {
+				journalWriter.close();
+			} catch (IOException ignored) {
+			}
+			journalWriter = null;
+		}
+
+		File journal = new File(directory, JOURNAL);
+		File tmp = new File(directory, JOURNAL_TMP);
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), UTF_8));
+			try {
+				for (Map.Entry<String, Record> record : records.entrySet()) {
+					writer.write(record.getValue().toJournal(record.getKey()));
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+			if (tmp.renameTo(journal) == false) {
+				throw new IOException("Failed to rename " + tmp);
+			}
+			redundantOpCount = 0;
+			journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), UTF_8));
+		} catch (IOException e) {
+			Log.w(TAG, e);
+		}
+	}
+
+	/**
+	 * File format: the key, ETag and Last-Modified in a line each, then the body.
+	 */
+	static void writeEntry(File file, String key, Entry entry) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+		try {
+			writer.write(key);
+			writer.write('\n');
+			writer.write(entry.etag == null ? "" : entry.etag);
+			writer.write('\n');
+			writer.write(entry.lastModified == null ? "" : entry.lastModified);
+			writer.write('\n');
+			writer.write(entry.body);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return null if the file is of another key, whose name collides.
+	 */
+	static Entry readEntry(File file, String key, long expiresAt) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+		try {
+			if (key.equals(reader.readLine()) == false) return null;
+			String etag = reader.readLine();
+			String lastModified = reader.readLine();
+			if (lastModified == null) throw new IOException("Truncated entry: " + file);
+
+			StringWriter body = new StringWriter((int) file.length());
+			char[] buffer = new char[8192];
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				body.write(buffer, 0, count);
+			}
+			return new Entry(body.toString(), etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, expiresAt);
+		} finally {
+			reader.close();
+		}
+	}
+
+	static String nameOf(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+			StringBuilder name = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return name.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return String.valueOf(key.hashCode());
+		}
+	}
+
+	static final class Record {
+		long size;
+		long expiresAt;
+
+		String toJournal(String name) {
+			return CLEAN + ' ' + name + ' ' + size + ' ' + expiresAt;
+		}
+	}
+
+	public static final class Entry {
+		final String body;
+		final String etag;
+		final String lastModified;
+		/**
+		 * Until this time of {@link System#currentTimeMillis()}, the entry is used without asking the server.
+		 */
+		final long expiresAt;
+
+		public Entry(String body, String etag, String lastModified, long expiresAt) {
+			this.body = body;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.expiresAt = expiresAt;
+		}
+
+		/**
+		 * Takes the validators and the expiry from the headers of a response.
+		 * The expiry of Cache-Control or Expires comes first, and defaultTtl is for a response without them.
+		 *
+		 * @return null if the response must not be stored.
+		 */
+		static Entry of(HttpResponse response, String body, long defaultTtl) {
+			Map<String, String> headers = response.getHeaders();
+			String cacheControl = headers.get("Cache-Control");
+			if (cacheControl != null && cacheControl.contains("no-store")) return null;
+
+			Cache.Entry cacheHeaders = HttpHeaderParser.parseCacheHeaders(
+					new NetworkResponse(response.getStatusCode(), response.getBody(), headers, false));
+			long expiresAt;
+			if (cacheHeaders == null) {    // no-cache. Revalidated on every request.
+				expiresAt = 0;
+			} else if (cacheHeaders.softTtl != 0) {
+				expiresAt = cacheHeaders.softTtl;
+			} else {
+				expiresAt = System.currentTimeMillis() + defaultTtl;
+			}
+			return new Entry(body, headers.get("ETag"), headers.get("Last-Modified"), expiresAt);
+		}
+
+		Entry withBody(String body) {
+			return new Entry(body, etag, lastModified, expiresAt);
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public long getExpiresAt() {
+			return expiresAt;
+		}
+
+		public boolean isFresh() {
+			return System.currentTimeMillis() < expiresAt;
+		}
+	}
+}
@@ -7,25 +7,30 @@ import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-import com.android.volley.AuthFailureError;
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.RequestQueue;
 import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.RequestFuture;
+import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.Expose;
+import com.hovans.network.transport.HttpCall;
+import com.hovans.network.transport.HttpResponse;
+import com.hovans.network.transport.HttpTransport;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -48,17 +53,38 @@ public class HttpRequest {
 	@Expose
 	protected HashMap<String, String> params = new HashMap<>();
 
-	protected static RequestQueue queue;
+	protected static HttpTransport defaultTransport;
+	protected static HttpCache cache;
+	/**
+	 * Asynchronous GET requests on the network, by {@link #getFlightKey(int)}, with the requests waiting for the same response.
+	 */
+	static final HashMap<String, ArrayList<HttpRequest>> flights = new HashMap<>();
 
 	protected boolean synchronousMode, useCache, alreadySent;
 	protected String cachedResult;
+	/**
+	 * Default TTL of the cache, for a response without Cache-Control nor Expires. 0 to revalidate on every request.
+	 */
+	protected long cacheTtl;
+	protected String cacheKey;
+	protected HttpCache.Entry cacheEntry;
+	/**
+	 * Validators and expiry of the last response from the network, to store it into the cache.
+	 */
+	protected volatile HttpCache.Entry networkEntry;
+	/**
+	 * Key of the flight this leads. null if this doesn't lead one.
+	 */
+	protected String flightKey;
 
 	protected Activity activityForProgress;
 	protected ProgressDialog progressDialog;
 	protected NetResponseHandler callbackNetResponse;
 	protected StringResponseHandler callbackString;
 	protected ResponseHandler callbackObject;
+	protected StreamResponseHandler callbackStream;
 	protected Handler handler;
+	protected HttpTransport transport;
 
 	protected Class type;
 
@@ -78,6 +104,12 @@ public class HttpRequest {
 		request(StringRequest.Method.POST);
 	}
 
+	public <T> void post(Class<T> classOfT, final StreamResponseHandler<T> callback) {
+		type = classOfT;
+		this.callbackStream = callback;
+		request(StringRequest.Method.POST);
+	}
+
 	public <T> void get(Class<T> classOfT, final ResponseHandler<T> callback) {
 		type = classOfT;
 		this.callbackObject = callback;
@@ -94,6 +126,12 @@ public class HttpRequest {
 		request(StringRequest.Method.GET);
 	}
 
+	public <T> void get(Class<T> classOfT, final StreamResponseHandler<T> callback) {
+		type = classOfT;
+		this.callbackStream = callback;
+		request(StringRequest.Method.GET);
+	}
+
 	public <T> void put(Class<T> classOfT, final ResponseHandler<T> callback) {
 		type = classOfT;
 		this.callbackObject = callback;
@@ -110,6 +148,12 @@ public class HttpRequest {
 		request(StringRequest.Method.PUT);
 	}
 
+	public <T> void put(Class<T> classOfT, final StreamResponseHandler<T> callback) {
+		type = classOfT;
+		this.callbackStream = callback;
+		request(StringRequest.Method.PUT);
+	}
+
 	public <T> void delete(Class<T> classOfT, final ResponseHandler<T> callback) {
 		type = classOfT;
 		this.callbackObject = callback;
@@ -126,7 +170,13 @@ public class HttpRequest {
 		request(StringRequest.Method.DELETE);
 	}
 
-	private void request(int method) {
+	public <T> void delete(Class<T> classOfT, final StreamResponseHandler<T> callback) {
+		type = classOfT;
+		this.callbackStream = callback;
+		request(StringRequest.Method.DELETE);
+	}
+
+	private void request(final int method) {
 		if(activityForProgress != null) {
 			activityForProgress.runOnUiThread(new Runnable() {
 				@Override
@@ -141,54 +191,315 @@ public class HttpRequest {
 			});
 		}
 
-		if (useCache && getPreferences().contains(url.toString())) {
-			cachedResult = getPreferences().getString(url.toString(), null);
-			if (cachedResult != null) {
+		if (useCache && synchronousMode == false && Looper.myLooper() != null) {
+			handler = new Handler();
+			cache.execute(new Runnable() {    // The entry is read on the thread of the cache, and handled back on this thread.
+				@Override
+				public void run() {
+					final HttpCache.Entry entry = readCache(method);
+					post(new Runnable() {
+						@Override
+						public void run() {
+							request(method, entry);
+						}
+					});
+				}
+			});
+		} else {
+			request(method, useCache ? readCache(method) : null);
+		}
+	}
+
+	/**
+	 * Answers with the entry of the cache if there is one, then asks the network unless it is fresh.
+	 */
+	private void request(int method, HttpCache.Entry entry) {
+		if (entry != null) {
+			cacheEntry = entry;
+			cachedResult = entry.body;
+			if (callbackStream != null) {
+				handleStreamResponse(200, cachedResult);
+			} else {
 				handleResponse(200, cachedResult, null);
 			}
+			if (entry.isFresh()) {
+				return;
+			}
 		}
 
 		try {
 			if (synchronousMode == false && Looper.myLooper() != null) {
-				queue.add(getRequest(method, url, stringListener, errorListener));
-				handler = new Handler();
+				if (handler == null) {
+					handler = new Handler();
+				}
+				enqueue(method);
 			} else {
-				RequestFuture<String> future = RequestFuture.newFuture();
-				queue.add(getRequest(method, url, future, errorListener));
-				String result = future.get(REQUEST_TIMEOUT, TimeUnit.SECONDS);
-				stringListener.onResponse(result);
+				newCall(method, true).execute();
 			}
-		} catch (InterruptedException | ExecutionException | TimeoutException | UnsupportedEncodingException e) {
+		} catch (InterruptedException | TimeoutException | UnsupportedEncodingException e) {
 			Log.w(TAG, e);
-			errorListener.onErrorResponse(new VolleyError(e));
+			onFailure(-1, e);
+		}
+	}
+
+	/**
+	 * Sends this on the transport, unless it follows a request already on the network.
+	 */
+	void enqueue(int method) throws UnsupportedEncodingException {
+		if (joinFlight(method)) {
+			return;
+		}
+		try {
+			getTransport().enqueue(newCall(method, false));
+		} catch (RuntimeException e) {    // Nothing is on the network to land the flight. Fail it here, with the followers.
+			Log.w(TAG, e);
+			onFailure(-1, e);
+		}
+	}
+
+	/**
+	 * Shares the request on the network with the same key, instead of sending another one.
+	 * Only for asynchronous GET requests. A synchronous one always sends its own,
+	 * and so does any other method, as two of them are two changes on the server, not one.
+	 *
+	 * @return true if this follows a request already on the network, and will get its response.
+	 */
+	boolean joinFlight(int method) throws UnsupportedEncodingException {
+		if (method != StringRequest.Method.GET) return false;
+		String key = getFlightKey(method);
+		synchronized (flights) {
+			ArrayList<HttpRequest> followers = flights.get(key);
+			if (followers != null) {
+				followers.add(this);
+				return true;
+			}
+			flights.put(key, new ArrayList<HttpRequest>(0));
+			flightKey = key;
+			return false;
+		}
+	}
+
+	/**
+	 * Called by the leader of a flight, once it has the response.
+	 *
+	 * @return Requests which joined the flight. They get the same response.
+	 */
+	List<HttpRequest> landFlight() {
+		if (flightKey == null) return Collections.emptyList();
+		synchronized (flights) {
+			ArrayList<HttpRequest> followers = flights.remove(flightKey);
+			flightKey = null;
+			return followers != null ? followers : Collections.<HttpRequest>emptyList();
+		}
+	}
+
+	/**
+	 * Requests with the same key share a request on the network.
+	 * Caching ones share only with caching ones, as only the leader stores the response.
+	 * Streaming ones share the parsed result, so the type and the success key are also in the key.
+	 */
+	protected String getFlightKey(int method) throws UnsupportedEncodingException {
+		StringBuilder key = new StringBuilder(getCacheKey(method));
+		if (useCache) {
+			key.append(" cache");
 		}
+		if (callbackStream != null) {
+			key.append(' ').append(type.getName()).append(' ').append(getSuccessKey());
+		}
+		return key.toString();
+	}
+
+	void post(Runnable runnable) {
+		if (handler != null) {
+			handler.post(runnable);
+		} else {
+			runnable.run();
+		}
+	}
+
+	HttpTransport getTransport() {
+		if (transport == null) {
+			transport = getDefaultTransport(context);
+		}
+		return transport;
+	}
+
+	Call<?> newCall(int method, boolean synchronous) throws UnsupportedEncodingException {
+		if (callbackStream != null) {
+			@SuppressWarnings("unchecked")
+			final JsonStreamParser<Object> parser = new JsonStreamParser<>(gson, (Class<Object>) type, getSuccessKey(), useCache);
+			return new Call<JsonStreamParser.Parsed<Object>>(method, streamListener, synchronous) {
+				@Override
+				public JsonStreamParser.Parsed<Object> parseResponse(HttpResponse response) throws IOException {
+					if (isNotModified(response)) {
+						return parser.parse(cacheEntry.body);
+					}
+					keepCacheEntry(response);
+					return parser.parse(response);
+				}
+			};
+		}
+		return new Call<String>(method, stringListener, synchronous) {
+			@Override
+			public String parseResponse(HttpResponse response) throws UnsupportedEncodingException {
+				if (isNotModified(response)) {
+					return cacheEntry.body;
+				}
+				keepCacheEntry(response);
+				return new String(response.getBody(), HttpHeaderParser.parseCharset(response.getHeaders()));
+			}
+		};
 	}
 
-	StringRequest getRequest(int method, String url, Response.Listener<String> listener, Response.ErrorListener errorListener) throws UnsupportedEncodingException {
-		StringRequest stringRequest;
+	static String getMethodName(int method) {
 		switch (method) {
-			case StringRequest.Method.GET:
-				stringRequest = new StringRequest(method, url + "?" + getQuery(HttpRequest.this.getParams()), listener, errorListener);
-				break;
+			case StringRequest.Method.POST:
+				return HttpCall.POST;
+			case StringRequest.Method.PUT:
+				return HttpCall.PUT;
+			case StringRequest.Method.DELETE:
+				return HttpCall.DELETE;
 			default:
-				stringRequest = new StringRequest(method, url, listener, errorListener) {
-					@Override
-					protected Map<String, String> getParams() throws AuthFailureError {
-						return HttpRequest.this.getParams();
-					}
-				};
-				break;
+				return HttpCall.GET;
+		}
+	}
+
+	/**
+	 * This request on a transport. Delivers the result to the listener, or to the thread waiting for it in synchronous mode.
+	 */
+	abstract class Call<T> extends HttpCall<T> {
+		final Response.Listener<T> listener;
+		final CountDownLatch done;
+		T result;
+		boolean failed;
+		int failedStatusCode;
+		Throwable failure;
+
+		Call(int method, Response.Listener<T> listener, boolean synchronous) throws UnsupportedEncodingException {
+			super(getMethodName(method), method == StringRequest.Method.GET ? url + "?" + getQuery(getParams()) : url);
+			this.listener = listener;
+			this.done = synchronous ? new CountDownLatch(1) : null;
+
+			setHeaders(getCacheHeaders(Collections.<String, String>emptyMap()));
+			Map<String, String> params = getParams();
+			if (method != StringRequest.Method.GET && params != null && params.isEmpty() == false) {
+				setBody(getQuery(params).getBytes("UTF-8"), "application/x-www-form-urlencoded; charset=UTF-8");
+			}
+			setRetryPolicy(TIMEOUT, DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF_MULTIPLIER);
+			if (useCache) {
+				setShouldCache(false);    // HttpCache keeps the response, and revalidates it by itself.
+			}
 		}
 
-		stringRequest.setRetryPolicy(new DefaultRetryPolicy(
-				TIMEOUT,
-				DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
-				DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
-		return stringRequest;
+		@Override
+		public void deliverResponse(T result) {
+			if (done != null) {
+				this.result = result;
+				done.countDown();
+			} else {
+				listener.onResponse(result);
+			}
+		}
+
+		@Override
+		public void deliverFailure(int statusCode, Throwable cause) {
+			if (done != null) {
+				failed = true;
+				failedStatusCode = statusCode;
+				failure = cause;
+				done.countDown();
+			} else {
+				onFailure(statusCode, cause);
+			}
+		}
+
+		/**
+		 * Sends this, and waits for the result. It is delivered on the calling thread.
+		 */
+		void execute() throws InterruptedException, TimeoutException {
+			getTransport().enqueue(this);
+			if (done.await(REQUEST_TIMEOUT, TimeUnit.SECONDS) == false) {
+				throw new TimeoutException("No response in " + REQUEST_TIMEOUT + " seconds");
+			}
+			if (failed) {
+				onFailure(failedStatusCode, failure);
+			} else {
+				listener.onResponse(result);
+			}
+		}
+	}
+
+	/**
+	 * Key of the cache. Parameters are sorted, so the order they are added doesn't make another entry.
+	 */
+	protected String getCacheKey(int method) throws UnsupportedEncodingException {
+		return method + " " + url + "?" + getQuery(new TreeMap<>(getParams()));
+	}
+
+	HttpCache.Entry readCache(int method) {
+		try {
+			cacheKey = getCacheKey(method);
+		} catch (UnsupportedEncodingException e) {
+			Log.w(TAG, e);
+			return null;
+		}
+		return cache.get(cacheKey);
+	}
+
+	void writeCache(String responseString) {
+		HttpCache.Entry entry = networkEntry;
+		networkEntry = null;
+		if (entry == null || cacheKey == null) return;
+
+		if (cacheEntry != null && responseString.equals(cacheEntry.body)
+				&& equals(entry.etag, cacheEntry.etag) && equals(entry.lastModified, cacheEntry.lastModified)) {
+			cache.touch(cacheKey, entry.expiresAt);
+		} else {
+			cache.put(cacheKey, entry.withBody(responseString));
+		}
+	}
+
+	/**
+	 * Makes the request conditional, if there is an entry to revalidate.
+	 */
+	Map<String, String> getCacheHeaders(Map<String, String> headers) {
+		HttpCache.Entry entry = cacheEntry;
+		if (entry == null || (entry.etag == null && entry.lastModified == null)) return headers;
+
+		Map<String, String> conditionalHeaders = new HashMap<>(headers);
+		if (entry.etag != null) conditionalHeaders.put("If-None-Match", entry.etag);
+		if (entry.lastModified != null) conditionalHeaders.put("If-Modified-Since", entry.lastModified);
+		return conditionalHeaders;
+	}
+
+	/**
+	 * Called on the network thread. A response of 304 Not Modified is answered with the body in the cache.
+	 */
+	boolean isNotModified(HttpResponse response) {
+		HttpCache.Entry entry = cacheEntry;
+		if (entry == null || response.getStatusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) return false;
+
+		HttpCache.Entry renewed = HttpCache.Entry.of(response, null, cacheTtl);
+		if (renewed != null) {
+			networkEntry = new HttpCache.Entry(null,
+					renewed.etag != null ? renewed.etag : entry.etag,
+					renewed.lastModified != null ? renewed.lastModified : entry.lastModified,
+					renewed.expiresAt);
+		}
+		return true;
+	}
+
+	/**
+	 * Called on the network thread.
+	 */
+	void keepCacheEntry(HttpResponse response) {
+		if (useCache) {
+			networkEntry = HttpCache.Entry.of(response, null, cacheTtl);
+		}
 	}
 
-	SharedPreferences getPreferences() {
-		return context.getSharedPreferences(TAG, Context.MODE_PRIVATE);
+	static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
 	protected String getSuccessKey() {
@@ -202,30 +513,63 @@ public class HttpRequest {
 	Response.Listener<String> stringListener = new Response.Listener<String>() {
 		@Override
 		public void onResponse(final String response) {
-			if (handler != null) {
-				handler.post(new Runnable() {
+			post(new Runnable() {
+				@Override
+				public void run() {
+					handleResponse(RESPONSE_OK, response, null);
+				}
+			});
+			for (final HttpRequest follower : landFlight()) {
+				follower.post(new Runnable() {
 					@Override
 					public void run() {
-						handleResponse(RESPONSE_OK, response, null);
+						follower.handleResponse(RESPONSE_OK, response, null);
 					}
 				});
-			} else {
-				handleResponse(RESPONSE_OK, response, null);
 			}
 		}
 	};
 
-	Response.ErrorListener errorListener = new Response.ErrorListener() {
+	Response.Listener<JsonStreamParser.Parsed<Object>> streamListener = new Response.Listener<JsonStreamParser.Parsed<Object>>() {
 		@Override
-		public void onErrorResponse(VolleyError error) {
-			int statusCode = -1;
-			if (error.networkResponse != null) {
-				statusCode = error.networkResponse.statusCode;
+		public void onResponse(final JsonStreamParser.Parsed<Object> response) {
+			post(new Runnable() {
+				@Override
+				public void run() {
+					handleParsedResponse(RESPONSE_OK, response);
+				}
+			});
+			for (final HttpRequest follower : landFlight()) {
+				follower.post(new Runnable() {
+					@Override
+					public void run() {
+						follower.handleParsedResponse(RESPONSE_OK, response);
+					}
+				});
 			}
-			handleResponse(statusCode, null, error.getCause());
 		}
 	};
 
+	/**
+	 * Called on the network thread, or on the thread of the request.
+	 */
+	void onFailure(final int statusCode, final Throwable cause) {
+		post(new Runnable() {
+			@Override
+			public void run() {
+				handleResponse(statusCode, null, cause);
+			}
+		});
+		for (final HttpRequest follower : landFlight()) {
+			follower.post(new Runnable() {
+				@Override
+				public void run() {
+					follower.handleResponse(statusCode, null, cause);
+				}
+			});
+		}
+	}
+
 	DefaultHttpResponse getDefaultResponseFrom(String responseString) throws JSONException {
 		JSONObject jsonObject = new JSONObject(responseString);
 		final String successKey = getSuccessKey();
@@ -249,8 +593,8 @@ public class HttpRequest {
 					if (response.code != 0) {
 						handleFailResponse(statusCode, response, e);
 					} else {
-						if (alreadySent && useCache) {
-							getPreferences().edit().putString(url, responseString).apply();
+						if (useCache) {
+							writeCache(responseString);
 						}
 						if (cachedResult == null || cachedResult.equals(responseString) == false) {
 							handleSuccessResponse(statusCode, response);
@@ -272,6 +616,40 @@ public class HttpRequest {
 		alreadySent = true;
 	}
 
+	@SuppressWarnings("unchecked")
+	void handleStreamResponse(int statusCode, String responseString) {
+		JsonStreamParser.Parsed<Object> parsed;
+		try {
+			parsed = JsonStreamParser.parse(gson, new StringReader(responseString), (Class<Object>) type, getSuccessKey(), responseString);
+		} catch (Exception ex) {
+			closeDialogIfItNeeds();
+			handleFailResponse(statusCode, null, ex);
+			alreadySent = true;
+			return;
+		}
+		handleParsedResponse(statusCode, parsed);
+	}
+
+	@SuppressWarnings("unchecked")
+	void handleParsedResponse(int statusCode, JsonStreamParser.Parsed<Object> parsed) {
+		closeDialogIfItNeeds();
+		try {
+			if (parsed.response.code != 0) {
+				handleFailResponse(statusCode, parsed.response, null);
+			} else {
+				if (useCache && parsed.body != null) {
+					writeCache(parsed.body);
+				}
+				if (cachedResult == null || cachedResult.equals(parsed.body) == false) {
+					callbackStream.onSuccess(statusCode, parsed.result);
+				}
+			}
+		} catch (Exception ex) {
+			handleFailResponse(statusCode, null, ex);
+		}
+		alreadySent = true;
+	}
+
 	protected void handleSuccessResponse(int statusCode, DefaultHttpResponse response) {
 		if(callbackString != null) {
 			callbackString.onSuccess(statusCode, response.result);
@@ -290,6 +668,8 @@ public class HttpRequest {
 			callbackObject.onFail(statusCode, httpResponse, e);
 		} else if (callbackNetResponse != null) {
 			callbackNetResponse.onResponse(statusCode, httpResponse);
+		} else if (callbackStream != null) {
+			callbackStream.onFail(statusCode, httpResponse, e);
 		}
 	}
 
@@ -342,6 +722,32 @@ public class HttpRequest {
 		void onFail(int statusCode, DefaultHttpResponse response, Throwable e);
 	}
 
+	/**
+	 * Gets {@code result} bound into the type, without the body as a String.
+	 * The response is parsed once, while it is read, on the network thread.
+	 * So it costs much less memory and time than {@link ResponseHandler} for large responses.
+	 * Requests sharing a response on the network also share the result instance.
+	 */
+	public interface StreamResponseHandler<T> {
+		void onSuccess(int statusCode, T result);
+
+		void onFail(int statusCode, DefaultHttpResponse response, Throwable e);
+	}
+
+	/**
+	 * Sets the transport of requests, which don't set their own. {@link VolleyTransport} if it isn't set.
+	 */
+	public static synchronized void setDefaultTransport(HttpTransport transport) {
+		defaultTransport = transport;
+	}
+
+	static synchronized HttpTransport getDefaultTransport(Context context) {
+		if (defaultTransport == null) {
+			defaultTransport = new VolleyTransport(context);
+		}
+		return defaultTransport;
+	}
+
 	final Context context;
 
 	protected HttpRequest(Context context) {
@@ -354,9 +760,13 @@ public class HttpRequest {
 		public Builder(Context context) {
 			httpTask = new HttpRequest(context);
 
-			if (queue == null) {
-				queue = Volley.newRequestQueue(context);
-				queue.start();
+			if (cache == null) {
+				cache = HttpCache.getInstance(context);
+				// Responses were kept in the preferences before HttpCache.
+				SharedPreferences preferences = context.getSharedPreferences(TAG, Context.MODE_PRIVATE);
+				if (preferences.getAll().isEmpty() == false) {
+					preferences.edit().clear().apply();
+				}
 			}
 		}
 
@@ -385,12 +795,29 @@ public class HttpRequest {
 			return this;
 		}
 
+		/**
+		 * @param ttl Time to use the cached response without asking the server, if the server doesn't tell it.
+		 *            Cache-Control or Expires of the response comes first.
+		 */
+		public Builder setCacheTtl(long ttl, TimeUnit unit) {
+			httpTask.cacheTtl = unit.toMillis(ttl);
+			return this;
+		}
+
 		public Builder showProgress(Activity activity, String waitString) {
 			httpTask.activityForProgress = activity;
 			httpTask.waitString = waitString;
 			return this;
 		}
 
+		/**
+		 * @param transport Sends this request, instead of {@link HttpRequest#setDefaultTransport(HttpTransport)}.
+		 */
+		public Builder setTransport(HttpTransport transport) {
+			httpTask.transport = transport;
+			return this;
+		}
+
 		public Builder setSyncMode(boolean synchronousMode) {
 			httpTask.synchronousMode = Looper.myLooper() == null || synchronousMode;
 			return this;
@@ -0,0 +1,112 @@
+package com.hovans.network;
+
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.hovans.network.transport.HttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * JsonStreamParser.java
+ * <p>
+ * Reads the response body once with a Gson {@link JsonReader}, on a thread of the transport.
+ * {@code code} and {@code message} go to a {@link DefaultHttpResponse}, and {@code result} is bound straight into the type,
+ * without making the body, nor the result, a String.
+ *
+ * @author Ben Yoo
+ */
+class JsonStreamParser<T> {
+
+	static final String DEFAULT_CHARSET = "UTF-8";
+
+	private final Gson gson;
+	private final Class<T> type;
+	private final String successKey;
+	private final boolean keepBody;
+
+	/**
+	 * @param keepBody If true, the body is also kept as a String in {@link Parsed#body}, for the cache.
+	 */
+	JsonStreamParser(Gson gson, Class<T> type, String successKey, boolean keepBody) {
+		this.gson = gson;
+		this.type = type;
+		this.successKey = successKey;
+		this.keepBody = keepBody;
+	}
+
+	Parsed<T> parse(HttpResponse response) throws IOException {
+		// JSON has no charset parameter of its own, and it is UTF-8 unless the server says so.
+		String charset = HttpHeaderParser.parseCharset(response.getHeaders(), DEFAULT_CHARSET);
+		if (keepBody) {
+			return parse(new String(response.getBody(), charset));
+		}
+		return parse(gson, new InputStreamReader(new ByteArrayInputStream(response.getBody()), charset), type, successKey, null);
+	}
+
+	/**
+	 * Parses a body already read, like the one from the cache.
+	 */
+	Parsed<T> parse(String body) throws IOException {
+		return parse(gson, new StringReader(body), type, successKey, body);
+	}
+
+	/**
+	 * Binds a response like {@code {"code":0, "message":null, "result":{...}}}.
+	 * If {@code result} is a String holding JSON, the String is parsed into the type, as {@link HttpRequest} did with it.
+	 *
+	 * @param body Body to keep in the result. Nullable.
+	 */
+	static <T> Parsed<T> parse(Gson gson, Reader in, Class<T> type, String successKey, String body) throws IOException {
+		DefaultHttpResponse response = new DefaultHttpResponse();
+		response.code = DefaultHttpResponse.RES_TIMEOUT;
+		T result = null;
+
+		JsonReader reader = new JsonReader(in);
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (reader.peek() == JsonToken.NULL) {
+					reader.nextNull();
+				} else if (name.equals(successKey)) {
+					response.code = reader.nextInt();
+				} else if ("message".equals(name)) {
+					response.message = reader.nextString();
+				} else if ("result".equals(name)) {
+					if (reader.peek() == JsonToken.STRING && type != String.class) {
+						result = gson.fromJson(reader.nextString(), type);
+					} else {
+						result = gson.fromJson(reader, type);
+					}
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} finally {
+			reader.close();
+		}
+		return new Parsed<>(response, result, body);
+	}
+
+	static final class Parsed<T> {
+		final DefaultHttpResponse response;
+		final T result;
+		/**
+		 * Whole body, only if it was asked to keep.
+		 */
+		final String body;
+
+		Parsed(DefaultHttpResponse response, T result, String body) {
+			this.response = response;
+			this.result = result;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package com.hovans.network;
+
+import android.content.Context;
+import com.android.volley.AuthFailureError;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.Volley;
+import com.hovans.network.transport.CallMetrics;
+import com.hovans.network.transport.HttpCall;
+import com.hovans.network.transport.HttpResponse;
+import com.hovans.network.transport.HttpTransport;
+import com.hovans.network.transport.UrlConnectionMeter;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * VolleyTransport.java
+ * <p>
+ * Default {@link HttpTransport} on Android. Sends calls on a Volley {@link RequestQueue}, and delivers them on the main thread.
+ * The phases of every call, TLS included, can be watched with {@link #setMetricsListener(CallMetrics.Listener)},
+ * if the queue sends them with {@link #newHttpStack()}, as the one made from a {@link Context} does.
+ *
+ * @author Ben Yoo
+ */
+public class VolleyTransport implements HttpTransport {
+
+	final RequestQueue queue;
+	volatile CallMetrics.Listener metricsListener;
+
+	public VolleyTransport(Context context) {
+		this(Volley.newRequestQueue(context, newHttpStack()));
+		queue.start();
+	}
+
+	public VolleyTransport(RequestQueue queue) {
+		this.queue = queue;
+	}
+
+	public RequestQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * @return The stack of {@link HttpsURLConnection}, which measures the calls of this transport, for a queue made elsewhere.
+	 */
+	public static BaseHttpStack newHttpStack() {
+		return new MeasuredStack();
+	}
+
+	/**
+	 * @param listener Called on the main thread, right before each call is delivered. null to stop.
+	 */
+	public void setMetricsListener(CallMetrics.Listener listener) {
+		metricsListener = listener;
+	}
+
+	@Override
+	public void enqueue(HttpCall<?> call) {
+		queue.add(toRequest(call));
+	}
+
+	<T> Request<T> toRequest(HttpCall<T> call) {
+		return new CallRequest<>(this, call);
+	}
+
+	static int methodOf(String method) {
+		switch (method) {
+			case HttpCall.GET:
+				return Request.Method.GET;
+			case HttpCall.POST:
+				return Request.Method.POST;
+			case HttpCall.PUT:
+				return Request.Method.PUT;
+			case HttpCall.DELETE:
+				return Request.Method.DELETE;
+			default:
+				throw new IllegalArgumentException("Unsupported method: " + method);
+		}
+	}
+
+	static final class CallRequest<T> extends Request<T> {
+
+		final VolleyTransport transport;
+		final HttpCall<T> call;
+		final UrlConnectionMeter meter = new UrlConnectionMeter();
+		/**
+		 * Of the response parsed, which may have come from the cache of Volley, with no attempt.
+		 */
+		int statusCode = -1;
+
+		CallRequest(VolleyTransport transport, HttpCall<T> call) {
+			super(methodOf(call.getMethod()), call.getUrl(), null);
+			this.transport = transport;
+			this.call = call;
+			setRetryPolicy(new DefaultRetryPolicy(call.getTimeoutMs(), call.getMaxRetries(), call.getBackoffMultiplier()));
+			setShouldCache(call.shouldCache());
+		}
+
+		@Override
+		public Map<String, String> getHeaders() throws AuthFailureError {
+			return call.getHeaders();
+		}
+
+		@Override
+		public byte[] getBody() throws AuthFailureError {
+			return call.getBody();
+		}
+
+		@Override
+		public String getBodyContentType() {
+			return call.getBodyContentType() != null ? call.getBodyContentType() : super.getBodyContentType();
+		}
+
+		@Override
+		protected Response<T> parseNetworkResponse(NetworkResponse response) {
+			statusCode = response.statusCode;
+			try {
+				return Response.success(call.parseResponse(new HttpResponse(response.statusCode, response.headers, response.data)), null);
+			} catch (Exception e) {
+				return Response.error(new ParseError(e));
+			}
+		}
+
+		@Override
+		protected void deliverResponse(T response) {
+			report(statusCode);
+			call.deliverResponse(response);
+		}
+
+		@Override
+		public void deliverError(VolleyError error) {
+			int statusCode = -1;
+			if (error.networkResponse != null) {
+				statusCode = error.networkResponse.statusCode;
+			}
+			report(statusCode);
+			call.deliverFailure(statusCode, error.getCause());
+		}
+
+		private void report(int statusCode) {
+			meter.end(statusCode);
+			CallMetrics.Listener listener = transport.metricsListener;
+			if (listener == null) return;
+			try {
+				listener.onCallEnd(call, meter.getMetrics());
+			} catch (RuntimeException e) {
+				Thread thread = Thread.currentThread();
+				Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+				if (handler != null) {
+					handler.uncaughtException(thread, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Measures the attempts of {@link CallRequest}s, and sends others as they are.
+	 */
+	static final class MeasuredStack extends HurlStack {
+
+		MeasuredStack() {
+			super(null, UrlConnectionMeter.measureHandshakes(HttpsURLConnection.getDefaultSSLSocketFactory()));
+		}
+
+		@Override
+		public com.android.volley.toolbox.HttpResponse executeRequest(Request<?> request, Map<String, String> additionalHeaders)
+				throws IOException, AuthFailureError {
+			if (request instanceof CallRequest == false) {
+				return super.executeRequest(request, additionalHeaders);
+			}
+			HttpCall<?> call = ((CallRequest<?>) request).call;
+			UrlConnectionMeter meter = ((CallRequest<?>) request).meter;
+			meter.startAttempt(request.getUrl().regionMatches(true, 0, "https:", 0, 6), call.getBody() != null ? call.getBody().length : 0);
+			com.android.volley.toolbox.HttpResponse response;
+			try {
+				response = super.executeRequest(request, additionalHeaders);
+			} catch (IOException | AuthFailureError | RuntimeException e) {
+				meter.endAttempt();
+				throw e;
+			}
+			meter.onHeaders(response.getStatusCode());
+			if (response.getContent() == null) {
+				meter.endAttempt();
+				return response;
+			}
+			return new com.android.volley.toolbox.HttpResponse(response.getStatusCode(), response.getHeaders(),
+					response.getContentLength(), meter.measureBody(response.getContent()));
+		}
+	}
+}
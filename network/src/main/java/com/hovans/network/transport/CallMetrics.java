@@ -0,0 +1,138 @@
+package com.hovans.network.transport;
+
+import java.util.Locale;
+
+/**
+ * CallMetrics.java
+ * <p>
+ * Where the time of a {@link HttpCall} went, measured by its {@link HttpTransport}.
+ * The phases are of the last attempt, as a retry starts them over. {@link #getTotalNanos()} covers every attempt.
+ * A phase which did not happen, like DNS and connect on a reused connection, or one the transport can't measure, is {@link #NONE}.
+ * <p>
+ * {@link NioTransport} measures every phase, of plain http only.
+ * A transport on {@link java.net.HttpURLConnection}, like the default VolleyTransport, measures with {@link UrlConnectionMeter}.
+ * The connection doesn't tell its DNS lookup from its TCP handshake, so they are both in {@link #getConnectNanos()},
+ * and both are known only for https, where a new connection is seen as it starts TLS.
+ *
+ * @author Ben Yoo
+ */
+public final class CallMetrics {
+
+	public static final long NONE = -1;
+
+	long queueNanos, dnsNanos, connectNanos, tlsNanos, ttfbNanos, transferNanos;
+	long totalNanos;
+	boolean connectionReused;
+	int attempts;
+	int statusCode = -1;
+	long requestBytes, responseBytes;
+
+	CallMetrics() {
+		resetPhases();
+	}
+
+	void resetPhases() {
+		queueNanos = dnsNanos = connectNanos = tlsNanos = ttfbNanos = transferNanos = NONE;
+		connectionReused = false;
+		requestBytes = responseBytes = 0;
+	}
+
+	/**
+	 * @return Time waiting for a connection, while the route had as many as it can have.
+	 */
+	public long getQueueNanos() {
+		return queueNanos;
+	}
+
+	public long getDnsNanos() {
+		return dnsNanos;
+	}
+
+	/**
+	 * @return Time of the TCP handshake. With the DNS lookup, if it is measured by {@link UrlConnectionMeter}.
+	 */
+	public long getConnectNanos() {
+		return connectNanos;
+	}
+
+	/**
+	 * @return Time of the TLS handshake.
+	 */
+	public long getTlsNanos() {
+		return tlsNanos;
+	}
+
+	/**
+	 * @return Time from the start of writing the request to the first byte of the response.
+	 */
+	public long getTtfbNanos() {
+		return ttfbNanos;
+	}
+
+	/**
+	 * @return Time from the first byte of the response to the last.
+	 */
+	public long getTransferNanos() {
+		return transferNanos;
+	}
+
+	/**
+	 * @return Time from the enqueue to the end of the call.
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return true if the last attempt was sent on a kept-alive connection, with no handshake.
+	 * Always false for http by {@link UrlConnectionMeter}, which can't tell.
+	 */
+	public boolean isConnectionReused() {
+		return connectionReused;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return -1 if there was no response.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * @return Bytes of the response as received, with the status line and headers.
+	 * Only of the body by {@link UrlConnectionMeter}, as the connection reads the rest.
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "status=%d attempts=%d reused=%b queue=%s dns=%s connect=%s tls=%s ttfb=%s transfer=%s total=%s sent=%d received=%d",
+				statusCode, attempts, connectionReused, millis(queueNanos), millis(dnsNanos), millis(connectNanos), millis(tlsNanos),
+				millis(ttfbNanos), millis(transferNanos), millis(totalNanos), requestBytes, responseBytes);
+	}
+
+	static String millis(long nanos) {
+		return nanos == NONE ? "-" : String.format(Locale.US, "%.3fms", nanos / 1e6);
+	}
+
+	/**
+	 * Receives the metrics of every call of a transport.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called right before the call is delivered, on the thread which delivers it. So it must return quickly.
+		 */
+		void onCallEnd(HttpCall<?> call, CallMetrics metrics);
+	}
+}
@@ -0,0 +1,278 @@
+package com.hovans.network.transport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionPool.java
+ * <p>
+ * Connections of a {@link NioTransport}, by route, that is a host and a port.
+ * At most {@link #getMaxConnectionsPerRoute()} connections are open to a route, and more calls to it wait for one of them, in order.
+ * A connection is kept alive after a response, and closed once it has been idle for the keep-alive duration,
+ * or for the timeout in the Keep-Alive header of the server, if that is shorter.
+ * <p>
+ * A pool belongs to one transport, and is used only on its selector thread. The counters can be read on any thread.
+ *
+ * @author Ben Yoo
+ */
+public final class ConnectionPool {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+	public static final long DEFAULT_KEEP_ALIVE_MS = 5 * 60 * 1000L;
+
+	private final int maxConnectionsPerRoute;
+	private final long keepAliveMs;
+	private NioTransport owner;
+
+	// Below are used only on the selector thread.
+	private final HashMap<String, Route> routes = new HashMap<>();
+	/**
+	 * Routes which got a connection back, or room for a new one, so a waiting call may go.
+	 */
+	private final ArrayList<Route> released = new ArrayList<>();
+	/**
+	 * In {@link System#nanoTime()}. Meaningful only while there is an idle connection.
+	 */
+	private long nextEvictionAt;
+
+	// Written only on the selector thread.
+	private volatile int connectionCount, idleConnectionCount, waitingCount;
+	private volatile long openedCount, reusedCount, evictedCount;
+
+	public ConnectionPool() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+	}
+
+	public ConnectionPool(int maxConnectionsPerRoute, long keepAlive, TimeUnit unit) {
+		if (maxConnectionsPerRoute <= 0) throw new IllegalArgumentException("maxConnectionsPerRoute <= 0: " + maxConnectionsPerRoute);
+		if (keepAlive < 0) throw new IllegalArgumentException("keepAlive < 0: " + keepAlive);
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.keepAliveMs = unit.toMillis(keepAlive);
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public long getKeepAliveMs() {
+		return keepAliveMs;
+	}
+
+	/**
+	 * @return Connections open or opening now, busy or idle.
+	 */
+	public int getConnectionCount() {
+		return connectionCount;
+	}
+
+	public int getIdleConnectionCount() {
+		return idleConnectionCount;
+	}
+
+	/**
+	 * @return Calls waiting now, for their routes to have a connection.
+	 */
+	public int getWaitingCount() {
+		return waitingCount;
+	}
+
+	/**
+	 * @return Connections opened so far. Each one cost a handshake.
+	 */
+	public long getOpenedCount() {
+		return openedCount;
+	}
+
+	/**
+	 * @return Attempts sent on a kept-alive connection so far, without a handshake.
+	 */
+	public long getReusedCount() {
+		return reusedCount;
+	}
+
+	/**
+	 * @return Connections closed so far, as they were idle for too long.
+	 */
+	public long getEvictedCount() {
+		return evictedCount;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool{connections=" + connectionCount + ", idle=" + idleConnectionCount + ", waiting=" + waitingCount
+				+ ", opened=" + openedCount + ", reused=" + reusedCount + ", evicted=" + evictedCount + "}";
+	}
+
+	synchronized void attach(NioTransport transport) {
+		if (owner != null) throw new IllegalStateException("ConnectionPool belongs to another NioTransport");
+		owner = transport;
+	}
+
+	boolean hasWaiters(String name) {
+		Route route = routes.get(name);
+		return route != null && route.waiters.isEmpty() == false;
+	}
+
+	/**
+	 * @param first true to put it before the others, as it was waiting already.
+	 */
+	void addWaiter(NioTransport.Exchange exchange, boolean first) {
+		Route route = getRoute(exchange.route);
+		if (first) {
+			route.waiters.addFirst(exchange);
+		} else {
+			route.waiters.addLast(exchange);
+		}
+		waitingCount++;
+	}
+
+	/**
+	 * @return A call which can have a connection now, or null.
+	 */
+	NioTransport.Exchange pollWaiter() {
+		while (released.isEmpty() == false) {
+			Route route = released.get(released.size() - 1);
+			if (route.waiters.isEmpty() == false && (route.idle.isEmpty() == false || route.allocated < maxConnectionsPerRoute)) {
+				waitingCount--;
+				return route.waiters.pollFirst();
+			}
+			released.remove(released.size() - 1);
+			route.released = false;
+			if (route.allocated == 0 && route.waiters.isEmpty()) {
+				routes.remove(route.name);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return A kept-alive connection to the route, or null.
+	 */
+	NioTransport.Connection pollIdle(String name) {
+		Route route = routes.get(name);
+		if (route == null) return null;
+		NioTransport.Connection connection;
+		while ((connection = route.idle.pollLast()) != null) {    // The most recent one is least likely to be closed by the server.
+			connection.idle = false;
+			idleConnectionCount--;
+			if (connection.isOpen()) {
+				reusedCount++;
+				return connection;
+			}
+			connection.close();
+		}
+		return null;
+	}
+
+	boolean canOpen(String name) {
+		Route route = routes.get(name);
+		return route == null || route.allocated < maxConnectionsPerRoute;
+	}
+
+	/**
+	 * Counts a new connection to its route, from before its host is resolved.
+	 */
+	void onOpen(NioTransport.Connection connection) {
+		getRoute(connection.route).allocated++;
+		connectionCount++;
+		openedCount++;
+	}
+
+	/**
+	 * @param now         {@link System#nanoTime()}.
+	 * @param keepAliveMs Timeout the server gives, or -1 if it gives none.
+	 */
+	void offerIdle(NioTransport.Connection connection, long now, long keepAliveMs) {
+		long duration = keepAliveMs >= 0 ? Math.min(keepAliveMs, this.keepAliveMs) : this.keepAliveMs;
+		connection.idle = true;
+		connection.keepAliveUntil = now + TimeUnit.MILLISECONDS.toNanos(duration);
+		Route route = getRoute(connection.route);
+		if (idleConnectionCount == 0 || connection.keepAliveUntil - nextEvictionAt < 0) {
+			nextEvictionAt = connection.keepAliveUntil;
+		}
+		route.idle.addLast(connection);
+		idleConnectionCount++;
+		markReleased(route);
+	}
+
+	void onClose(NioTransport.Connection connection) {
+		Route route = routes.get(connection.route);
+		if (connection.idle) {
+			connection.idle = false;
+			route.idle.remove(connection);
+			idleConnectionCount--;
+		}
+		route.allocated--;
+		connectionCount--;
+		markReleased(route);
+	}
+
+	/**
+	 * @param now {@link System#nanoTime()}.
+	 * @return Nanoseconds until an idle connection should be closed, or {@link Long#MAX_VALUE} if there is none.
+	 */
+	long nanosUntilEviction(long now) {
+		if (idleConnectionCount == 0) return Long.MAX_VALUE;
+		return Math.max(0, nextEvictionAt - now);
+	}
+
+	/**
+	 * Closes the connections idle for too long.
+	 *
+	 * @param now {@link System#nanoTime()}.
+	 */
+	void evictIdle(long now) {
+		if (idleConnectionCount == 0 || now - nextEvictionAt < 0) return;
+		ArrayList<NioTransport.Connection> expired = new ArrayList<>();
+		boolean found = false;
+		long next = 0;
+		for (Route route : routes.values()) {
+			for (NioTransport.Connection connection : route.idle) {
+				if (connection.keepAliveUntil - now <= 0) {
+					expired.add(connection);
+				} else if (found == false || connection.keepAliveUntil - next < 0) {
+					found = true;
+					next = connection.keepAliveUntil;
+				}
+			}
+		}
+		nextEvictionAt = next;
+		for (NioTransport.Connection connection : expired) {
+			evictedCount++;
+			connection.close();
+		}
+	}
+
+	private Route getRoute(String name) {
+		Route route = routes.get(name);
+		if (route == null) {
+			route = new Route(name);
+			routes.put(name, route);
+		}
+		return route;
+	}
+
+	private void markReleased(Route route) {
+		if (route.released == false) {
+			route.released = true;
+			released.add(route);
+		}
+	}
+
+	static final class Route {
+		final String name;
+		final ArrayDeque<NioTransport.Connection> idle = new ArrayDeque<>();
+		final ArrayDeque<NioTransport.Exchange> waiters = new ArrayDeque<>();
+		/**
+		 * Connections open or opening, busy or idle.
+		 */
+		int allocated;
+		boolean released;
+
+		Route(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package com.hovans.network.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Http1ResponseParser.java
+ * <p>
+ * Reads a HTTP/1.1 response incrementally, as bytes arrive on a non-blocking channel.
+ * The body is framed by Content-Length, by chunked encoding, or by the end of the stream.
+ *
+ * @author Ben Yoo
+ */
+final class Http1ResponseParser {
+
+	static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	/**
+	 * A body is allocated up to this size by its Content-Length, and grows as its bytes arrive beyond.
+	 * So a header alone can't make the client allocate a large buffer.
+	 */
+	static final int MAX_INITIAL_BODY_SIZE = 64 * 1024;
+
+	private static final int STATUS_LINE = 0, HEADERS = 1, BODY_LENGTH = 2, CHUNK_SIZE = 3, CHUNK_DATA = 4, CHUNK_END = 5, TRAILERS = 6,
+			BODY_EOF = 7, DONE = 8;
+
+	private final boolean headRequest;
+	private final StringBuilder line = new StringBuilder(128);
+	private int state = STATUS_LINE;
+	private boolean started;
+
+	private int statusCode;
+	private boolean http11;
+	private TreeMap<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	private boolean keepAlive;
+	private long keepAliveTimeoutMs = -1;
+	private long remaining;
+	private byte[] body = HttpResponse.EMPTY_BODY;
+	private int bodySize;
+
+	Http1ResponseParser(boolean headRequest) {
+		this.headRequest = headRequest;
+	}
+
+	/**
+	 * Consumes bytes of this response only. Bytes after its end are left in the buffer.
+	 *
+	 * @return true if the response is complete.
+	 */
+	boolean feed(ByteBuffer in) throws IOException {
+		if (in.hasRemaining()) started = true;
+		while (in.hasRemaining() && state != DONE) {
+			switch (state) {
+				case BODY_LENGTH:
+				case CHUNK_DATA:
+					int count = (int) Math.min(remaining, in.remaining());
+					append(in, count);
+					remaining -= count;
+					if (remaining == 0) {
+						state = state == BODY_LENGTH ? DONE : CHUNK_END;
+					}
+					break;
+				case BODY_EOF:
+					append(in, in.remaining());
+					break;
+				default:
+					if (readLine(in)) {
+						onLine(line.toString());
+						line.setLength(0);
+					}
+					break;
+			}
+		}
+		return state == DONE;
+	}
+
+	/**
+	 * At the end of the stream.
+	 *
+	 * @return true if it completes the response, which has no length.
+	 */
+	boolean finish() {
+		if (state == BODY_EOF) {
+			state = DONE;
+			return true;
+		}
+		return state == DONE;
+	}
+
+	/**
+	 * @return true if any byte of the response has arrived. A reused connection closed before it is safe to retry.
+	 */
+	boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * @return true if the connection can carry another request after this response.
+	 */
+	boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * @return How long the server keeps the connection idle, from the Keep-Alive header. -1 if it doesn't say.
+	 */
+	long getKeepAliveTimeoutMs() {
+		return keepAliveTimeoutMs;
+	}
+
+	HttpResponse toResponse() {
+		byte[] data = bodySize == body.length ? body : Arrays.copyOf(body, bodySize);
+		return new HttpResponse(statusCode, headers, data);
+	}
+
+	private boolean readLine(ByteBuffer in) throws IOException {
+		while (in.hasRemaining()) {
+			char c = (char) (in.get() & 0xff);
+			if (c == '\n') {
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r') {
+					line.setLength(length - 1);
+				}
+				return true;
+			}
+			if (line.length() >= MAX_LINE_LENGTH) {
+				throw new IOException("Too long line in the response");
+			}
+			line.append(c);
+		}
+		return false;
+	}
+
+	private void onLine(String text) throws IOException {
+		switch (state) {
+			case STATUS_LINE:
+				if (text.isEmpty()) return;    // Some servers send a blank line before the status.
+				parseStatusLine(text);
+				state = HEADERS;
+				break;
+			case HEADERS:
+				if (text.isEmpty()) {
+					onHeadersEnd();
+				} else {
+					parseHeader(text);
+				}
+				break;
+			case CHUNK_SIZE:
+				int extension = text.indexOf(';');
+				String size = (extension >= 0 ? text.substring(0, extension) : text).trim();
+				try {
+					remaining = Long.parseLong(size, 16);
+				} catch (NumberFormatException e) {
+					throw new IOException("Bad chunk size: " + text);
+				}
+				if (remaining < 0) throw new IOException("Bad chunk size: " + text);
+				state = remaining == 0 ? TRAILERS : CHUNK_DATA;
+				break;
+			case CHUNK_END:
+				if (text.isEmpty() == false) throw new IOException("Bad chunk end: " + text);
+				state = CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if (text.isEmpty()) {
+					state = DONE;
+				}
+				break;
+		}
+	}
+
+	private void parseStatusLine(String text) throws IOException {
+		// HTTP/1.1 200 OK
+		int first = text.indexOf(' ');
+		if (first < 0 || text.startsWith("HTTP/") == false) throw new IOException("Bad status line: " + text);
+		int second = text.indexOf(' ', first + 1);
+		String code = second < 0 ? text.substring(first + 1) : text.substring(first + 1, second);
+		try {
+			statusCode = Integer.parseInt(code.trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad status line: " + text);
+		}
+		http11 = text.startsWith("HTTP/1.1");
+	}
+
+	private void parseHeader(String text) throws IOException {
+		int colon = text.indexOf(':');
+		if (colon <= 0) throw new IOException("Bad header: " + text);
+		String name = text.substring(0, colon).trim();
+		String value = text.substring(colon + 1).trim();
+		String previous = headers.get(name);
+		headers.put(name, previous == null ? value : previous + ", " + value);
+	}
+
+	private void onHeadersEnd() throws IOException {
+		if (statusCode / 100 == 1) {    // Skips interim responses, like 100 Continue.
+			headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			state = STATUS_LINE;
+			return;
+		}
+
+		String connection = headers.get("Connection");
+		if (http11) {
+			keepAlive = connection == null || connection.toLowerCase(Locale.US).contains("close") == false;
+		} else {
+			keepAlive = connection != null && connection.toLowerCase(Locale.US).contains("keep-alive");
+		}
+		parseKeepAlive(headers.get("Keep-Alive"));
+
+		if (headRequest || statusCode == 204 || statusCode == 304) {
+			state = DONE;
+			return;
+		}
+		String transferEncoding = headers.get("Transfer-Encoding");
+		String contentLength = headers.get("Content-Length");
+		if (transferEncoding != null && transferEncoding.toLowerCase(Locale.US).contains("chunked")) {
+			state = CHUNK_SIZE;
+		} else if (contentLength != null) {
+			try {
+				remaining = Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException e) {
+				throw new IOException("Bad Content-Length: " + contentLength);
+			}
+			if (remaining < 0 || remaining > Integer.MAX_VALUE - 8) throw new IOException("Bad Content-Length: " + contentLength);
+			body = new byte[(int) Math.min(remaining, MAX_INITIAL_BODY_SIZE)];
+			state = remaining == 0 ? DONE : BODY_LENGTH;
+		} else {
+			keepAlive = false;    // Only the end of the stream tells the end of the body.
+			state = BODY_EOF;
+		}
+	}
+
+	/**
+	 * Keep-Alive: timeout=5, max=1000
+	 */
+	private void parseKeepAlive(String value) {
+		if (value == null) return;
+		for (String parameter : value.split(",")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0 && "timeout".equalsIgnoreCase(parameter.substring(0, equals).trim())) {
+				try {
+					keepAliveTimeoutMs = Math.max(0, Long.parseLong(parameter.substring(equals + 1).trim())) * 1000;
+				} catch (NumberFormatException ignored) {
+				}
+			}
+		}
+	}
+
+	private void append(ByteBuffer in, int count) throws IOException {
+		if (bodySize + count > body.length) {
+			long capacity = Math.max(bodySize + (long) count, Math.max(1024, body.length * 2L));
+			if (state == BODY_LENGTH) {
+				capacity = Math.min(capacity, bodySize + remaining);    // Not beyond the Content-Length.
+			}
+			if (capacity > Integer.MAX_VALUE - 8) throw new IOException("Too large body");
+			body = Arrays.copyOf(body, (int) capacity);
+		}
+		in.get(body, bodySize, count);
+		bodySize += count;
+	}
+}
@@ -0,0 +1,126 @@
+package com.hovans.network.transport;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * HttpCall.java
+ * <p>
+ * A request to send with a {@link HttpTransport}, and what to do with its response.
+ * The request part is set before {@link HttpTransport#enqueue(HttpCall)}, and not changed after it.
+ *
+ * @author Ben Yoo
+ */
+public abstract class HttpCall<T> {
+
+	public static final String GET = "GET", POST = "POST", PUT = "PUT", DELETE = "DELETE";
+
+	public static final int DEFAULT_TIMEOUT_MS = 10000;
+	public static final int DEFAULT_MAX_RETRIES = 1;
+	public static final float DEFAULT_BACKOFF_MULTIPLIER = 1f;
+
+	final String method;
+	final String url;
+	Map<String, String> headers = Collections.emptyMap();
+	byte[] body;
+	String bodyContentType;
+	int timeoutMs = DEFAULT_TIMEOUT_MS;
+	int maxRetries = DEFAULT_MAX_RETRIES;
+	float backoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+	boolean shouldCache = true;
+
+	public HttpCall(String method, String url) {
+		this.method = method;
+		this.url = url;
+	}
+
+	/**
+	 * Parses a response of 2xx or 304, on a thread of the transport. So it may take time, but must not touch the UI.
+	 * A thrown exception is delivered as a failure.
+	 */
+	public abstract T parseResponse(HttpResponse response) throws Exception;
+
+	public abstract void deliverResponse(T result);
+
+	/**
+	 * @param statusCode -1 if there was no response, or it could not be parsed.
+	 * @param cause      null for a response of an error status.
+	 */
+	public abstract void deliverFailure(int statusCode, Throwable cause);
+
+	/**
+	 * @return true for a status to give to {@link #parseResponse(HttpResponse)}.
+	 */
+	public static boolean isSuccessful(int statusCode) {
+		return (statusCode >= 200 && statusCode < 300) || statusCode == 304;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	public void setHeaders(Map<String, String> headers) {
+		this.headers = headers != null ? headers : Collections.<String, String>emptyMap();
+	}
+
+	/**
+	 * @return null if there is no body.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	public String getBodyContentType() {
+		return bodyContentType;
+	}
+
+	public void setBody(byte[] body, String contentType) {
+		this.body = body;
+		this.bodyContentType = contentType;
+	}
+
+	/**
+	 * @return Timeout of the first attempt. Each retry waits longer, by {@link #getBackoffMultiplier()}.
+	 */
+	public int getTimeoutMs() {
+		return timeoutMs;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public float getBackoffMultiplier() {
+		return backoffMultiplier;
+	}
+
+	public void setRetryPolicy(int timeoutMs, int maxRetries, float backoffMultiplier) {
+		this.timeoutMs = timeoutMs;
+		this.maxRetries = maxRetries;
+		this.backoffMultiplier = backoffMultiplier;
+	}
+
+	/**
+	 * @return false if the transport must not keep the response in a cache of its own.
+	 */
+	public boolean shouldCache() {
+		return shouldCache;
+	}
+
+	public void setShouldCache(boolean shouldCache) {
+		this.shouldCache = shouldCache;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + url;
+	}
+}
@@ -0,0 +1,60 @@
+package com.hovans.network.transport;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HttpResponse.java
+ * <p>
+ * Status, headers and the whole body of a response, as read by a {@link HttpTransport}.
+ *
+ * @author Ben Yoo
+ */
+public class HttpResponse {
+
+	static final byte[] EMPTY_BODY = new byte[0];
+
+	final int statusCode;
+	final Map<String, String> headers;
+	final byte[] body;
+
+	/**
+	 * @param headers Looked up ignoring case. Copied if it isn't.
+	 * @param body    null for no body.
+	 */
+	public HttpResponse(int statusCode, Map<String, String> headers, byte[] body) {
+		this.statusCode = statusCode;
+		if (headers == null) {
+			this.headers = Collections.emptyMap();
+		} else if (headers instanceof TreeMap && ((TreeMap<String, String>) headers).comparator() == String.CASE_INSENSITIVE_ORDER) {
+			this.headers = headers;
+		} else {
+			TreeMap<String, String> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			caseInsensitive.putAll(headers);
+			this.headers = caseInsensitive;
+		}
+		this.body = body != null ? body : EMPTY_BODY;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	@Override
+	public String toString() {
+		return "status: " + statusCode + ", headers: " + headers + ", body: " + body.length + " bytes";
+	}
+}
@@ -0,0 +1,18 @@
+package com.hovans.network.transport;
+
+/**
+ * HttpTransport.java
+ * <p>
+ * Sends {@link HttpCall}s for {@link com.hovans.network.HttpRequest}.
+ * Implementations must not block the calling thread, and complete every call exactly once,
+ * with {@link HttpCall#deliverResponse(Object)} or {@link HttpCall#deliverFailure(int, Throwable)}.
+ * <p>
+ * A response of 2xx or 304 is given to {@link HttpCall#parseResponse(HttpResponse)}, on a thread of the transport,
+ * and the result is delivered. Any other status is delivered as a failure with the status code.
+ *
+ * @author Ben Yoo
+ */
+public interface HttpTransport {
+
+	void enqueue(HttpCall<?> call);
+}
@@ -0,0 +1,771 @@
+package com.hovans.network.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NioTransport.java
+ * <p>
+ * {@link HttpTransport} of HTTP/1.1 on non-blocking sockets, with no dependency on Android nor Volley.
+ * One selector thread runs every connection, so thousands of calls in flight don't take thousands of threads.
+ * A connection is kept alive after a response, and reused by the next call to the same host and port,
+ * within the limits of its {@link ConnectionPool}.
+ * The phases of every call can be watched with {@link #setMetricsListener(CallMetrics.Listener)}.
+ * <p>
+ * Only host names are resolved on other threads, as {@link InetAddress} has no non-blocking lookup.
+ * At most {@link #RESOLVER_THREADS} lookups run at once, the others wait for them.
+ * Responses are parsed and delivered on threads of the transport, or of the executor given for them,
+ * so the selector thread only moves bytes.
+ * Only http is supported, a call of https fails.
+ *
+ * @author Ben Yoo
+ */
+public class NioTransport implements HttpTransport, Closeable {
+
+	static final int READ_BUFFER_SIZE = 64 * 1024;
+	/**
+	 * Threads resolving host names at once. They end after {@link #RESOLVER_KEEP_ALIVE_SECONDS} idle.
+	 */
+	static final int RESOLVER_THREADS = 4;
+	static final long RESOLVER_KEEP_ALIVE_SECONDS = 30;
+	static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final Selector selector;
+	private final Thread selectorThread;
+	private final Executor callbackExecutor;
+	/**
+	 * The callback executor was made by this transport, and is shut down with it.
+	 */
+	private final boolean ownsCallbackExecutor;
+	private final ExecutorService resolver;
+	private final ConnectionPool pool;
+	private volatile CallMetrics.Listener metricsListener;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+	/**
+	 * Set once the selector thread has failed the last tasks. Guarded by {@link #tasks}.
+	 */
+	private boolean terminated;
+
+	// Below are used only on the selector thread.
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	private final HashSet<Exchange> exchanges = new HashSet<>();
+	private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>();
+
+	/**
+	 * Parses and delivers responses on daemon threads of its own, as many as the processors.
+	 */
+	public NioTransport() throws IOException {
+		this(newCallbackExecutor(), new ConnectionPool(), true);
+	}
+
+	/**
+	 * @param callbackExecutor Parses and delivers responses. null to do it on the selector thread.
+	 */
+	public NioTransport(Executor callbackExecutor) throws IOException {
+		this(callbackExecutor, new ConnectionPool());
+	}
+
+	/**
+	 * @param callbackExecutor Parses and delivers responses. null to do it on the selector thread.
+	 * @param pool             Limits of the connections. It must not be given to another transport.
+	 */
+	public NioTransport(Executor callbackExecutor, ConnectionPool pool) throws IOException {
+		this(callbackExecutor, pool, false);
+	}
+
+	private NioTransport(Executor callbackExecutor, ConnectionPool pool, boolean ownsCallbackExecutor) throws IOException {
+		pool.attach(this);
+		this.callbackExecutor = callbackExecutor;
+		this.ownsCallbackExecutor = ownsCallbackExecutor;
+		this.pool = pool;
+		selector = Selector.open();
+		ThreadPoolExecutor resolver = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS,
+				RESOLVER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NioTransport-dns-" + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		resolver.allowCoreThreadTimeOut(true);
+		this.resolver = resolver;
+		selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "NioTransport");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	static ExecutorService newCallbackExecutor() {
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NioTransport-callback-" + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public void enqueue(HttpCall<?> call) {
+		final Exchange exchange = new Exchange(call);
+		boolean accepted = execute(new Runnable() {
+			@Override
+			public void run() {
+				dispatch(exchange);
+			}
+		});
+		if (accepted == false) {
+			exchange.end(-1);
+			report(exchange);
+			call.deliverFailure(-1, new IOException("NioTransport is closed"));
+		}
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
+
+	/**
+	 * @param listener Receives the metrics of every call from now on. null to stop it.
+	 */
+	public void setMetricsListener(CallMetrics.Listener listener) {
+		metricsListener = listener;
+	}
+
+	/**
+	 * Closes every connection. Calls in flight fail.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return false if the selector thread has ended, and won't run it.
+	 */
+	private boolean execute(Runnable task) {
+		synchronized (tasks) {
+			if (terminated) return false;
+			tasks.add(task);
+		}
+		selector.wakeup();
+		return true;
+	}
+
+	private void loop() {
+		try {
+			while (closed == false) {
+				long now = System.nanoTime();
+				long waitNanos = pool.nanosUntilEviction(now);
+				Deadline next = deadlines.peek();
+				if (next != null) {
+					waitNanos = Math.min(waitNanos, Math.max(0, next.at - now));
+				}
+				// Rounded up, not to wake a little before it and spin.
+				selector.select(waitNanos == Long.MAX_VALUE ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos + 999999)));
+
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (key.isValid()) {
+						onReady(key, (Connection) key.attachment());
+					}
+				}
+
+				now = System.nanoTime();
+				expireDeadlines(now);
+				pool.evictIdle(now);
+				serveWaiters();
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			closed = true;
+		} finally {
+			shutdown();
+		}
+	}
+
+	private void shutdown() {
+		for (SelectionKey key : selector.keys()) {
+			((Connection) key.attachment()).close();
+		}
+		try {
+			selector.close();
+		} catch (IOException ignored) {
+		}
+		resolver.shutdownNow();
+
+		IOException closedException = new IOException("NioTransport is closed");
+		for (Exchange exchange : new ArrayList<>(exchanges)) {
+			finish(exchange);
+			deliverFailure(exchange, -1, closedException);
+		}
+		synchronized (tasks) {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();    // dispatch() fails them, as it is closed.
+			}
+			terminated = true;
+		}
+		if (ownsCallbackExecutor) {
+			((ExecutorService) callbackExecutor).shutdown();    // After the failures above are delivered.
+		}
+	}
+
+	private void dispatch(Exchange exchange) {
+		if (closed) {
+			finish(exchange);
+			deliverFailure(exchange, -1, new IOException("NioTransport is closed"));
+			return;
+		}
+		if (exchange.route == null) {
+			try {
+				exchange.parseUrl();
+			} catch (IOException e) {
+				finish(exchange);
+				deliverFailure(exchange, -1, e);
+				return;
+			}
+			exchanges.add(exchange);
+		}
+		exchange.startAttempt();
+		acquire(exchange, false);
+	}
+
+	/**
+	 * Sends the attempt on a kept-alive connection, or on a new one, or leaves it waiting for the route to have one.
+	 * The timeout of the attempt starts here, not while it waits.
+	 *
+	 * @param waiting true if it has been waiting already, so it goes before the others still waiting.
+	 */
+	private void acquire(Exchange exchange, boolean waiting) {
+		if (waiting == false && pool.hasWaiters(exchange.route)) {
+			pool.addWaiter(exchange, false);
+			return;
+		}
+		Connection connection = pool.pollIdle(exchange.route);
+		if (connection == null) {
+			if (pool.canOpen(exchange.route) == false) {
+				pool.addWaiter(exchange, waiting);
+				return;
+			}
+			connection = new Connection(exchange.route);
+			pool.onOpen(connection);
+		} else {
+			connection.reused = true;
+		}
+		exchange.metrics.queueNanos = System.nanoTime() - exchange.attemptStartedAt;
+		exchange.connection = connection;
+		connection.exchange = exchange;
+		exchange.deadline = new Deadline(exchange);
+		deadlines.add(exchange.deadline);
+
+		if (connection.reused) {
+			try {
+				connection.start(exchange);
+			} catch (IOException e) {
+				connection.close();
+				fail(exchange, e);
+			}
+		} else if (exchange.isLiteralAddress()) {
+			connect(exchange, connection, new InetSocketAddress(exchange.address, exchange.port));
+		} else {
+			resolve(exchange, connection);
+		}
+	}
+
+	private void serveWaiters() {
+		Exchange exchange;
+		while ((exchange = pool.pollWaiter()) != null) {
+			acquire(exchange, true);
+		}
+	}
+
+	private void resolve(final Exchange exchange, final Connection connection) {
+		final int attempt = exchange.attempt;
+		final long startedAt = System.nanoTime();
+		resolver.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final InetAddress address = InetAddress.getByName(exchange.address);
+					final long resolvedAt = System.nanoTime();
+					execute(new Runnable() {
+						@Override
+						public void run() {
+							if (exchange.isCurrent(attempt)) {
+								exchange.metrics.dnsNanos = resolvedAt - startedAt;
+								connect(exchange, connection, new InetSocketAddress(address, exchange.port));
+							}
+						}
+					});
+				} catch (final IOException e) {
+					execute(new Runnable() {
+						@Override
+						public void run() {
+							if (exchange.isCurrent(attempt)) {
+								exchange.metrics.dnsNanos = System.nanoTime() - startedAt;
+								connection.close();
+								fail(exchange, e);
+							}
+						}
+					});
+				}
+			}
+		});
+	}
+
+	private void connect(Exchange exchange, Connection connection, InetSocketAddress address) {
+		try {
+			SocketChannel channel = SocketChannel.open();
+			connection.channel = channel;
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			connection.key = channel.register(selector, 0, connection);
+			connection.connectStartedAt = System.nanoTime();
+			if (channel.connect(address)) {
+				connection.onConnected();
+				connection.start(exchange);
+			} else {
+				connection.key.interestOps(SelectionKey.OP_CONNECT);
+			}
+		} catch (IOException e) {
+			connection.close();
+			fail(exchange, e);
+		}
+	}
+
+	private void onReady(SelectionKey key, Connection connection) {
+		Exchange exchange = connection.exchange;
+		try {
+			if (key.isConnectable()) {
+				connection.channel.finishConnect();
+				connection.onConnected();
+				connection.start(exchange);
+			} else if (key.isWritable()) {
+				connection.write();
+			} else if (key.isReadable()) {
+				connection.read();
+			}
+		} catch (IOException | CancelledKeyException e) {
+			connection.close();
+			if (exchange != null && exchange.connection == connection) {
+				fail(exchange, e instanceof IOException ? (IOException) e : new IOException(e));
+			}
+		}
+	}
+
+	private void expireDeadlines(long now) {
+		Deadline deadline;
+		while ((deadline = deadlines.peek()) != null && deadline.at - now <= 0) {
+			deadlines.poll();
+			Exchange exchange = deadline.exchange;
+			if (exchange.deadline == deadline) {
+				exchange.deadline = null;
+			}
+			if (exchange.isCurrent(deadline.attempt)) {
+				if (exchange.connection != null) {
+					exchange.connection.close();
+				}
+				fail(exchange, new SocketTimeoutException("Timeout of " + exchange.timeoutMs + "ms"));
+			}
+		}
+	}
+
+	/**
+	 * Retries the exchange if it can, or delivers the failure.
+	 */
+	private void fail(Exchange exchange, IOException e) {
+		clearDeadline(exchange);
+		Connection connection = exchange.connection;
+		exchange.connection = null;
+		// A kept-alive connection may be closed by the server, right before it is reused. It doesn't count as a retry.
+		boolean staleConnection = connection != null && connection.reused && exchange.parser.isStarted() == false
+				&& e instanceof SocketTimeoutException == false;
+		if (staleConnection) {
+			dispatch(exchange);
+			return;
+		}
+		if (exchange.retries < exchange.call.getMaxRetries()) {
+			exchange.retries++;
+			exchange.timeoutMs += (long) (exchange.timeoutMs * exchange.call.getBackoffMultiplier());
+			dispatch(exchange);
+			return;
+		}
+		finish(exchange);
+		deliverFailure(exchange, -1, e);
+	}
+
+	private void complete(Exchange exchange, Connection connection, boolean reusable) {
+		exchange.metrics.transferNanos = System.nanoTime() - exchange.firstByteAt;
+		exchange.connection = null;
+		connection.exchange = null;
+		if (reusable && closed == false) {
+			pool.offerIdle(connection, System.nanoTime(), exchange.parser.getKeepAliveTimeoutMs());
+			connection.key.interestOps(SelectionKey.OP_READ);    // To know when the server closes it.
+		} else {
+			connection.close();
+		}
+		finish(exchange);
+		deliverResponse(exchange, exchange.parser.toResponse());
+	}
+
+	private void finish(Exchange exchange) {
+		clearDeadline(exchange);
+		exchange.attempt = Exchange.FINISHED;
+		exchanges.remove(exchange);
+	}
+
+	/**
+	 * Takes the deadline of the attempt out of the queue once the attempt is over,
+	 * so the queue holds only attempts on a connection, not every one since the oldest live deadline.
+	 */
+	private void clearDeadline(Exchange exchange) {
+		if (exchange.deadline != null) {
+			deadlines.remove(exchange.deadline);
+			exchange.deadline = null;
+		}
+	}
+
+	private void deliverResponse(final Exchange exchange, final HttpResponse response) {
+		exchange.end(response.statusCode);
+		if (callbackExecutor == null) {
+			report(exchange);
+			try {
+				deliver(exchange.call, response);
+			} catch (RuntimeException e) {
+				reportUncaught(e);    // An exception of a call must not stop the selector thread, serving other calls.
+			}
+		} else {
+			callbackExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					report(exchange);
+					deliver(exchange.call, response);
+				}
+			});
+		}
+	}
+
+	private void deliverFailure(final Exchange exchange, final int statusCode, final Throwable cause) {
+		exchange.end(statusCode);
+		if (callbackExecutor == null) {
+			report(exchange);
+			try {
+				exchange.call.deliverFailure(statusCode, cause);
+			} catch (RuntimeException e) {
+				reportUncaught(e);
+			}
+		} else {
+			callbackExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					report(exchange);
+					exchange.call.deliverFailure(statusCode, cause);
+				}
+			});
+		}
+	}
+
+	private void report(Exchange exchange) {
+		CallMetrics.Listener listener = metricsListener;
+		if (listener == null) return;
+		try {
+			listener.onCallEnd(exchange.call, exchange.metrics);
+		} catch (RuntimeException e) {
+			reportUncaught(e);
+		}
+	}
+
+	private static void reportUncaught(RuntimeException e) {
+		Thread thread = Thread.currentThread();
+		Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+		if (handler != null) {
+			handler.uncaughtException(thread, e);
+		}
+	}
+
+	static <T> void deliver(HttpCall<T> call, HttpResponse response) {
+		if (HttpCall.isSuccessful(response.statusCode) == false) {
+			call.deliverFailure(response.statusCode, null);
+			return;
+		}
+		T result;
+		try {
+			result = call.parseResponse(response);
+		} catch (Exception e) {
+			call.deliverFailure(-1, e);
+			return;
+		}
+		call.deliverResponse(result);
+	}
+
+	static ByteBuffer encodeRequest(HttpCall<?> call, String path, String hostHeader) {
+		StringBuilder head = new StringBuilder(256);
+		head.append(call.getMethod()).append(' ').append(path).append(" HTTP/1.1\r\n");
+		head.append("Host: ").append(hostHeader).append("\r\n");
+		for (Map.Entry<String, String> header : call.getHeaders().entrySet()) {
+			String name = header.getKey();
+			if ("Host".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name) || "Connection".equalsIgnoreCase(name)) {
+				continue;
+			}
+			head.append(name).append(": ").append(header.getValue()).append("\r\n");
+		}
+		byte[] body = call.getBody();
+		if (body != null) {
+			if (call.getBodyContentType() != null) {
+				head.append("Content-Type: ").append(call.getBodyContentType()).append("\r\n");
+			}
+			head.append("Content-Length: ").append(body.length).append("\r\n");
+		} else if (HttpCall.POST.equals(call.getMethod()) || HttpCall.PUT.equals(call.getMethod())) {
+			head.append("Content-Length: 0\r\n");
+		}
+		head.append("Connection: keep-alive\r\n\r\n");
+
+		byte[] headBytes = head.toString().getBytes(ISO_8859_1);
+		ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + (body != null ? body.length : 0));
+		buffer.put(headBytes);
+		if (body != null) buffer.put(body);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * A call, through its attempts.
+	 */
+	final class Exchange {
+		static final int FINISHED = Integer.MAX_VALUE;
+
+		final HttpCall<?> call;
+		final CallMetrics metrics = new CallMetrics();
+		final long enqueuedAt = System.nanoTime();
+		long attemptStartedAt, requestStartedAt, firstByteAt;
+		String route;
+		String address;
+		int port;
+		String hostHeader;
+		String path;
+		/**
+		 * Number of attempts started. {@link #FINISHED} once it is delivered.
+		 */
+		int attempt;
+		int retries;
+		long timeoutMs;
+		ByteBuffer request;
+		Http1ResponseParser parser;
+		Connection connection;
+		/**
+		 * Of the current attempt, while it is in {@link #deadlines}.
+		 */
+		Deadline deadline;
+
+		Exchange(HttpCall<?> call) {
+			this.call = call;
+		}
+
+		void parseUrl() throws IOException {
+			URL url;
+			try {
+				url = new URL(call.getUrl());
+			} catch (MalformedURLException e) {
+				throw new IOException("Bad url: " + call.getUrl(), e);
+			}
+			if ("http".equalsIgnoreCase(url.getProtocol()) == false) {
+				throw new IOException("NioTransport supports only http: " + call.getUrl());
+			}
+			String host = url.getHost();
+			port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+			address = host.startsWith("[") ? host.substring(1, host.length() - 1) : host;
+			hostHeader = url.getPort() != -1 ? host + ":" + port : host;
+			path = url.getFile().isEmpty() ? "/" : url.getFile();
+			route = address + ":" + port;
+			timeoutMs = call.getTimeoutMs();
+		}
+
+		boolean isLiteralAddress() {
+			if (address.indexOf(':') >= 0) return true;
+			for (int i = 0; i < address.length(); i++) {
+				char c = address.charAt(i);
+				if ((c < '0' || c > '9') && c != '.') return false;
+			}
+			return true;
+		}
+
+		void startAttempt() {
+			attempt++;
+			metrics.attempts++;
+			metrics.resetPhases();
+			attemptStartedAt = System.nanoTime();
+			request = encodeRequest(call, path, hostHeader);
+			parser = new Http1ResponseParser("HEAD".equals(call.getMethod()));
+		}
+
+		/**
+		 * @return false if the attempt has failed, or the call has finished, so a late event of it is ignored.
+		 */
+		boolean isCurrent(int attempt) {
+			return this.attempt == attempt;
+		}
+
+		void end(int statusCode) {
+			metrics.statusCode = statusCode;
+			metrics.totalNanos = System.nanoTime() - enqueuedAt;
+		}
+	}
+
+	static final class Deadline implements Comparable<Deadline> {
+		final Exchange exchange;
+		final int attempt;
+		/**
+		 * In {@link System#nanoTime()}, so a change of the wall clock doesn't fire or hold it.
+		 */
+		final long at;
+
+		Deadline(Exchange exchange) {
+			this.exchange = exchange;
+			this.attempt = exchange.attempt;
+			this.at = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(exchange.timeoutMs);
+		}
+
+		@Override
+		public int compareTo(Deadline another) {
+			long difference = at - another.at;    // nanoTime may overflow, only the difference is meaningful.
+			return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+		}
+	}
+
+	final class Connection {
+		final String route;
+		/**
+		 * null until the host is resolved.
+		 */
+		SocketChannel channel;
+		SelectionKey key;
+		Exchange exchange;
+		/**
+		 * true if it has carried a request before.
+		 */
+		boolean reused;
+		long connectStartedAt;
+		// Below are of the pool.
+		boolean idle;
+		/**
+		 * In {@link System#nanoTime()}.
+		 */
+		long keepAliveUntil;
+		private boolean closed;
+
+		Connection(String route) {
+			this.route = route;
+		}
+
+		boolean isOpen() {
+			return closed == false && channel != null && channel.isOpen();
+		}
+
+		void onConnected() {
+			exchange.metrics.connectNanos = System.nanoTime() - connectStartedAt;
+		}
+
+		void start(Exchange exchange) throws IOException {
+			this.exchange = exchange;
+			exchange.connection = this;
+			exchange.requestStartedAt = System.nanoTime();
+			exchange.metrics.connectionReused = reused;
+			exchange.metrics.requestBytes = exchange.request.remaining();
+			write();
+		}
+
+		void write() throws IOException {
+			channel.write(exchange.request);
+			key.interestOps(exchange.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+
+		void read() throws IOException {
+			readBuffer.clear();
+			int count = channel.read(readBuffer);
+			readBuffer.flip();
+
+			if (exchange == null) {    // Idle. The server closed it, or sent what nobody asked.
+				close();
+				return;
+			}
+			if (count == -1) {
+				close();
+				if (exchange.parser.finish()) {
+					complete(exchange, this, false);
+				} else {
+					fail(exchange, new IOException("Connection closed before the end of the response"));
+				}
+				return;
+			}
+			if (count > 0 && exchange.parser.isStarted() == false) {
+				exchange.firstByteAt = System.nanoTime();
+				exchange.metrics.ttfbNanos = exchange.firstByteAt - exchange.requestStartedAt;
+			}
+			exchange.metrics.responseBytes += count;
+			if (exchange.parser.feed(readBuffer)) {
+				complete(exchange, this, exchange.parser.isKeepAlive() && readBuffer.hasRemaining() == false);
+			}
+		}
+
+		void close() {
+			if (closed) return;
+			closed = true;
+			if (key != null) key.cancel();
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+			}
+			pool.onClose(this);
+		}
+	}
+}
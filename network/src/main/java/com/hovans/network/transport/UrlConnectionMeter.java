@@ -0,0 +1,231 @@
+package com.hovans.network.transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * UrlConnectionMeter.java
+ * <p>
+ * Measures a {@link HttpCall} sent with {@link java.net.HttpURLConnection}, for a transport which doesn't own its sockets.
+ * An attempt runs on one thread, from {@link #startAttempt(boolean, long)} to {@link #onHeaders(int)},
+ * and its TLS handshake is seen by the factory of {@link #measureHandshakes(SSLSocketFactory)}, on the same thread.
+ * The connection hides the rest, so the phases are coarser than those of {@link NioTransport}. See {@link CallMetrics}.
+ *
+ * @author Ben Yoo
+ */
+public final class UrlConnectionMeter {
+
+	/**
+	 * The meter of the attempt connecting on this thread.
+	 */
+	private static final ThreadLocal<UrlConnectionMeter> connecting = new ThreadLocal<>();
+
+	private final CallMetrics metrics = new CallMetrics();
+	private final long enqueuedAt = System.nanoTime();
+	/**
+	 * When the call was enqueued, or its last attempt ended.
+	 */
+	private long readyAt = enqueuedAt;
+	private long attemptStartedAt, tlsStartedAt, headersAt;
+	/**
+	 * Set by a {@link HandshakeCompletedListener}, which may be called on another thread.
+	 */
+	private volatile long handshakeEndedAt;
+
+	/**
+	 * Makes the meter of a call, right when it is enqueued.
+	 */
+	public UrlConnectionMeter() {
+	}
+
+	public CallMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * On the thread sending the request, right before it opens the connection.
+	 *
+	 * @param secure true for https. A handshake is expected, so if none is seen, the connection was reused.
+	 */
+	public void startAttempt(boolean secure, long requestBytes) {
+		attemptStartedAt = System.nanoTime();
+		tlsStartedAt = handshakeEndedAt = 0;
+		metrics.attempts++;
+		metrics.resetPhases();
+		metrics.queueNanos = attemptStartedAt - readyAt;
+		metrics.connectionReused = secure;
+		metrics.requestBytes = requestBytes;
+		connecting.set(this);
+	}
+
+	/**
+	 * On the same thread, once the status and headers are read.
+	 */
+	public void onHeaders(int statusCode) {
+		connecting.remove();
+		headersAt = System.nanoTime();
+		metrics.statusCode = statusCode;
+		long requestStartedAt = attemptStartedAt;
+		if (tlsStartedAt != 0) {
+			requestStartedAt = tlsStartedAt;
+			long handshakeEndedAt = this.handshakeEndedAt;
+			if (handshakeEndedAt != 0) {    // Else the listener is late. Then the handshake stays in the TTFB.
+				metrics.tlsNanos = handshakeEndedAt - tlsStartedAt;
+				requestStartedAt = handshakeEndedAt;
+			}
+		}
+		metrics.ttfbNanos = headersAt - requestStartedAt;
+	}
+
+	/**
+	 * Ends the attempt, which has failed, or got a response with no body.
+	 */
+	public void endAttempt() {
+		connecting.remove();
+		readyAt = System.nanoTime();
+	}
+
+	/**
+	 * @return The body, which ends the attempt and measures the transfer when it is read to the end, or closed.
+	 */
+	public InputStream measureBody(InputStream body) {
+		return new FilterInputStream(body) {
+			private boolean ended;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					metrics.responseBytes++;
+				} else {
+					onBodyEnd();
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int count = super.read(buffer, offset, length);
+				if (count > 0) {
+					metrics.responseBytes += count;
+				} else if (count < 0) {
+					onBodyEnd();
+				}
+				return count;
+			}
+
+			@Override
+			public void close() throws IOException {
+				onBodyEnd();
+				super.close();
+			}
+
+			private void onBodyEnd() {
+				if (ended) return;
+				ended = true;
+				metrics.transferNanos = System.nanoTime() - headersAt;
+				endAttempt();
+			}
+		};
+	}
+
+	/**
+	 * Ends the call, on the thread which delivers it, before a {@link CallMetrics.Listener} is given the metrics.
+	 *
+	 * @param statusCode -1 if there was no response.
+	 */
+	public void end(int statusCode) {
+		metrics.statusCode = statusCode;
+		metrics.totalNanos = System.nanoTime() - enqueuedAt;
+	}
+
+	/**
+	 * @param factory Makes the sockets of https.
+	 * @return A factory which makes the same sockets, and tells the meter of the attempt when one starts TLS.
+	 * Keep one for all connections, as a connection pool may tell connections apart by it.
+	 */
+	public static SSLSocketFactory measureHandshakes(SSLSocketFactory factory) {
+		return new MeasuringSocketFactory(factory);
+	}
+
+	void onTlsStart(SSLSocket socket) {
+		tlsStartedAt = System.nanoTime();
+		metrics.connectionReused = false;
+		metrics.connectNanos = tlsStartedAt - attemptStartedAt;
+		socket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+			@Override
+			public void handshakeCompleted(HandshakeCompletedEvent event) {
+				handshakeEndedAt = System.nanoTime();
+				event.getSocket().removeHandshakeCompletedListener(this);
+			}
+		});
+	}
+
+	static final class MeasuringSocketFactory extends SSLSocketFactory {
+
+		final SSLSocketFactory delegate;
+
+		MeasuringSocketFactory(SSLSocketFactory delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return delegate.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return delegate.getSupportedCipherSuites();
+		}
+
+		/**
+		 * The one used by {@link javax.net.ssl.HttpsURLConnection}, over a socket already connected.
+		 */
+		@Override
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+			return measure(delegate.createSocket(socket, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return measure(delegate.createSocket());
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return measure(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+			return measure(delegate.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return measure(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+			return measure(delegate.createSocket(address, port, localAddress, localPort));
+		}
+
+		private static Socket measure(Socket socket) {
+			UrlConnectionMeter meter = connecting.get();
+			if (meter != null && socket instanceof SSLSocket) {
+				meter.onTlsStart((SSLSocket) socket);
+			}
+			return socket;
+		}
+	}
+}
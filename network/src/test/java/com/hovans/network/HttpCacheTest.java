@@ -0,0 +1,124 @@
+package com.hovans.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reopens a cache from the journal another instance left on disk.
+ *
+ * @author Ben Yoo
+ */
+public class HttpCacheTest {
+
+	private static final long MAX_SIZE = 1024 * 1024;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("HttpCacheTest", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdirs());
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void tornLastLineKeepsTheOtherEntries() throws IOException {
+		HttpCache cache = new HttpCache(directory, MAX_SIZE);
+		cache.putNow("a", entry("A"));
+		cache.putNow("b", entry("B"));
+		cache.putNow("c", entry("C"));
+		cache.flushJournal();
+
+		File journal = new File(directory, HttpCache.JOURNAL);
+		truncate(journal, 5);    // Cuts the line of "c" in the middle, as a crash during a flush would.
+
+		HttpCache reopened = new HttpCache(directory, MAX_SIZE);
+		assertNotNull(reopened.get("a"));
+		assertEquals("B", reopened.get("b").getBody());
+		assertNull(reopened.get("c"));
+		assertTrue(new File(directory, HttpCache.nameOf("c")).exists() == false);
+		reopened.flushJournal();
+
+		List<String> lines = readLines(journal);
+		assertEquals(HttpCache.CLEAN, lines.get(0).split(" ")[0]);
+		for (String line : lines) {
+			assertTrue(line, line.contains(HttpCache.nameOf("c")) == false);
+		}
+	}
+
+	@Test
+	public void corruptedMiddleLineClearsTheCache() throws IOException {
+		HttpCache cache = new HttpCache(directory, MAX_SIZE);
+		cache.putNow("a", entry("A"));
+		cache.putNow("b", entry("B"));
+		cache.flushJournal();
+
+		File journal = new File(directory, HttpCache.JOURNAL);
+		List<String> lines = readLines(journal);
+		RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+		try {
+			raf.setLength(0);
+			raf.write(("GARBAGE\n" + lines.get(0) + '\n' + lines.get(1) + '\n').getBytes(HttpCache.UTF_8));
+		} finally {
+			raf.close();
+		}
+
+		HttpCache reopened = new HttpCache(directory, MAX_SIZE);
+		assertNull(reopened.get("a"));
+		assertNull(reopened.get("b"));
+		assertEquals(0, reopened.size());
+	}
+
+	private static HttpCache.Entry entry(String body) {
+		return new HttpCache.Entry(body, null, null, System.currentTimeMillis() + 60 * 1000);
+	}
+
+	private static void truncate(File file, int bytes) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - bytes);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), HttpCache.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
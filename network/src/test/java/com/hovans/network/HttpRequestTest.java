@@ -0,0 +1,71 @@
+package com.hovans.network;
+
+import com.android.volley.toolbox.StringRequest;
+import com.hovans.network.transport.HttpCall;
+import com.hovans.network.transport.HttpTransport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Requests on the network, for the same request sent twice before the first one is answered.
+ *
+ * @author Ben Yoo
+ */
+public class HttpRequestTest {
+
+	private final List<HttpCall<?>> calls = new ArrayList<>();
+	private final HttpTransport transport = new HttpTransport() {
+		@Override
+		public void enqueue(HttpCall<?> call) {
+			calls.add(call);    // Never answered, so the first one is still on the network.
+		}
+	};
+
+	@After
+	public void tearDown() {
+		synchronized (HttpRequest.flights) {
+			HttpRequest.flights.clear();
+		}
+	}
+
+	@Test
+	public void concurrentPostsSendTwoCalls() throws UnsupportedEncodingException {
+		newRequest().enqueue(StringRequest.Method.POST);
+		newRequest().enqueue(StringRequest.Method.POST);
+
+		assertEquals(2, calls.size());
+	}
+
+	@Test
+	public void concurrentPutsAndDeletesSendTheirOwnCalls() throws UnsupportedEncodingException {
+		newRequest().enqueue(StringRequest.Method.PUT);
+		newRequest().enqueue(StringRequest.Method.PUT);
+		newRequest().enqueue(StringRequest.Method.DELETE);
+		newRequest().enqueue(StringRequest.Method.DELETE);
+
+		assertEquals(4, calls.size());
+	}
+
+	@Test
+	public void concurrentGetsShareOneCall() throws UnsupportedEncodingException {
+		newRequest().enqueue(StringRequest.Method.GET);
+		newRequest().enqueue(StringRequest.Method.GET);
+
+		assertEquals(1, calls.size());
+	}
+
+	private HttpRequest newRequest() {
+		HttpRequest request = new HttpRequest(null);
+		request.url = "http://example.com/items";
+		request.params.put("name", "value");
+		request.transport = transport;
+		return request;
+	}
+}